@@ -0,0 +1,101 @@
+package study.querydsl.loadtest;
+
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 부하 테스트 설정
+ * loadtest.properties 기본값 위에 -Dloadtest.* 시스템 프로퍼티를 덮어쓴다.
+ */
+@Getter
+public class LoadTestConfig {
+
+    private final String baseUrl;
+    private final String baselineUrl;
+    private final int rounds;
+    private final int concurrency;
+    private final double ratePerSecond;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final Map<String, Integer> mix;
+
+    private final int teams;
+    private final int members;
+    private final double usernameRatio;
+    private final double teamNameRatio;
+    private final double ageGoeRatio;
+    private final double ageLoeRatio;
+    private final int pageSize;
+    private final int maxPage;
+
+    private final String baseline;
+    private final String result;
+    private final boolean updateBaseline;
+    private final double p99Tolerance;
+    private final double throughputTolerance;
+    private final double maxErrorRate;
+
+    private LoadTestConfig(Properties p) {
+        baseUrl = p.getProperty("loadtest.baseUrl", "");
+        baselineUrl = p.getProperty("loadtest.baselineUrl", "");
+        rounds = Integer.parseInt(p.getProperty("loadtest.rounds", "1"));
+        concurrency = Integer.parseInt(p.getProperty("loadtest.concurrency"));
+        ratePerSecond = Double.parseDouble(p.getProperty("loadtest.ratePerSecond", "0"));
+        warmupSeconds = Integer.parseInt(p.getProperty("loadtest.warmupSeconds"));
+        durationSeconds = Integer.parseInt(p.getProperty("loadtest.durationSeconds"));
+        mix = parseMix(p.getProperty("loadtest.mix"));
+
+        teams = Integer.parseInt(p.getProperty("perf.seed.teams"));
+        members = Integer.parseInt(p.getProperty("perf.seed.members"));
+        usernameRatio = Double.parseDouble(p.getProperty("loadtest.condition.username"));
+        teamNameRatio = Double.parseDouble(p.getProperty("loadtest.condition.teamName"));
+        ageGoeRatio = Double.parseDouble(p.getProperty("loadtest.condition.ageGoe"));
+        ageLoeRatio = Double.parseDouble(p.getProperty("loadtest.condition.ageLoe"));
+        pageSize = Integer.parseInt(p.getProperty("loadtest.pageSize"));
+        maxPage = Integer.parseInt(p.getProperty("loadtest.maxPage"));
+
+        baseline = p.getProperty("loadtest.baseline", "");
+        result = p.getProperty("loadtest.result");
+        updateBaseline = Boolean.parseBoolean(p.getProperty("loadtest.updateBaseline", "false"));
+        p99Tolerance = Double.parseDouble(p.getProperty("loadtest.tolerance.p99"));
+        throughputTolerance = Double.parseDouble(p.getProperty("loadtest.tolerance.throughput"));
+        maxErrorRate = Double.parseDouble(p.getProperty("loadtest.maxErrorRate"));
+    }
+
+    public static LoadTestConfig load() {
+        Properties p = new Properties();
+        try (InputStream in = LoadTestConfig.class.getResourceAsStream("/loadtest.properties")) {
+            p.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.getProperties().stringPropertyNames().stream()
+                .filter(key -> key.startsWith("loadtest.") || key.startsWith("perf."))
+                .forEach(key -> p.setProperty(key, System.getProperty(key)));
+        return new LoadTestConfig(p);
+    }
+
+    /**
+     * v1:1,v2:3,v3:3 -> {v1=1, v2=3, v3=3}
+     */
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] pair = entry.trim().split(":");
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                result.put(pair[0].trim(), weight);
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("loadtest.mix has no endpoint with positive weight : " + mix);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,135 @@
+package study.querydsl.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * 엔드포인트별 지연시간(ms) 백분위수와 처리량(req/s)
+ * key 형식 : {endpoint}.{metric} (ex. v2.p99, all.throughput)
+ */
+public class LoadTestResult {
+
+    public static final String ALL = "all";
+
+    private final Properties values;
+
+    private LoadTestResult(Properties values) {
+        this.values = values;
+    }
+
+    /**
+     * requests : 엔드포인트별로 실제로 보낸 요청 수 (coordinated omission 보정으로 히스토그램에 채운 값은 빠진다)
+     */
+    public static LoadTestResult of(Map<String, Histogram> histograms, Map<String, Long> requests, Map<String, Long> errors, double seconds) {
+        Properties values = new Properties();
+        histograms.forEach((endpoint, histogram) -> {
+            long count = requests.getOrDefault(endpoint, histogram.getTotalCount());
+            values.setProperty(endpoint + ".count", String.valueOf(count));
+            values.setProperty(endpoint + ".errors", String.valueOf(errors.getOrDefault(endpoint, 0L)));
+            values.setProperty(endpoint + ".throughput", format(count / seconds));
+            values.setProperty(endpoint + ".p50", millis(histogram.getValueAtPercentile(50)));
+            values.setProperty(endpoint + ".p90", millis(histogram.getValueAtPercentile(90)));
+            values.setProperty(endpoint + ".p99", millis(histogram.getValueAtPercentile(99)));
+            values.setProperty(endpoint + ".p999", millis(histogram.getValueAtPercentile(99.9)));
+            values.setProperty(endpoint + ".max", millis(histogram.getMaxValue()));
+        });
+        return new LoadTestResult(values);
+    }
+
+    public static LoadTestResult load(Path path) {
+        Properties values = new Properties();
+        try (Reader reader = Files.newBufferedReader(path)) {
+            values.load(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new LoadTestResult(values);
+    }
+
+    public void save(Path path, String comment) {
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            // diff 하기 쉽도록 key 순서대로 기록한다.
+            List<String> lines = new ArrayList<>();
+            lines.add("# " + comment);
+            new TreeSet<>(values.stringPropertyNames())
+                    .forEach(key -> lines.add(key + "=" + values.getProperty(key)));
+            Files.write(path, lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public double get(String endpoint, String metric) {
+        return Double.parseDouble(values.getProperty(endpoint + "." + metric, "0"));
+    }
+
+    public double errorRate(String endpoint) {
+        double count = get(endpoint, "count");
+        return count == 0 ? 0 : get(endpoint, "errors") / count;
+    }
+
+    /**
+     * baseline 대비 p99 가 (1 + p99Tolerance) 배를 넘거나
+     * 처리량이 (1 - throughputTolerance) 배 아래로 떨어진 엔드포인트를 반환한다.
+     */
+    public List<String> regressions(LoadTestResult baseline, double p99Tolerance, double throughputTolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (String endpoint : endpoints()) {
+            if (!baseline.values.containsKey(endpoint + ".p99")) {
+                continue;
+            }
+            double baseP99 = baseline.get(endpoint, "p99");
+            double p99 = get(endpoint, "p99");
+            if (p99 > baseP99 * (1 + p99Tolerance)) {
+                regressions.add(String.format("%s p99 %.2fms > baseline %.2fms (+%.0f%% allowed)",
+                        endpoint, p99, baseP99, p99Tolerance * 100));
+            }
+            double baseThroughput = baseline.get(endpoint, "throughput");
+            double throughput = get(endpoint, "throughput");
+            if (throughput < baseThroughput * (1 - throughputTolerance)) {
+                regressions.add(String.format("%s throughput %.1f/s < baseline %.1f/s (-%.0f%% allowed)",
+                        endpoint, throughput, baseThroughput, throughputTolerance * 100));
+            }
+        }
+        return regressions;
+    }
+
+    public TreeSet<String> endpoints() {
+        TreeSet<String> endpoints = new TreeSet<>();
+        for (String key : values.stringPropertyNames()) {
+            endpoints.add(key.substring(0, key.indexOf('.')));
+        }
+        return endpoints;
+    }
+
+    public String summary() {
+        StringBuilder sb = new StringBuilder(String.format("%-6s %9s %7s %10s %8s %8s %8s %8s %8s%n",
+                "", "count", "errors", "req/s", "p50", "p90", "p99", "p99.9", "max"));
+        for (String endpoint : endpoints()) {
+            sb.append(String.format("%-6s %9.0f %7.0f %10.1f %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                    endpoint, get(endpoint, "count"), get(endpoint, "errors"), get(endpoint, "throughput"),
+                    get(endpoint, "p50"), get(endpoint, "p90"), get(endpoint, "p99"),
+                    get(endpoint, "p999"), get(endpoint, "max")));
+        }
+        return sb.toString();
+    }
+
+    private static String millis(long micros) {
+        return format(micros / 1000.0);
+    }
+
+    private static String format(double value) {
+        return String.format("%.3f", value);
+    }
+}
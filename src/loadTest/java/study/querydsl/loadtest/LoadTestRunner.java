@@ -0,0 +1,242 @@
+package study.querydsl.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import study.querydsl.QuerydslApplication;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * /v1, /v2, /v3 /members 부하 테스트
+ * loadtest.baseUrl 이 없으면 perf 프로파일(임베디드 H2)로 애플리케이션을 직접 띄운다.
+ * 결과는 loadtest.result 에 저장한다. 회귀 검사는 둘 중 하나로 한다.
+ * - loadtest.baselineUrl : 기준 서버와 대상 서버를 같은 실행 안에서 loadtest.rounds 번 번갈아 재서 비교한다. (머신 / 부하 차이가 양쪽에 같이 걸린다)
+ * - loadtest.baseline : 같은 머신에서 -Dloadtest.updateBaseline=true 로 기록해 둔 파일과 비교한다. (지정했을 때만)
+ * 둘 다 없으면 결과와 에러율만 본다. p99 / 처리량이 허용치를 넘게 나빠지거나 에러율을 넘으면 1 로 종료한다.
+ *
+ * 기본(loadtest.ratePerSecond=0)은 closed loop 라서 coordinated omission 이 있다.
+ * 느린 응답을 기다리는 동안 보냈어야 할 요청이 기록되지 않으므로 p99 이상이 실제보다 낮게 나온다.
+ * loadtest.ratePerSecond 를 주면 worker 마다 (concurrency / rate) 초 간격으로 보내고,
+ * 그 간격보다 오래 걸린 응답은 recordValueWithExpectedInterval 로 빠진 요청만큼 채워 기록한다.
+ *
+ * ./gradlew loadTest -Dloadtest.concurrency=32 -Dloadtest.mix=v2:1,v3:1
+ * ./gradlew loadTest -Dloadtest.baselineUrl=http://localhost:8081 -Dloadtest.ratePerSecond=20
+ * ./gradlew loadTest -Dloadtest.baseline=build/loadtest/baseline.properties -Dloadtest.updateBaseline=true
+ */
+public class LoadTestRunner {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final LoadTestConfig config;
+    private final RequestMix mix;
+    private final HttpClient client;
+
+    public LoadTestRunner(LoadTestConfig config) {
+        this.config = config;
+        this.mix = new RequestMix(config);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        ConfigurableApplicationContext app = null;
+        if (System.getProperty("loadtest.baseUrl", "").isEmpty()) {
+            app = new SpringApplicationBuilder(QuerydslApplication.class)
+                    .profiles("perf")
+                    .properties("server.port=0")
+                    .run(args);
+            System.setProperty("loadtest.baseUrl", "http://localhost:" + app.getEnvironment().getProperty("local.server.port"));
+        }
+
+        int exitCode;
+        try {
+            exitCode = new LoadTestRunner(LoadTestConfig.load()).run();
+        } finally {
+            if (app != null) {
+                app.close();
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    public int run() throws InterruptedException {
+        boolean relative = !config.getBaselineUrl().isEmpty();
+        System.out.printf("warm up %ds, concurrency %d, mix %s, %s%n", config.getWarmupSeconds(), config.getConcurrency(), config.getMix(),
+                config.getRatePerSecond() > 0 ? config.getRatePerSecond() + " req/s" : "closed loop");
+        if (relative) {
+            execute(config.getBaselineUrl(), config.getWarmupSeconds(), new Measurement(mix.endpoints()));
+        }
+        execute(config.getBaseUrl(), config.getWarmupSeconds(), new Measurement(mix.endpoints()));
+
+        Measurement candidate = new Measurement(mix.endpoints());
+        Measurement baseline = new Measurement(mix.endpoints());
+        int rounds = relative ? Math.max(1, config.getRounds()) : 1;
+        int seconds = Math.max(1, config.getDurationSeconds() / rounds);
+        for (int round = 1; round <= rounds; round++) {
+            if (relative) {
+                System.out.printf("round %d/%d : measure baseline %s %ds%n", round, rounds, config.getBaselineUrl(), seconds);
+                execute(config.getBaselineUrl(), seconds, baseline);
+            }
+            System.out.printf("round %d/%d : measure %s %ds%n", round, rounds, config.getBaseUrl(), seconds);
+            execute(config.getBaseUrl(), seconds, candidate);
+        }
+        LoadTestResult result = candidate.result();
+        System.out.print(result.summary());
+
+        Path resultPath = Paths.get(config.getResult());
+        result.save(resultPath, "load test result");
+        System.out.println("result : " + resultPath.toAbsolutePath());
+
+        if (config.isUpdateBaseline()) {
+            if (config.getBaseline().isEmpty()) {
+                System.out.println("loadtest.updateBaseline needs loadtest.baseline");
+                return 1;
+            }
+            Path baselinePath = Paths.get(config.getBaseline());
+            result.save(baselinePath, "load test baseline (concurrency " + config.getConcurrency() + ", mix " + config.getMix() + ")");
+            System.out.println("baseline updated : " + baselinePath.toAbsolutePath());
+            return 0;
+        }
+
+        int failures = 0;
+        for (String endpoint : result.endpoints()) {
+            if (result.errorRate(endpoint) > config.getMaxErrorRate()) {
+                System.out.printf("FAIL %s error rate %.2f%%%n", endpoint, result.errorRate(endpoint) * 100);
+                failures++;
+            }
+        }
+
+        LoadTestResult reference;
+        if (relative) {
+            reference = baseline.result();
+            System.out.println("baseline " + config.getBaselineUrl());
+            System.out.print(reference.summary());
+        } else if (!config.getBaseline().isEmpty() && Files.exists(Paths.get(config.getBaseline()))) {
+            reference = LoadTestResult.load(Paths.get(config.getBaseline()));
+        } else {
+            System.out.println("no loadtest.baselineUrl or loadtest.baseline, skip regression check");
+            return failures == 0 ? 0 : 1;
+        }
+        List<String> regressions = result.regressions(reference, config.getP99Tolerance(), config.getThroughputTolerance());
+        regressions.forEach(regression -> System.out.println("FAIL " + regression));
+        return failures + regressions.size() == 0 ? 0 : 1;
+    }
+
+    private void execute(String baseUrl, int seconds, Measurement measurement) throws InterruptedException {
+        // worker 하나가 요청을 보내는 간격, 0 이면 closed loop
+        long intervalNanos = config.getRatePerSecond() > 0
+                ? (long) (TimeUnit.SECONDS.toNanos(1) * config.getConcurrency() / config.getRatePerSecond())
+                : 0;
+        long intervalMicros = TimeUnit.NANOSECONDS.toMicros(intervalNanos);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long started = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(config.getConcurrency());
+        for (int i = 0; i < config.getConcurrency(); i++) {
+            workers.execute(() -> {
+                long next = System.nanoTime();
+                while (System.nanoTime() < deadline) {
+                    if (intervalNanos > 0) {
+                        // 밀린 요청을 몰아서 보내지 않는다. 밀린 만큼은 recordValueWithExpectedInterval 이 채운다.
+                        long now = System.nanoTime();
+                        if (next > now) {
+                            LockSupport.parkNanos(next - now);
+                        } else {
+                            next = now;
+                        }
+                        next += intervalNanos;
+                    }
+                    String endpoint = mix.nextEndpoint();
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(mix.uri(baseUrl, endpoint)))
+                            .timeout(Duration.ofSeconds(30))
+                            .GET()
+                            .build();
+                    long start = System.nanoTime();
+                    boolean ok;
+                    try {
+                        ok = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+                    } catch (Exception e) {
+                        ok = false;
+                    }
+                    long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), HIGHEST_TRACKABLE_MICROS);
+                    measurement.record(endpoint, micros, intervalMicros, ok);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+        measurement.seconds += (System.nanoTime() - started) / 1e9;
+    }
+
+    /**
+     * 한 서버에 대한 기록. 라운드마다 이어서 쌓는다.
+     */
+    private static final class Measurement {
+
+        private final Map<String, Histogram> histograms = new LinkedHashMap<>();
+        private final Map<String, LongAdder> requests = new LinkedHashMap<>();
+        private final Map<String, LongAdder> errors = new LinkedHashMap<>();
+        private final Histogram all = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        private double seconds;
+
+        Measurement(List<String> endpoints) {
+            for (String endpoint : endpoints) {
+                histograms.put(endpoint, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+                requests.put(endpoint, new LongAdder());
+                errors.put(endpoint, new LongAdder());
+            }
+            requests.put(LoadTestResult.ALL, new LongAdder());
+            errors.put(LoadTestResult.ALL, new LongAdder());
+        }
+
+        void record(String endpoint, long micros, long intervalMicros, boolean ok) {
+            if (intervalMicros > 0) {
+                histograms.get(endpoint).recordValueWithExpectedInterval(micros, intervalMicros);
+                all.recordValueWithExpectedInterval(micros, intervalMicros);
+            } else {
+                histograms.get(endpoint).recordValue(micros);
+                all.recordValue(micros);
+            }
+            requests.get(endpoint).increment();
+            requests.get(LoadTestResult.ALL).increment();
+            if (!ok) {
+                errors.get(endpoint).increment();
+                errors.get(LoadTestResult.ALL).increment();
+            }
+        }
+
+        /**
+         * 처리량과 건수는 보정으로 채운 값이 아니라 실제로 보낸 요청 수로 센다.
+         */
+        LoadTestResult result() {
+            Map<String, Histogram> result = new LinkedHashMap<>(histograms);
+            result.put(LoadTestResult.ALL, all);
+            return LoadTestResult.of(result, sums(requests), sums(errors), seconds);
+        }
+
+        private static Map<String, Long> sums(Map<String, LongAdder> counters) {
+            Map<String, Long> sums = new LinkedHashMap<>();
+            counters.forEach((endpoint, count) -> sums.put(endpoint, count.sum()));
+            return sums;
+        }
+    }
+}
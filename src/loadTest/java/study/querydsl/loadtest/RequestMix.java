@@ -0,0 +1,87 @@
+package study.querydsl.loadtest;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 설정된 가중치로 /v1, /v2, /v3 요청을 고르고 MemberSearchCondition 파라미터를 무작위로 채운다.
+ * 조건 없는 /v1/members 는 전체 테이블을 반환하므로 v1 요청에는 항상 teamName 을 붙인다.
+ */
+public class RequestMix {
+
+    private final LoadTestConfig config;
+    private final List<String> endpoints = new ArrayList<>();
+    private final int[] cumulativeWeights;
+
+    public RequestMix(LoadTestConfig config) {
+        this.config = config;
+        cumulativeWeights = new int[config.getMix().size()];
+        int sum = 0;
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : config.getMix().entrySet()) {
+            sum += entry.getValue();
+            endpoints.add(entry.getKey());
+            cumulativeWeights[i++] = sum;
+        }
+    }
+
+    public List<String> endpoints() {
+        return endpoints;
+    }
+
+    public String nextEndpoint() {
+        int pick = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return endpoints.get(i);
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    public String uri(String endpoint) {
+        return uri(config.getBaseUrl(), endpoint);
+    }
+
+    public String uri(String baseUrl, String endpoint) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder query = new StringBuilder();
+
+        boolean teamName = random.nextDouble() < config.getTeamNameRatio();
+        if (random.nextDouble() < config.getUsernameRatio()) {
+            param(query, "username", "member" + (random.nextInt(config.getMembers()) + 1));
+        } else if (endpoint.equals("v1")) {
+            teamName = true;
+        }
+        if (teamName) {
+            param(query, "teamName", "team" + (random.nextInt(config.getTeams()) + 1));
+        }
+
+        Integer ageGoe = null;
+        if (random.nextDouble() < config.getAgeGoeRatio()) {
+            ageGoe = random.nextInt(100);
+            param(query, "ageGoe", String.valueOf(ageGoe));
+        }
+        if (random.nextDouble() < config.getAgeLoeRatio()) {
+            int from = ageGoe == null ? 0 : ageGoe;
+            param(query, "ageLoe", String.valueOf(from + random.nextInt(100 - from)));
+        }
+
+        if (!endpoint.equals("v1")) {
+            param(query, "page", String.valueOf(random.nextInt(config.getMaxPage())));
+            param(query, "size", String.valueOf(config.getPageSize()));
+        }
+        return baseUrl + "/" + endpoint + "/members?" + query;
+    }
+
+    private void param(StringBuilder query, String name, String value) {
+        if (query.length() > 0) {
+            query.append('&');
+        }
+        query.append(name).append('=').append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+    }
+}
@@ -1,9 +1,12 @@
 package study.querydsl;
 
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import study.querydsl.controller.InitMember;
+import study.querydsl.controller.PerfInitMember;
 
 import javax.persistence.EntityManager;
 
@@ -14,4 +17,12 @@ public class QuerydslApplication {
 		SpringApplication.run(QuerydslApplication.class, args);
 	}
 
+	/**
+	 * lazy-initialization 을 켜도 @PostConstruct 로 데이터를 넣는 빈은 기동 시점에 생성한다.
+	 */
+	@Bean
+	static LazyInitializationExcludeFilter eagerBeans() {
+		return LazyInitializationExcludeFilter.forBeanTypes(InitMember.class, PerfInitMember.class);
+	}
+
 }
@@ -0,0 +1,112 @@
+package study.querydsl.bulk;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CSV 한 줄(byte[])을 필드 위치로 나눈다. 필드마다 String 을 만들지 않는다.
+ * - 따옴표 필드는 "" 를 " 로 바꾸면서 줄 안에서 앞으로 당긴다. (line 을 고친다)
+ * - 따옴표 안의 줄바꿈은 지원하지 않는다. 파일을 줄 단위로 잘라 병렬로 읽기 때문이다.
+ */
+final class CsvFields {
+
+    private final int[] starts;
+    private final int[] ends;
+
+    CsvFields(int capacity) {
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+    }
+
+    /**
+     * 필드 수. 따옴표가 닫히지 않았거나 닫는 따옴표 뒤에 다른 글자가 있으면 -1
+     * capacity 를 넘는 필드는 세기만 한다.
+     */
+    int split(byte[] line, int length) {
+        int count = 0;
+        int pos = 0;
+        while (true) {
+            int start = pos;
+            int end;
+            if (pos < length && line[pos] == '"') {
+                int write = pos;
+                pos++;
+                while (true) {
+                    if (pos >= length) {
+                        return -1;
+                    }
+                    if (line[pos] == '"') {
+                        if (pos + 1 < length && line[pos + 1] == '"') {
+                            line[write++] = '"';
+                            pos += 2;
+                            continue;
+                        }
+                        pos++;
+                        break;
+                    }
+                    line[write++] = line[pos++];
+                }
+                if (pos < length && line[pos] != ',') {
+                    return -1;
+                }
+                end = write;
+            } else {
+                while (pos < length && line[pos] != ',') {
+                    pos++;
+                }
+                end = pos;
+            }
+            if (count < starts.length) {
+                starts[count] = start;
+                ends[count] = end;
+            }
+            count++;
+            if (pos >= length) {
+                return count;
+            }
+            pos++;
+        }
+    }
+
+    int start(int field) {
+        return starts[field];
+    }
+
+    int length(int field) {
+        return ends[field] - starts[field];
+    }
+
+    String string(byte[] line, int field) {
+        return new String(line, starts[field], length(field), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 부호 있는 10진 정수. 비었거나 숫자가 아니거나 int 범위를 넘으면 NumberFormatException
+     */
+    int parseInt(byte[] line, int field) {
+        int pos = starts[field];
+        int end = ends[field];
+        boolean negative = pos < end && line[pos] == '-';
+        if (negative || (pos < end && line[pos] == '+')) {
+            pos++;
+        }
+        if (pos == end) {
+            throw new NumberFormatException("empty number");
+        }
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = line[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("not a number");
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException("out of int range");
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("out of int range");
+        }
+        return (int) value;
+    }
+}
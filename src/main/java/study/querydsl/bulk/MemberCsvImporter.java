@@ -0,0 +1,585 @@
+package study.querydsl.bulk;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberImportProgress;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.search.MemberChangeSync;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 회원 CSV 를 member 테이블로 가져온다. (em.persist 대신 JDBC batch insert)
+ * - 파일은 member-import.dir 안에 있어야 한다. 첫 줄은 헤더이고 username, age 열이 필요하다. teamName 은 선택이고
+ *   나머지 열은 무시한다. (/v1/members/export 의 CSV 를 그대로 다시 넣을 수 있다)
+ * - 헤더 뒤를 chunk-kb 크기로(줄 경계에 맞춰) 자르고, chunk 마다 파일을 memory-mapped 로 열어 parallelism 개씩 병렬로 읽는다.
+ * - 줄은 String 없이 바이트로 나누고, age 는 바이트에서 바로 읽고, teamName 은 바이트로 TeamIds 에서 찾는다.
+ *   (String 은 username 하나만 만든다) 없는 팀은 create-teams 면 만들고 아니면 거절한다.
+ * - commit-rows 행씩 한 트랜잭션으로 insert 하고 (JDBC batch), 실패하면 그 묶음을 한 행씩 다시 넣어서 실패한 행만 거절한다.
+ * - 거절한 행은 &lt;파일&gt;.rejects.csv 에 (byte offset, 이유, 원래 줄) 로 남긴다.
+ * 작업은 한 번에 하나씩 실행하고, 중간에 실패해도 이미 커밋한 묶음은 남는다.
+ * 커밋마다 change feed 에 BULK 를 남기고, 메모리 읽기 모델은 작업이 끝난 뒤 한 번 다시 적재한다.
+ * 지표 : member.import.rows (result=imported|rejected), member.import.bytes, member.import.commit,
+ * member.import.remaining.bytes (실행 중인 작업의 남은 바이트)
+ */
+@Slf4j
+@Component
+public class MemberCsvImporter {
+
+    static final String INSERT_MEMBER =
+            "insert into member (member_id, username, age, team_id) values (next value for hibernate_sequence, ?, ?, ?)";
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final int MAX_HISTORY = 100;
+
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final MemberChangeSync memberChangeSync;
+    private final Path directory;
+    private final long chunkBytes;
+    private final int commitRows;
+    private final int jdbcBatchSize;
+    private final boolean createTeams;
+    private final ExecutorService jobExecutor;
+    private final ExecutorService chunkExecutor;
+    private final AtomicLong jobIds = new AtomicLong();
+    private final Map<Long, Job> jobs = new LinkedHashMap<>();
+    private final AtomicLong remainingBytes = new AtomicLong();
+
+    private final Counter importedRows;
+    private final Counter rejectedRows;
+    private final Counter readBytes;
+    private final Timer commitTime;
+
+    public MemberCsvImporter(EntityManager em,
+                             TransactionTemplate transactionTemplate,
+                             MemberChangeSync memberChangeSync,
+                             MeterRegistry registry,
+                             @Value("${member-import.dir:${java.io.tmpdir}/member-import}") String directory,
+                             @Value("${member-import.chunk-kb:65536}") long chunkKb,
+                             @Value("${member-import.commit-rows:20000}") int commitRows,
+                             @Value("${member-import.jdbc-batch-size:1000}") int jdbcBatchSize,
+                             @Value("${member-import.create-teams:true}") boolean createTeams,
+                             @Value("${member-import.parallelism:0}") int parallelism,
+                             @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        this.em = em;
+        this.transactionTemplate = transactionTemplate;
+        this.memberChangeSync = memberChangeSync;
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.chunkBytes = Math.max(1, chunkKb) * 1024;
+        this.commitRows = commitRows;
+        this.jdbcBatchSize = jdbcBatchSize;
+        this.createTeams = createTeams;
+        this.jobExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "member-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger workers = new AtomicInteger();
+        this.chunkExecutor = Executors.newFixedThreadPool(parallelism > 0 ? parallelism : Math.max(1, poolSize / 2), runnable -> {
+            Thread thread = new Thread(runnable, "member-import-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.importedRows = Counter.builder("member.import.rows").tag("result", "imported")
+                .description("members inserted by CSV import")
+                .register(registry);
+        this.rejectedRows = Counter.builder("member.import.rows").tag("result", "rejected")
+                .description("CSV rows written to the reject file")
+                .register(registry);
+        this.readBytes = Counter.builder("member.import.bytes")
+                .description("CSV bytes parsed and committed")
+                .baseUnit("bytes")
+                .register(registry);
+        this.commitTime = Timer.builder("member.import.commit")
+                .description("time to insert and commit one batch of imported members")
+                .register(registry);
+        Gauge.builder("member.import.remaining.bytes", remainingBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        chunkExecutor.shutdownNow();
+    }
+
+    /**
+     * member-import.dir 안의 file 을 가져오는 작업을 예약한다. 파일이 없거나 디렉터리 밖이면 IllegalArgumentException
+     */
+    public MemberImportProgress start(String file) {
+        Path path = directory.resolve(file).normalize();
+        if (!path.startsWith(directory) || !Files.isRegularFile(path)) {
+            throw new IllegalArgumentException("no such import file: " + file);
+        }
+        Job job = new Job(jobIds.incrementAndGet(), path);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            if (jobs.size() > MAX_HISTORY) {
+                jobs.remove(jobs.keySet().iterator().next());
+            }
+        }
+        jobExecutor.execute(() -> run(job));
+        return job.progress();
+    }
+
+    public Optional<MemberImportProgress> progress(long jobId) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(jobId)).map(Job::progress);
+        }
+    }
+
+    private void run(Job job) {
+        Path rejectPath = job.file.resolveSibling(job.file.getFileName() + ".rejects.csv");
+        job.started = System.nanoTime();
+        job.status = "RUNNING";
+        try (FileChannel channel = FileChannel.open(job.file, StandardOpenOption.READ);
+             Rejects rejects = new Rejects(rejectPath)) {
+            job.totalBytes = channel.size();
+            remainingBytes.addAndGet(job.totalBytes);
+            Header header = header(channel);
+            job.done(header.end);
+            TeamIds teams = teams();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (long[] chunk : chunks(channel, header.end)) {
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        importChunk(job, channel, chunk, header, teams, rejects);
+                    } catch (RuntimeException e) {
+                        // 나머지 chunk 는 새 묶음을 커밋하지 않고 멈춘다.
+                        job.cancelled = true;
+                        throw e;
+                    }
+                }, chunkExecutor));
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            job.rejectFile = job.rejected.get() > 0 ? rejectPath.toString() : null;
+            job.status = "DONE";
+            log.info("imported {} members from {} ({} rejected)", job.imported.get(), job.file, job.rejected.get());
+        } catch (IOException | RuntimeException e) {
+            log.warn("member import from {} failed", job.file, e);
+            job.error = e.toString();
+            job.rejectFile = job.rejected.get() > 0 ? rejectPath.toString() : null;
+            job.status = "FAILED";
+        } finally {
+            job.finished = System.nanoTime();
+            remainingBytes.addAndGet(-(job.totalBytes - job.readBytes.get()));
+            if (job.imported.get() > 0) {
+                memberChangeSync.invalidateAll();
+            }
+        }
+    }
+
+    private void importChunk(Job job, FileChannel channel, long[] chunk, Header header, TeamIds teams, Rejects rejects) {
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        CsvFields fields = new CsvFields(header.columns);
+        Batch batch = new Batch(commitRows);
+        byte[] line = new byte[1024];
+        int limit = buffer.limit();
+        int committed = 0;
+        int pos = 0;
+        while (pos < limit && !job.cancelled) {
+            int start = pos;
+            int length = 0;
+            for (; pos < limit; pos++) {
+                byte b = buffer.get(pos);
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[length++] = b;
+            }
+            pos++;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length == 0) {
+                continue;
+            }
+            String rejected = parse(line, length, fields, header, teams, batch, start);
+            if (rejected != null) {
+                reject(job, rejects, chunk[0] + start, rejected, new String(line, 0, length, StandardCharsets.UTF_8));
+            }
+            if (batch.size == commitRows) {
+                flush(job, batch, buffer, chunk[0], rejects);
+                int consumed = Math.min(pos, limit);
+                job.done(consumed - committed);
+                committed = consumed;
+            }
+        }
+        if (!job.cancelled) {
+            flush(job, batch, buffer, chunk[0], rejects);
+            job.done(limit - committed);
+        }
+    }
+
+    /**
+     * batch 에 행을 더하고 null, 거절하면 이유
+     */
+    private String parse(byte[] line, int length, CsvFields fields, Header header, TeamIds teams, Batch batch, int start) {
+        int count = fields.split(line, length);
+        if (count < 0) {
+            return "malformed quotes";
+        }
+        if (count != header.columns) {
+            return "expected " + header.columns + " columns but was " + count;
+        }
+        if (fields.length(header.username) == 0) {
+            return "username is empty";
+        }
+        String username = fields.string(line, header.username);
+        if (username.length() > MAX_NAME_LENGTH) {
+            return "username is longer than " + MAX_NAME_LENGTH;
+        }
+        int age;
+        try {
+            age = fields.parseInt(line, header.age);
+        } catch (NumberFormatException e) {
+            return "invalid age";
+        }
+        if (age < 0) {
+            return "invalid age";
+        }
+        long teamId = -1;
+        if (header.teamName >= 0 && fields.length(header.teamName) > 0) {
+            teamId = teams.find(line, fields.start(header.teamName), fields.length(header.teamName));
+            if (teamId < 0) {
+                if (!createTeams) {
+                    return "unknown team";
+                }
+                String teamName = fields.string(line, header.teamName);
+                if (teamName.length() > MAX_NAME_LENGTH) {
+                    return "team name is longer than " + MAX_NAME_LENGTH;
+                }
+                teamId = createTeam(teams, teamName);
+            }
+        }
+        batch.add(username, age, teamId, start);
+        return null;
+    }
+
+    /**
+     * 처음 보는 팀은 엔티티로 저장한다. (읽기 모델 / change feed 가 엔티티 이벤트로 바로 안다)
+     */
+    private long createTeam(TeamIds teams, String name) {
+        synchronized (teams) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            long id = teams.find(bytes, 0, bytes.length);
+            if (id < 0) {
+                Team team = new Team(name);
+                transactionTemplate.executeWithoutResult(status -> em.persist(team));
+                id = team.getId();
+                teams.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    private void flush(Job job, Batch batch, MappedByteBuffer buffer, long chunkStart, Rejects rejects) {
+        if (batch.size == 0) {
+            return;
+        }
+        try {
+            commitTime.record(() -> transactionTemplate.executeWithoutResult(status -> {
+                em.unwrap(Session.class).doWork(connection -> insert(connection, batch, 0, batch.size));
+                memberChangeSync.bulkWritten(Member.class);
+            }));
+            job.imported.addAndGet(batch.size);
+            importedRows.increment(batch.size);
+        } catch (RuntimeException e) {
+            log.warn("import batch of {} rows failed, retrying one by one", batch.size, e);
+            for (int i = 0; i < batch.size; i++) {
+                int row = i;
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        em.unwrap(Session.class).doWork(connection -> insert(connection, batch, row, row + 1));
+                        memberChangeSync.bulkWritten(Member.class);
+                    });
+                    job.imported.incrementAndGet();
+                    importedRows.increment();
+                } catch (RuntimeException rowError) {
+                    reject(job, rejects, chunkStart + batch.lineStarts[row], String.valueOf(rowError.getMessage()),
+                            line(buffer, batch.lineStarts[row]));
+                }
+            }
+        }
+        batch.size = 0;
+    }
+
+    private void insert(Connection connection, Batch batch, int from, int to) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_MEMBER)) {
+            for (int i = from; i < to; i++) {
+                statement.setString(1, batch.usernames[i]);
+                statement.setInt(2, batch.ages[i]);
+                if (batch.teamIds[i] < 0) {
+                    statement.setNull(3, Types.BIGINT);
+                } else {
+                    statement.setLong(3, batch.teamIds[i]);
+                }
+                statement.addBatch();
+                if ((i - from + 1) % jdbcBatchSize == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private void reject(Job job, Rejects rejects, long offset, String reason, String line) {
+        job.rejected.incrementAndGet();
+        rejectedRows.increment();
+        rejects.write(offset, reason, line);
+    }
+
+    private static String line(MappedByteBuffer buffer, int start) {
+        int end = start;
+        while (end < buffer.limit() && buffer.get(end) != '\n') {
+            end++;
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8).replace("\r", "");
+    }
+
+    private TeamIds teams() {
+        TeamIds teams = new TeamIds();
+        List<Object[]> rows = transactionTemplate.execute(status -> em
+                .createQuery("select t.id, t.name from Team t where t.name is not null order by t.id", Object[].class)
+                .getResultList());
+        for (Object[] row : rows) {
+            teams.put((String) row[1], (Long) row[0]);
+        }
+        return teams;
+    }
+
+    /**
+     * 첫 줄(헤더)을 읽어 열 위치를 정한다.
+     */
+    private static Header header(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(64 * 1024);
+        channel.read(head, 0);
+        int end = 0;
+        while (end < head.position() && head.get(end) != '\n') {
+            end++;
+        }
+        String line = new String(head.array(), 0, end, StandardCharsets.UTF_8).replace("\r", "");
+        if (line.startsWith("\uFEFF")) {
+            line = line.substring(1);
+        }
+        String[] names = line.split(",", -1);
+        int username = -1;
+        int age = -1;
+        int teamName = -1;
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].trim();
+            if (name.equals("username")) {
+                username = i;
+            } else if (name.equals("age")) {
+                age = i;
+            } else if (name.equals("teamName")) {
+                teamName = i;
+            }
+        }
+        if (username < 0 || age < 0) {
+            throw new IllegalArgumentException("CSV header needs username and age columns: " + line);
+        }
+        return new Header(names.length, username, age, teamName, Math.min(end + 1, channel.size()));
+    }
+
+    /**
+     * [from, to) 목록. 경계는 줄 시작에 맞춘다.
+     */
+    private List<long[]> chunks(FileChannel channel, long from) throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(8 * 1024);
+        while (from < size) {
+            long to = Math.min(size, from + chunkBytes);
+            while (to < size) {
+                probe.clear();
+                int read = channel.read(probe, to);
+                int newline = -1;
+                for (int i = 0; i < read; i++) {
+                    if (probe.get(i) == '\n') {
+                        newline = i;
+                        break;
+                    }
+                }
+                if (newline >= 0) {
+                    to += newline + 1;
+                    break;
+                }
+                to += Math.max(read, 0);
+            }
+            chunks.add(new long[]{from, Math.min(to, size)});
+            from = to;
+        }
+        return chunks;
+    }
+
+    private static final class Header {
+
+        private final int columns;
+        private final int username;
+        private final int age;
+        private final int teamName;
+        private final long end;
+
+        Header(int columns, int username, int age, int teamName, long end) {
+            this.columns = columns;
+            this.username = username;
+            this.age = age;
+            this.teamName = teamName;
+            this.end = end;
+        }
+    }
+
+    /**
+     * 한 트랜잭션으로 넣을 행들. teamId 가 -1 이면 팀 없음, lineStart 는 chunk 안의 줄 시작 위치
+     */
+    private static final class Batch {
+
+        private final String[] usernames;
+        private final int[] ages;
+        private final long[] teamIds;
+        private final int[] lineStarts;
+        private int size;
+
+        Batch(int capacity) {
+            usernames = new String[capacity];
+            ages = new int[capacity];
+            teamIds = new long[capacity];
+            lineStarts = new int[capacity];
+        }
+
+        void add(String username, int age, long teamId, int lineStart) {
+            usernames[size] = username;
+            ages[size] = age;
+            teamIds[size] = teamId;
+            lineStarts[size] = lineStart;
+            size++;
+        }
+    }
+
+    /**
+     * 거절한 행 파일. 처음 거절할 때 만든다. (offset,reason,line)
+     */
+    private static final class Rejects implements AutoCloseable {
+
+        private final Path path;
+        private Writer writer;
+
+        Rejects(Path path) throws IOException {
+            this.path = path;
+            Files.deleteIfExists(path);
+        }
+
+        synchronized void write(long offset, String reason, String line) {
+            try {
+                if (writer == null) {
+                    writer = new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+                    writer.write("offset,reason,line\n");
+                }
+                writer.write(offset + "," + quote(reason) + "," + quote(line) + "\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+
+        private static String quote(String value) {
+            return '"' + value.replace("\"", "\"\"").replace("\n", " ") + '"';
+        }
+    }
+
+    private final class Job {
+
+        private final long id;
+        private final Path file;
+        private final AtomicLong readBytes = new AtomicLong();
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private volatile String status = "QUEUED";
+        private volatile long totalBytes;
+        private volatile long started;
+        private volatile long finished;
+        private volatile boolean cancelled;
+        private volatile String rejectFile;
+        private volatile String error;
+
+        Job(long id, Path file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        void done(long bytes) {
+            readBytes.addAndGet(bytes);
+            MemberCsvImporter.this.readBytes.increment(bytes);
+            remainingBytes.addAndGet(-bytes);
+        }
+
+        MemberImportProgress progress() {
+            long end = finished != 0 ? finished : System.nanoTime();
+            double seconds = started == 0 ? 0 : (end - started) / (double) TimeUnit.SECONDS.toNanos(1);
+            return new MemberImportProgress(id, directory.relativize(file).toString(), status, totalBytes, readBytes.get(),
+                    imported.get(), rejected.get(), seconds > 0 ? imported.get() / seconds : 0, rejectFile, error);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package study.querydsl.bulk;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 팀 이름(UTF-8) → team_id. 줄 안의 바이트로 바로 찾으므로 조회할 때 String 을 만들지 않는다.
+ * open addressing 표이며, 조회는 잠금 없이 하고 추가는 한 번에 하나씩(synchronized) 한다.
+ * 이름이 같은 팀이 여럿이면 먼저 넣은 것(가장 작은 id)을 쓴다.
+ */
+final class TeamIds {
+
+    private static final long MISSING = -1;
+
+    private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(1024);
+    private int size;
+
+    /**
+     * 없으면 -1
+     */
+    long find(byte[] bytes, int offset, int length) {
+        AtomicReferenceArray<Entry> current = table;
+        int mask = current.length() - 1;
+        for (int slot = hash(bytes, offset, length) & mask; ; slot = (slot + 1) & mask) {
+            Entry entry = current.get(slot);
+            if (entry == null) {
+                return MISSING;
+            }
+            if (Arrays.equals(entry.name, 0, entry.name.length, bytes, offset, offset + length)) {
+                return entry.id;
+            }
+        }
+    }
+
+    synchronized void put(String name, long id) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (find(bytes, 0, bytes.length) != MISSING) {
+            return;
+        }
+        if ((size + 1) * 2 > table.length()) {
+            AtomicReferenceArray<Entry> grown = new AtomicReferenceArray<>(table.length() * 2);
+            for (int i = 0; i < table.length(); i++) {
+                Entry entry = table.get(i);
+                if (entry != null) {
+                    insert(grown, entry);
+                }
+            }
+            table = grown;
+        }
+        insert(table, new Entry(bytes, id));
+        size++;
+    }
+
+    private static void insert(AtomicReferenceArray<Entry> target, Entry entry) {
+        int mask = target.length() - 1;
+        int slot = hash(entry.name, 0, entry.name.length) & mask;
+        while (target.get(slot) != null) {
+            slot = (slot + 1) & mask;
+        }
+        target.set(slot, entry);
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Entry {
+
+        private final byte[] name;
+        private final long id;
+
+        Entry(byte[] name, long id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+}
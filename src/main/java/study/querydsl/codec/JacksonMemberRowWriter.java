@@ -0,0 +1,65 @@
+package study.querydsl.codec;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.data.domain.Page;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Smile / CBOR. 행마다 필드 이름을 반복하지 않도록 [memberId, username, age, teamId, teamName] 배열로 쓴다.
+ */
+class JacksonMemberRowWriter implements MemberRowWriter {
+
+    private final JsonFactory factory;
+
+    JacksonMemberRowWriter(JsonFactory factory) {
+        this.factory = factory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void writeList(Iterator<MemberTeamDto> rows, OutputStream out) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            writeRows(rows, generator);
+        }
+    }
+
+    @Override
+    public void writePage(Page<MemberTeamDto> page, OutputStream out) throws IOException {
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeFieldName("content");
+            writeRows(page.getContent().iterator(), generator);
+            generator.writeNumberField("totalElements", page.getTotalElements());
+            generator.writeNumberField("number", page.getNumber());
+            generator.writeNumberField("size", page.getSize());
+            generator.writeEndObject();
+        }
+    }
+
+    private static void writeRows(Iterator<MemberTeamDto> rows, JsonGenerator generator) throws IOException {
+        generator.writeStartArray();
+        while (rows.hasNext()) {
+            MemberTeamDto row = rows.next();
+            generator.writeStartArray();
+            writeNumber(generator, row.getMemberId());
+            generator.writeString(row.getUsername());
+            generator.writeNumber(row.getAge());
+            writeNumber(generator, row.getTeamId());
+            generator.writeString(row.getTeamName());
+            generator.writeEndArray();
+        }
+        generator.writeEndArray();
+    }
+
+    private static void writeNumber(JsonGenerator generator, Long value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+}
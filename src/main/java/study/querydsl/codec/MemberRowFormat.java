@@ -0,0 +1,63 @@
+package study.querydsl.codec;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * MemberTeamDto 목록 / 페이지의 바이너리 응답 형식
+ * - SMILE, CBOR : 행은 [memberId, username, age, teamId, teamName] 배열이다. (필드 이름 없음)
+ *   목록은 행 배열, 페이지는 {content, totalElements, number, size}
+ * - PROTOBUF : proto/member_team.proto 의 MemberTeamList / MemberTeamPage
+ * 행은 하나씩 인코딩해서 바로 출력 스트림에 쓴다.
+ */
+public enum MemberRowFormat {
+
+    SMILE(MemberRowFormat.SMILE_VALUE, new JacksonMemberRowWriter(new SmileFactory())),
+    CBOR(MemberRowFormat.CBOR_VALUE, new JacksonMemberRowWriter(new CBORFactory())),
+    PROTOBUF(MemberRowFormat.PROTOBUF_VALUE, new ProtobufMemberRowWriter());
+
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+    public static final String CBOR_VALUE = "application/cbor";
+    public static final String PROTOBUF_VALUE = "application/x-protobuf";
+
+    private final MediaType mediaType;
+    private final MemberRowWriter writer;
+
+    MemberRowFormat(String mediaType, MemberRowWriter writer) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+        this.writer = writer;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public MemberRowWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Accept 헤더에 명시된 형식 중 가장 우선하는 것이 바이너리 형식이면 그 형식 (*&#47;*, application/* 는 보지 않는다)
+     * 비어 있으면 호출한 쪽의 기본 형식(CSV 등)으로 응답한다.
+     */
+    public static Optional<MemberRowFormat> negotiate(String accept) {
+        List<MediaType> acceptable = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(acceptable);
+        for (MediaType mediaType : acceptable) {
+            if (mediaType.isWildcardType() || mediaType.isWildcardSubtype()) {
+                continue;
+            }
+            for (MemberRowFormat format : values()) {
+                if (mediaType.equalsTypeAndSubtype(format.mediaType)) {
+                    return Optional.of(format);
+                }
+            }
+            return Optional.empty();
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,29 @@
+package study.querydsl.codec;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class MemberRowFormatConfig implements WebMvcConfigurer {
+
+    /**
+     * 같은 형식을 쓰는 기본 컨버터(MappingJackson2SmileHttpMessageConverter 등) 바로 앞에, 없으면 맨 뒤에 붙인다.
+     * JSON 컨버터보다 앞에 두면 Accept: *&#47;* 요청도 바이너리로 응답하므로 앞에 두지 않는다.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (MemberRowFormat format : MemberRowFormat.values()) {
+            int index = converters.size();
+            for (int i = 0; i < converters.size(); i++) {
+                if (converters.get(i).getSupportedMediaTypes().contains(format.getMediaType())) {
+                    index = i;
+                    break;
+                }
+            }
+            converters.add(index, new MemberRowHttpMessageConverter(format));
+        }
+    }
+}
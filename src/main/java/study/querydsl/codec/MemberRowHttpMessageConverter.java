@@ -0,0 +1,72 @@
+package study.querydsl.codec;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.data.domain.Page;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * List&lt;MemberTeamDto&gt; / Page&lt;MemberTeamDto&gt; 응답만 MemberRowFormat 으로 쓴다. (요청 본문은 읽지 않는다)
+ */
+public class MemberRowHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+    private final MemberRowFormat format;
+
+    public MemberRowHttpMessageConverter(MemberRowFormat format) {
+        super(format.getMediaType());
+        this.format = format;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz) || Page.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        if (!supports(clazz) || !canWrite(mediaType)) {
+            return false;
+        }
+        ResolvableType resolved = ResolvableType.forType(type != null ? type : clazz);
+        ResolvableType container = Page.class.isAssignableFrom(clazz) ? resolved.as(Page.class) : resolved.as(List.class);
+        return container.getGeneric(0).resolve() == MemberTeamDto.class;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+        if (value instanceof Page) {
+            format.getWriter().writePage((Page<MemberTeamDto>) value, outputMessage.getBody());
+        } else {
+            format.getWriter().writeList(((List<MemberTeamDto>) value).iterator(), outputMessage.getBody());
+        }
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException(format + " request bodies are not supported", inputMessage);
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException(format + " request bodies are not supported", inputMessage);
+    }
+}
@@ -0,0 +1,18 @@
+package study.querydsl.codec;
+
+import org.springframework.data.domain.Page;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * MemberTeamDto 를 한 행씩 out 에 인코딩한다. out 은 닫지 않는다.
+ */
+public interface MemberRowWriter {
+
+    void writeList(Iterator<MemberTeamDto> rows, OutputStream out) throws IOException;
+
+    void writePage(Page<MemberTeamDto> page, OutputStream out) throws IOException;
+}
@@ -0,0 +1,84 @@
+package study.querydsl.codec;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import org.springframework.data.domain.Page;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * proto/member_team.proto 의 MemberTeamList / MemberTeamPage.
+ * repeated 필드는 이어 붙이기만 하면 되므로 행마다 MemberTeam 하나를 길이와 함께 바로 쓴다.
+ * 생성된 메시지 클래스 없이 CodedOutputStream 으로 같은 바이트를 쓴다. (필드 번호는 .proto 와 맞춘다)
+ */
+class ProtobufMemberRowWriter implements MemberRowWriter {
+
+    private static final int ROWS = 1;
+    private static final int TOTAL_ELEMENTS = 2;
+    private static final int NUMBER = 3;
+    private static final int SIZE = 4;
+
+    private static final int MEMBER_ID = 1;
+    private static final int USERNAME = 2;
+    private static final int AGE = 3;
+    private static final int TEAM_ID = 4;
+    private static final int TEAM_NAME = 5;
+
+    @Override
+    public void writeList(Iterator<MemberTeamDto> rows, OutputStream out) throws IOException {
+        CodedOutputStream output = CodedOutputStream.newInstance(out);
+        writeRows(rows, output);
+        output.flush();
+    }
+
+    @Override
+    public void writePage(Page<MemberTeamDto> page, OutputStream out) throws IOException {
+        CodedOutputStream output = CodedOutputStream.newInstance(out);
+        writeRows(page.getContent().iterator(), output);
+        output.writeInt64(TOTAL_ELEMENTS, page.getTotalElements());
+        output.writeInt32(NUMBER, page.getNumber());
+        output.writeInt32(SIZE, page.getSize());
+        output.flush();
+    }
+
+    private static void writeRows(Iterator<MemberTeamDto> rows, CodedOutputStream output) throws IOException {
+        while (rows.hasNext()) {
+            MemberTeamDto row = rows.next();
+            output.writeTag(ROWS, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(size(row));
+            if (row.getMemberId() != null) {
+                output.writeInt64(MEMBER_ID, row.getMemberId());
+            }
+            if (row.getUsername() != null) {
+                output.writeString(USERNAME, row.getUsername());
+            }
+            output.writeInt32(AGE, row.getAge());
+            if (row.getTeamId() != null) {
+                output.writeInt64(TEAM_ID, row.getTeamId());
+            }
+            if (row.getTeamName() != null) {
+                output.writeString(TEAM_NAME, row.getTeamName());
+            }
+        }
+    }
+
+    private static int size(MemberTeamDto row) {
+        int size = CodedOutputStream.computeInt32Size(AGE, row.getAge());
+        if (row.getMemberId() != null) {
+            size += CodedOutputStream.computeInt64Size(MEMBER_ID, row.getMemberId());
+        }
+        if (row.getUsername() != null) {
+            size += CodedOutputStream.computeStringSize(USERNAME, row.getUsername());
+        }
+        if (row.getTeamId() != null) {
+            size += CodedOutputStream.computeInt64Size(TEAM_ID, row.getTeamId());
+        }
+        if (row.getTeamName() != null) {
+            size += CodedOutputStream.computeStringSize(TEAM_NAME, row.getTeamName());
+        }
+        return size;
+    }
+}
@@ -0,0 +1,22 @@
+package study.querydsl.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import study.querydsl.limit.ConcurrencyLimitExceededException;
+
+/**
+ * limiter 가 거절한 요청은 바로 503 으로 응답한다. 클라이언트는 잠시 뒤 다시 시도한다.
+ */
+@RestControllerAdvice
+public class ConcurrencyLimitAdvice {
+
+    @ExceptionHandler(ConcurrencyLimitExceededException.class)
+    public ResponseEntity<Void> concurrencyLimitExceeded() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .build();
+    }
+}
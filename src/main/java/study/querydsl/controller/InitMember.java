@@ -1,7 +1,10 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import study.querydsl.entity.Member;
@@ -18,9 +21,24 @@ public class InitMember {
 
     private final InitMemberService initMemberService;
 
+    @Value("${init-member.deferred:false}")
+    private boolean deferred;
+
     @PostConstruct
     public void init(){
-        initMemberService.init();
+        if (!deferred) {
+            initMemberService.init();
+        }
+    }
+
+    /**
+     * fast-startup 프로파일 : 기동이 끝난 뒤(요청을 받을 수 있는 상태)에 데이터를 넣는다.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initDeferred(){
+        if (deferred) {
+            initMemberService.init();
+        }
     }
 
     @Component
@@ -30,6 +48,12 @@ public class InitMember {
 
         @Transactional
         public void init(){
+            // validate / update 로 스키마를 유지하는 경우 재기동할 때마다 중복으로 넣지 않는다.
+            Long teams = em.createQuery("select count(t) from Team t", Long.class).getSingleResult();
+            if (teams > 0) {
+                return;
+            }
+
             Team teamA = new Team("teamA");
             Team teamB = new Team("teamB");
 
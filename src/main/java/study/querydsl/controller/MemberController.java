@@ -1,16 +1,44 @@
 package study.querydsl.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import study.querydsl.bulk.MemberCsvImporter;
+import study.querydsl.codec.MemberRowFormat;
+import study.querydsl.dto.ArrowExportResult;
+import study.querydsl.dto.MemberChangePage;
+import study.querydsl.dto.MemberImportProgress;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.MemberUsernameDto;
+import study.querydsl.feed.MemberChangeFeed;
 import study.querydsl.repository.MemberJpaRepository;
 import study.querydsl.repository.MemberRepository;
+import study.querydsl.timeout.QueryTimeouts;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @RestController
 @RequiredArgsConstructor
@@ -18,19 +46,124 @@ public class MemberController {
 
     private final MemberJpaRepository memberJpaRepository;
     private final MemberRepository memberRepository;
+    private final MemberChangeFeed memberChangeFeed;
+    private final QueryTimeouts queryTimeouts;
+    private final MemberCsvImporter memberCsvImporter;
 
+    /**
+     * 검색은 query-timeout.endpoints 의 제한 시간으로 실행하고, 클라이언트가 끊으면 쿼리를 취소한다.
+     * /v1 ~ /v3 검색은 Accept 에 따라 JSON 또는 MemberRowFormat(Smile, CBOR, Protobuf)으로 응답한다.
+     */
     @GetMapping("/v1/members")
-    public List<MemberTeamDto> searchMemberV1(MemberSearchCondition condition) {
-        return memberJpaRepository.search(condition);
+    public WebAsyncTask<List<MemberTeamDto>> searchMemberV1(MemberSearchCondition condition) {
+        return queryTimeouts.endpoint("searchMemberV1", () -> memberJpaRepository.search(condition));
+    }
+
+    @GetMapping("/v1/members/usernames")
+    public List<MemberUsernameDto> autocompleteUsername(@RequestParam String prefix,
+                                                        @RequestParam(defaultValue = "10") int limit) {
+        return memberJpaRepository.searchUsernamePrefix(prefix, limit);
+    }
+
+    /**
+     * 조건에 맞는 회원 전체를 member_id 순으로 내려준다.
+     * Accept 에 바이너리 형식(MemberRowFormat)이 있으면 그 형식으로, 없으면 CSV 로 한 행씩 쓴다.
+     */
+    @GetMapping(value = "/v1/members/export",
+            produces = {"text/csv", MemberRowFormat.SMILE_VALUE, MemberRowFormat.CBOR_VALUE, MemberRowFormat.PROTOBUF_VALUE})
+    public ResponseEntity<StreamingResponseBody> exportMemberV1(MemberSearchCondition condition,
+                                                                @RequestHeader(value = HttpHeaders.ACCEPT, defaultValue = "*/*") String accept) {
+        Optional<MemberRowFormat> format = MemberRowFormat.negotiate(accept);
+        if (format.isPresent()) {
+            return ResponseEntity.ok()
+                    .contentType(format.get().getMediaType())
+                    .body(out -> {
+                        try (Stream<MemberTeamDto> members = memberJpaRepository.export(condition)) {
+                            format.get().getWriter().writeList(members.iterator(), out);
+                        }
+                    });
+        }
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(out -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                    writer.write("memberId,username,age,teamId,teamName\n");
+                    try (Stream<MemberTeamDto> members = memberJpaRepository.export(condition)) {
+                        Iterator<MemberTeamDto> iterator = members.iterator();
+                        while (iterator.hasNext()) {
+                            MemberTeamDto dto = iterator.next();
+                            writer.write(dto.getMemberId() + "," + csv(dto.getUsername()) + "," + dto.getAge() + ","
+                                    + (dto.getTeamId() == null ? "" : dto.getTeamId()) + "," + csv(dto.getTeamName()) + "\n");
+                        }
+                    }
+                    writer.flush();
+                });
+    }
+
+    /**
+     * 조건에 맞는 회원 전체를 서버의 arrow-export.dir 아래 Arrow IPC 파일로 쓰고 파일 목록을 돌려준다.
+     */
+    @PostMapping("/v1/members/export/arrow")
+    public ArrowExportResult exportMemberArrowV1(MemberSearchCondition condition) {
+        return memberJpaRepository.exportArrow(condition);
+    }
+
+    /**
+     * member-import.dir 안의 회원 CSV 를 가져오는 작업을 시작한다. 진행 상황은 /v1/members/import/{jobId}
+     */
+    @PostMapping("/v1/members/import")
+    public ResponseEntity<MemberImportProgress> importMemberV1(@RequestParam String file) {
+        try {
+            return ResponseEntity.accepted().body(memberCsvImporter.start(file));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    @GetMapping("/v1/members/import/{jobId}")
+    public ResponseEntity<MemberImportProgress> importProgressV1(@PathVariable long jobId) {
+        return ResponseEntity.of(memberCsvImporter.progress(jobId));
+    }
+
+    /**
+     * since 이후 Member / Team 변경 (change feed). 응답의 next 로 이어서 읽는다.
+     */
+    @GetMapping("/v1/members/changes")
+    public MemberChangePage memberChangesV1(@RequestParam(defaultValue = "0") long since,
+                                            @RequestParam(defaultValue = "100") int limit) {
+        return memberChangeFeed.changes(since, limit);
+    }
+
+    @GetMapping("/v1/members/{id}")
+    public ResponseEntity<MemberTeamDto> findMemberV1(@PathVariable Long id) {
+        return ResponseEntity.of(memberJpaRepository.findMemberTeamDtoById(id));
     }
 
     @GetMapping("/v2/members")
-    public Page<MemberTeamDto> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageSimple(condition, pageable);
+    public WebAsyncTask<Page<MemberTeamDto>> searchMemberV2(MemberSearchCondition condition, Pageable pageable) {
+        return queryTimeouts.endpoint("searchMemberV2", () -> memberRepository.searchPageSimple(condition, pageable));
     }
 
     @GetMapping("/v3/members")
-    public Page<MemberTeamDto> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
-        return memberRepository.searchPageComplex(condition, pageable);
+    public WebAsyncTask<Page<MemberTeamDto>> searchMemberV3(MemberSearchCondition condition, Pageable pageable) {
+        return queryTimeouts.endpoint("searchMemberV3", () -> memberRepository.searchPageComplex(condition, pageable));
+    }
+
+    /**
+     * 제한 시간을 넘긴 검색 (statement timeout, deadline 초과)
+     */
+    @ExceptionHandler({QueryTimeoutException.class, javax.persistence.QueryTimeoutException.class})
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void queryTimeout() {
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
     }
 }
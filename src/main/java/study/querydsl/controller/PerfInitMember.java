@@ -0,0 +1,130 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * perf 프로파일 데이터 초기화
+ * 1. DB 에 이미 회원이 있으면(file 기반 DB 재사용) 그대로 사용
+ * 2. snapshot-dir 에 CSV 스냅샷이 있으면 CSVREAD 로 적재
+ * 3. 없으면 SYSTEM_RANGE 로 결정적인 데이터를 생성하고 스냅샷으로 저장
+ */
+@Profile("perf")
+@Component
+@RequiredArgsConstructor
+public class PerfInitMember {
+
+    private final PerfInitMemberService perfInitMemberService;
+
+    @Value("${init-member.deferred:false}")
+    private boolean deferred;
+
+    @PostConstruct
+    public void init() {
+        if (!deferred) {
+            perfInitMemberService.init();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initDeferred() {
+        if (deferred) {
+            perfInitMemberService.init();
+        }
+    }
+
+    @Component
+    @Profile("perf")
+    static class PerfInitMemberService {
+        @PersistenceContext
+        EntityManager em;
+
+        @Value("${perf.seed.teams}")
+        int teams;
+
+        @Value("${perf.seed.members}")
+        int members;
+
+        @Value("${perf.seed.snapshot-dir}")
+        String snapshotDir;
+
+        @Transactional
+        public void init() {
+            Long count = em.createQuery("select count(m) from Member m", Long.class)
+                    .getSingleResult();
+            if (count > 0) {
+                return;
+            }
+
+            Path teamCsv = Paths.get(snapshotDir, "team.csv").toAbsolutePath();
+            Path memberCsv = Paths.get(snapshotDir, "member.csv").toAbsolutePath();
+
+            if (Files.exists(teamCsv) && Files.exists(memberCsv)) {
+                load(teamCsv, memberCsv);
+            } else {
+                generate();
+                save(teamCsv, memberCsv);
+            }
+
+            Number maxId = (Number) em.createNativeQuery("select coalesce(max(member_id), 0) from member")
+                    .getSingleResult();
+            em.createNativeQuery("alter sequence hibernate_sequence restart with " + (maxId.longValue() + 1))
+                    .executeUpdate();
+        }
+
+        private void load(Path teamCsv, Path memberCsv) {
+            // CSVREAD 테이블 함수는 파라미터 바인딩이 안 되므로 리터럴로 전달
+            em.createNativeQuery("insert into team (team_id, name) " +
+                            "select team_id, name from csvread(" + literal(teamCsv) + ")")
+                    .executeUpdate();
+            em.createNativeQuery("insert into member (member_id, username, age, team_id) " +
+                            "select member_id, username, age, team_id from csvread(" + literal(memberCsv) + ")")
+                    .executeUpdate();
+        }
+
+        private void generate() {
+            em.createNativeQuery("insert into team (team_id, name) " +
+                            "select x, 'team' || x from system_range(1, ?)")
+                    .setParameter(1, teams)
+                    .executeUpdate();
+            em.createNativeQuery("insert into member (member_id, username, age, team_id) " +
+                            "select ? + x, 'member' || x, mod(x, 100), mod(x, ?) + 1 from system_range(1, ?)")
+                    .setParameter(1, teams)
+                    .setParameter(2, teams)
+                    .setParameter(3, members)
+                    .executeUpdate();
+        }
+
+        private void save(Path teamCsv, Path memberCsv) {
+            try {
+                Files.createDirectories(teamCsv.getParent());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            em.createNativeQuery("call csvwrite(?, 'select team_id, name from team order by team_id')")
+                    .setParameter(1, teamCsv.toString())
+                    .getSingleResult();
+            em.createNativeQuery("call csvwrite(?, 'select member_id, username, age, team_id from member order by member_id')")
+                    .setParameter(1, memberCsv.toString())
+                    .getSingleResult();
+        }
+
+        private String literal(Path path) {
+            return "'" + path.toString().replace("'", "''") + "'";
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package study.querydsl.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import study.querydsl.dto.TeamMemberPage;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.stats.TeamStatsStore;
+
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+public class TeamController {
+
+    private final TeamStatsStore teamStatsStore;
+    private final MemberJpaRepository memberJpaRepository;
+
+    @GetMapping("/v1/teams/stats")
+    public List<TeamStatsDto> teamStats() {
+        return teamStatsStore.stats();
+    }
+
+    /**
+     * 메모리 집계와 전체 집계 쿼리가 다른 팀 이름 (다르면 다시 적재)
+     */
+    @PostMapping("/v1/teams/stats/reconcile")
+    public List<String> reconcileTeamStats() {
+        return teamStatsStore.reconcile();
+    }
+
+    /**
+     * 팀 회원을 member_id 순으로 limit 명씩. 다음 페이지는 after=next
+     */
+    @GetMapping("/v1/teams/{teamId}/members")
+    public TeamMemberPage teamMembers(@PathVariable Long teamId,
+                                      @RequestParam(defaultValue = "0") long after,
+                                      @RequestParam(defaultValue = "100") int limit) {
+        return memberJpaRepository.findTeamMembers(teamId, after, limit);
+    }
+}
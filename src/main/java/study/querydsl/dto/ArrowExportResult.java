@@ -0,0 +1,18 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Arrow 내보내기 결과. files 는 directory 안의 파일 이름 (member_id 범위마다 하나, 범위 순)
+ */
+@Data
+public class ArrowExportResult {
+
+    private final String directory;
+    private final List<String> files;
+    private final long rows;
+    private final long bytes;
+    private final long millis;
+}
@@ -0,0 +1,36 @@
+package study.querydsl.dto;
+
+import com.querydsl.core.annotations.QueryProjection;
+import lombok.Data;
+import study.querydsl.entity.MemberChange.Operation;
+import study.querydsl.entity.MemberChange.Target;
+
+import java.time.LocalDateTime;
+
+@Data
+public class MemberChangeDto {
+
+    private Long changeId;
+    private Target target;
+    private Long entityId;
+    private Operation operation;
+    private String username;
+    private Integer age;
+    private Long teamId;
+    private String teamName;
+    private LocalDateTime changedAt;
+
+    @QueryProjection
+    public MemberChangeDto(Long changeId, Target target, Long entityId, Operation operation,
+                           String username, Integer age, Long teamId, String teamName, LocalDateTime changedAt) {
+        this.changeId = changeId;
+        this.target = target;
+        this.entityId = entityId;
+        this.operation = operation;
+        this.username = username;
+        this.age = age;
+        this.teamId = teamId;
+        this.teamName = teamName;
+        this.changedAt = changedAt;
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * change feed 한 페이지. 다음 요청은 since=next 로 이어서 읽는다.
+ */
+@Data
+public class MemberChangePage {
+
+    private final List<MemberChangeDto> changes;
+    private final long next;
+}
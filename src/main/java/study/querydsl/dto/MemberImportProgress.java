@@ -0,0 +1,22 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+/**
+ * 회원 CSV 가져오기 작업 상태 (MemberCsvImporter)
+ * status : QUEUED, RUNNING, DONE, FAILED. rejectFile 은 거절한 행이 있을 때만 있다.
+ */
+@Data
+public class MemberImportProgress {
+
+    private final long id;
+    private final String file;
+    private final String status;
+    private final long totalBytes;
+    private final long readBytes;
+    private final long imported;
+    private final long rejected;
+    private final double rowsPerSecond;
+    private final String rejectFile;
+    private final String error;
+}
@@ -0,0 +1,18 @@
+package study.querydsl.dto;
+
+import com.querydsl.core.annotations.QueryProjection;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+public class MemberUsernameDto {
+    private Long memberId;
+    private String username;
+
+    @QueryProjection
+    public MemberUsernameDto(Long memberId, String username) {
+        this.memberId = memberId;
+        this.username = username;
+    }
+}
@@ -0,0 +1,15 @@
+package study.querydsl.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 팀 회원 한 페이지 (member_id 순). 다음 요청은 after=next 로 이어서 읽고, members 가 비면 끝이다.
+ */
+@Data
+public class TeamMemberPage {
+
+    private final List<MemberTeamDto> members;
+    private final long next;
+}
@@ -0,0 +1,29 @@
+package study.querydsl.dto;
+
+import com.querydsl.core.annotations.QueryProjection;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 팀 이름별 member.age 집계. avg 는 sum / count
+ */
+@Data
+@NoArgsConstructor
+public class TeamStatsDto {
+    private String teamName;
+    private long count;
+    private long sum;
+    private double avg;
+    private int max;
+    private int min;
+
+    @QueryProjection
+    public TeamStatsDto(String teamName, Long count, Long sum, Integer max, Integer min) {
+        this.teamName = teamName;
+        this.count = count;
+        this.sum = sum;
+        this.avg = count == 0 ? 0 : (double) sum / count;
+        this.max = max;
+        this.min = min;
+    }
+}
@@ -7,6 +7,11 @@ import javax.persistence.*;
 import static javax.persistence.FetchType.LAZY;
 
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_member_username", columnList = "username"),
+        @Index(name = "idx_member_team_id", columnList = "team_id, member_id"),
+        // 팀별 나이 순위 / 팀 평균 (oldestMembersPerTeam, membersAboveTeamAverage)
+        @Index(name = "idx_member_team_id_age", columnList = "team_id, age")})
 @Getter @Setter
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 @ToString
@@ -41,8 +46,14 @@ public class Member {
         }
     }
 
-    private void changeTeam(Team team) {
+    /**
+     * Team.members 는 로딩되어 있을 때만 맞춘다. (Team.addMember)
+     */
+    public void changeTeam(Team team) {
+        if (this.team != null) {
+            this.team.removeMember(this);
+        }
         this.team = team;
-        team.getMembers().add(this);
+        team.addMember(this);
     }
 }
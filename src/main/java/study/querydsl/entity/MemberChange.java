@@ -0,0 +1,80 @@
+package study.querydsl.entity;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Member / Team 변경 이력 (change feed). 변경과 같은 트랜잭션에서 쌓인다.
+ * change_id 순서가 곧 읽는 순서이고, 행에는 변경 후 값이 들어간다. (DELETE 는 삭제 직전 값)
+ * changedAt 은 변경 시각이 아니라 기록(insert) 시각이다.
+ * BULK 는 어떤 행이 바뀌었는지 모르는 bulk DML, TRUNCATED 는 보관 기간이 지나 앞쪽 이력이 지워졌다는 표시다.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_member_change_target", columnList = "target, entity_id"))
+@Getter
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@ToString
+public class MemberChange {
+    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "change_id")
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    private Target target;
+
+    @Column(name = "entity_id")
+    private Long entityId;
+
+    @Enumerated(EnumType.STRING)
+    private Operation operation;
+
+    private String username;
+
+    private Integer age;
+
+    private Long teamId;
+
+    private String teamName;
+
+    private LocalDateTime changedAt;
+
+    public enum Target {
+        MEMBER, TEAM
+    }
+
+    public enum Operation {
+        INSERT, UPDATE, DELETE, BULK, TRUNCATED
+    }
+
+    public static MemberChange member(Operation operation, Long memberId, String username, Integer age, Long teamId) {
+        MemberChange change = new MemberChange(Target.MEMBER, memberId, operation);
+        change.username = username;
+        change.age = age;
+        change.teamId = teamId;
+        return change;
+    }
+
+    public static MemberChange team(Operation operation, Long teamId, String teamName) {
+        MemberChange change = new MemberChange(Target.TEAM, teamId, operation);
+        change.teamId = teamId;
+        change.teamName = teamName;
+        return change;
+    }
+
+    public static MemberChange bulk(Target target) {
+        return new MemberChange(target, null, Operation.BULK);
+    }
+
+    private MemberChange(Target target, Long entityId, Operation operation) {
+        this.target = target;
+        this.entityId = entityId;
+        this.operation = operation;
+    }
+
+    @PrePersist
+    void prePersist() {
+        changedAt = LocalDateTime.now();
+    }
+}
@@ -1,6 +1,10 @@
 package study.querydsl.entity;
 
 import lombok.*;
+import org.hibernate.Hibernate;
+import org.hibernate.annotations.LazyCollection;
+import org.hibernate.annotations.LazyCollectionOption;
+import org.hibernate.collection.internal.AbstractPersistentCollection;
 
 import javax.persistence.*;
 import java.util.ArrayList;
@@ -19,11 +23,42 @@ public class Team {
 
     private String name;
 
+    /**
+     * 팀이 크면 전체를 로딩하지 않도록 extra lazy 로 둔다. (size / isEmpty / contains 는 쿼리로 처리)
+     * 목록은 MemberJpaRepository.findTeamMembers 로 member_id keyset 페이징해서 읽는다.
+     */
     @OneToMany(mappedBy = "team", fetch = LAZY)
+    @LazyCollection(LazyCollectionOption.EXTRA)
     @ToString.Exclude
     private List<Member> members = new ArrayList<>();
 
     public Team(String name) {
         this.name = name;
     }
+
+    /**
+     * 연관관계 편의 메서드. 주인은 Member.team 이므로 members 를 로딩하면서까지 맞추지는 않는다.
+     * - 로딩된 목록이면 추가한다.
+     * - 로딩 전이어도 영속 상태면 추가한다. (inverse bag 은 로딩하지 않고 추가만 기록해 두었다가 로딩 / size() 때 반영한다)
+     * - 준영속 상태에서 로딩 전이면 건너뛴다. (다시 읽으면 DB 에서 보인다)
+     */
+    public void addMember(Member member) {
+        if (Hibernate.isInitialized(members) || isAttached(members)) {
+            members.add(member);
+        }
+    }
+
+    /**
+     * 로딩된 목록에서만 뺀다. (로딩 전 bag 의 remove 는 전체를 로딩한다)
+     */
+    public void removeMember(Member member) {
+        if (Hibernate.isInitialized(members)) {
+            members.remove(member);
+        }
+    }
+
+    private static boolean isAttached(List<Member> members) {
+        return members instanceof AbstractPersistentCollection
+                && ((AbstractPersistentCollection) members).getSession() != null;
+    }
 }
@@ -0,0 +1,201 @@
+package study.querydsl.export;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.Projections;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import study.querydsl.dto.ArrowExportResult;
+import study.querydsl.repository.PartitionedScan;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Querydsl projection 을 Apache Arrow IPC 파일(file format)로 내보낸다.
+ * - PartitionedScan 의 member_id 범위마다 파일 하나 (&lt;name&gt;-&lt;from&gt;-&lt;to&gt;.arrow), 범위는 병렬로 쓴다.
+ *   조건에 맞는 행이 없는 범위는 파일을 만들지 않는다.
+ * - 범위 안의 행은 순서 없이 batch-size 개씩 record batch 로 나눠 FileChannel 에 쓴다.
+ * - 컬럼 이름은 path 이름 또는 alias, 타입은 expression 타입으로 정한다.
+ *   (Long, Integer, Double, Boolean, String, Enum, LocalDateTime)
+ * 실패하면 그 작업의 디렉터리를 지운다.
+ */
+@Component
+public class ArrowExporter {
+
+    private final PartitionedScan partitionedScan;
+    private final Path directory;
+    private final int batchSize;
+    private final BufferAllocator allocator;
+
+    public ArrowExporter(PartitionedScan partitionedScan,
+                         @Value("${arrow-export.dir:${java.io.tmpdir}/arrow-export}") String directory,
+                         @Value("${arrow-export.batch-size:8192}") int batchSize,
+                         @Value("${arrow-export.max-memory-mb:256}") long maxMemoryMb) {
+        this.partitionedScan = partitionedScan;
+        this.directory = Paths.get(directory);
+        this.batchSize = batchSize;
+        this.allocator = new RootAllocator(maxMemoryMb * 1024 * 1024);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        allocator.close();
+    }
+
+    public ArrowExportResult export(String name, List<Expression<?>> columns, Predicate... where) {
+        Schema schema = new Schema(columns.stream().map(ArrowExporter::field).collect(Collectors.toList()));
+        long start = System.nanoTime();
+        Path target;
+        try {
+            Files.createDirectories(directory);
+            target = Files.createTempDirectory(directory, name + "-");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Map<Long, String> files = new ConcurrentSkipListMap<>();
+        LongAdder rows = new LongAdder();
+        LongAdder bytes = new LongAdder();
+        try {
+            partitionedScan.forEachRange(Projections.tuple(columns.toArray(new Expression<?>[0])), (range, tuples) -> {
+                if (tuples.isEmpty()) {
+                    return;
+                }
+                Path file = target.resolve(name + "-" + range[0] + "-" + range[1] + ".arrow");
+                try {
+                    write(file, schema, tuples);
+                    bytes.add(Files.size(file));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                rows.add(tuples.size());
+                files.put(range[0], file.getFileName().toString());
+            }, where);
+        } catch (RuntimeException e) {
+            try {
+                FileSystemUtils.deleteRecursively(target);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        return new ArrowExportResult(target.toString(), new ArrayList<>(files.values()), rows.sum(), bytes.sum(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void write(Path file, Schema schema, List<Tuple> tuples) throws IOException {
+        try (BufferAllocator child = allocator.newChildAllocator(file.getFileName().toString(), 0, allocator.getLimit());
+             VectorSchemaRoot batch = VectorSchemaRoot.create(schema, child);
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+             ArrowFileWriter writer = new ArrowFileWriter(batch, null, channel)) {
+            List<FieldVector> vectors = batch.getFieldVectors();
+            // 한 batch 를 다시 할당하지 않고 채울 수 있게 잡아 둔다.
+            vectors.forEach(vector -> vector.setInitialCapacity(Math.min(batchSize, tuples.size())));
+            writer.start();
+            for (int from = 0; from < tuples.size(); from += batchSize) {
+                int to = Math.min(tuples.size(), from + batchSize);
+                batch.allocateNew();
+                for (int i = from; i < to; i++) {
+                    Tuple tuple = tuples.get(i);
+                    for (int c = 0; c < vectors.size(); c++) {
+                        set(vectors.get(c), i - from, tuple.get(c, Object.class));
+                    }
+                }
+                batch.setRowCount(to - from);
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+    }
+
+    private static void set(FieldVector vector, int index, Object value) {
+        if (value == null) {
+            vector.setNull(index);
+        } else if (vector instanceof BigIntVector) {
+            ((BigIntVector) vector).setSafe(index, ((Number) value).longValue());
+        } else if (vector instanceof IntVector) {
+            ((IntVector) vector).setSafe(index, ((Number) value).intValue());
+        } else if (vector instanceof Float8Vector) {
+            ((Float8Vector) vector).setSafe(index, ((Number) value).doubleValue());
+        } else if (vector instanceof BitVector) {
+            ((BitVector) vector).setSafe(index, (Boolean) value ? 1 : 0);
+        } else if (vector instanceof TimeStampMicroVector) {
+            LocalDateTime time = (LocalDateTime) value;
+            long micros = ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), time);
+            ((TimeStampMicroVector) vector).setSafe(index, micros);
+        } else {
+            String text = value instanceof Enum ? ((Enum<?>) value).name() : value.toString();
+            ((VarCharVector) vector).setSafe(index, text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static Field field(Expression<?> column) {
+        Class<?> type = column.getType();
+        ArrowType arrowType;
+        if (type == Long.class || type == long.class) {
+            arrowType = new ArrowType.Int(64, true);
+        } else if (type == Integer.class || type == int.class) {
+            arrowType = new ArrowType.Int(32, true);
+        } else if (type == Double.class || type == double.class) {
+            arrowType = new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+        } else if (type == Boolean.class || type == boolean.class) {
+            arrowType = ArrowType.Bool.INSTANCE;
+        } else if (type == LocalDateTime.class) {
+            arrowType = new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+        } else if (type == String.class || type.isEnum()) {
+            arrowType = ArrowType.Utf8.INSTANCE;
+        } else {
+            throw new IllegalArgumentException("unsupported arrow column type " + type.getName() + ": " + column);
+        }
+        return new Field(name(column), FieldType.nullable(arrowType), null);
+    }
+
+    private static String name(Expression<?> column) {
+        if (column instanceof Operation && ((Operation<?>) column).getOperator() == Ops.ALIAS) {
+            return name(((Operation<?>) column).getArg(1));
+        }
+        if (column instanceof com.querydsl.core.types.Path) {
+            return ((com.querydsl.core.types.Path<?>) column).getMetadata().getName();
+        }
+        throw new IllegalArgumentException("arrow column needs a path or an alias: " + column);
+    }
+}
@@ -0,0 +1,206 @@
+package study.querydsl.feed;
+
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberChangeDto;
+import study.querydsl.dto.MemberChangePage;
+import study.querydsl.dto.QMemberChangeDto;
+import study.querydsl.entity.MemberChange.Operation;
+import study.querydsl.entity.QMemberChange;
+import study.querydsl.repository.ReadOnlyQueryFactory;
+import study.querydsl.search.MemberChangeLog;
+import study.querydsl.search.MemberChangeSync;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static study.querydsl.entity.QMemberChange.memberChange;
+
+/**
+ * member_change(change feed) 읽기와 정리
+ * - changes : change_id 기준 keyset 페이징. change_id 는 insert 순서라 먼저 번호를 받은 트랜잭션이 아직 커밋 전일 수 있으므로
+ *   이 JVM 에서 번호를 받고 커밋되지 않은 가장 작은 change_id(MemberChangeLog.readCommitted)부터는 다음 요청으로 미룬다.
+ *   다른 프로세스(다른 인스턴스, 직접 쓴 SQL)가 쓴 행은 알 수 없으므로 기록된 지 settle-millis 가 지나지 않은 행부터도 미룬다.
+ *   그보다 늦게 커밋되는 다른 프로세스의 행은 건너뛸 수 있다.
+ * - compact : compact-after-hours 보다 오래된 행 중 같은 엔티티의 더 최근 행이 있는 것은 지운다.
+ *   소비자는 행을 upsert / delete 로 적용하면 결과가 같다.
+ * - expire : retention-hours 보다 오래된 행을 지우고 마지막 한 행을 TRUNCATED 로 바꾼다.
+ *   since 가 그보다 앞이면 TRUNCATED 를 받게 되고, 전체를 다시 읽어야 한다. (BULK 도 마찬가지)
+ */
+@Slf4j
+@Component
+public class MemberChangeFeed {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DELETE_CHUNK_SIZE = 1000;
+
+    private final JPAQueryFactory queryFactory;
+    private final TransactionTemplate transactionTemplate;
+    private final MemberChangeLog changeLog;
+    private final boolean enabled;
+    private final long settleMillis;
+    private final long compactAfterHours;
+    private final long retentionHours;
+    private final long maintenanceIntervalMinutes;
+    private ScheduledExecutorService maintenance;
+
+    public MemberChangeFeed(EntityManager em,
+                            TransactionTemplate transactionTemplate,
+                            MemberChangeSync memberChangeSync,
+                            @Value("${change-feed.enabled:true}") boolean enabled,
+                            @Value("${change-feed.settle-millis:1000}") long settleMillis,
+                            @Value("${change-feed.compact-after-hours:24}") long compactAfterHours,
+                            @Value("${change-feed.retention-hours:168}") long retentionHours,
+                            @Value("${change-feed.maintenance-interval-minutes:60}") long maintenanceIntervalMinutes) {
+        this.queryFactory = new ReadOnlyQueryFactory(em);
+        this.transactionTemplate = transactionTemplate;
+        this.changeLog = memberChangeSync.getChangeLog();
+        this.enabled = enabled;
+        this.settleMillis = settleMillis;
+        this.compactAfterHours = compactAfterHours;
+        this.retentionHours = retentionHours;
+        this.maintenanceIntervalMinutes = maintenanceIntervalMinutes;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startMaintenance() {
+        if (!enabled || maintenanceIntervalMinutes <= 0) {
+            return;
+        }
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "member-change-feed-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, maintenanceIntervalMinutes, maintenanceIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+    }
+
+    /**
+     * since 다음 변경부터 limit 개 (최대 1000)
+     */
+    public MemberChangePage changes(long since, int limit) {
+        if (changeLog == null) {
+            return changes(since, limit, null);
+        }
+        return changeLog.readCommitted(firstUncommitted -> changes(since, limit, firstUncommitted));
+    }
+
+    private MemberChangePage changes(long since, int limit, Long firstUncommitted) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        LocalDateTime settled = LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(settleMillis));
+        Long firstUnsettled = queryFactory
+                .select(memberChange.id.min())
+                .from(memberChange)
+                .where(memberChange.id.gt(since), memberChange.changedAt.gt(settled))
+                .fetchOne();
+        Long end = firstUncommitted;
+        if (firstUnsettled != null && (end == null || firstUnsettled < end)) {
+            end = firstUnsettled;
+        }
+
+        List<MemberChangeDto> changes = queryFactory
+                .select(new QMemberChangeDto(
+                        memberChange.id,
+                        memberChange.target,
+                        memberChange.entityId,
+                        memberChange.operation,
+                        memberChange.username,
+                        memberChange.age,
+                        memberChange.teamId,
+                        memberChange.teamName,
+                        memberChange.changedAt))
+                .from(memberChange)
+                .where(memberChange.id.gt(since), end == null ? null : memberChange.id.lt(end))
+                .orderBy(memberChange.id.asc())
+                .limit(size)
+                .fetch();
+        long next = changes.isEmpty() ? since : changes.get(changes.size() - 1).getChangeId();
+        return new MemberChangePage(changes, next);
+    }
+
+    /**
+     * 지운 행 수
+     */
+    public long compact(LocalDateTime before) {
+        QMemberChange later = new QMemberChange("later");
+        long deleted = 0;
+        while (true) {
+            List<Long> superseded = queryFactory
+                    .select(memberChange.id)
+                    .from(memberChange)
+                    .where(memberChange.changedAt.lt(before),
+                            memberChange.entityId.isNotNull(),
+                            JPAExpressions.selectOne()
+                                    .from(later)
+                                    .where(later.target.eq(memberChange.target),
+                                            later.entityId.eq(memberChange.entityId),
+                                            later.id.gt(memberChange.id))
+                                    .exists())
+                    .orderBy(memberChange.id.asc())
+                    .limit(DELETE_CHUNK_SIZE)
+                    .fetch();
+            if (superseded.isEmpty()) {
+                return deleted;
+            }
+            deleted += transactionTemplate.execute(status ->
+                    queryFactory.delete(memberChange).where(memberChange.id.in(superseded)).execute());
+        }
+    }
+
+    /**
+     * 지운 행 수 (TRUNCATED 로 바꾼 행은 빼고)
+     */
+    public long expire(LocalDateTime before) {
+        Long last = queryFactory
+                .select(memberChange.id.max())
+                .from(memberChange)
+                .where(memberChange.changedAt.lt(before))
+                .fetchOne();
+        if (last == null) {
+            return 0;
+        }
+        return transactionTemplate.execute(status -> {
+            long deleted = queryFactory.delete(memberChange).where(memberChange.id.lt(last)).execute();
+            queryFactory.update(memberChange)
+                    .set(memberChange.operation, Operation.TRUNCATED)
+                    .setNull(memberChange.target)
+                    .setNull(memberChange.entityId)
+                    .setNull(memberChange.username)
+                    .setNull(memberChange.age)
+                    .setNull(memberChange.teamId)
+                    .setNull(memberChange.teamName)
+                    .where(memberChange.id.eq(last))
+                    .execute();
+            return deleted;
+        });
+    }
+
+    private void maintain() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            long compacted = compact(now.minusHours(compactAfterHours));
+            long expired = expire(now.minusHours(retentionHours));
+            log.info("member change feed maintenance: compacted {}, expired {}", compacted, expired);
+        } catch (RuntimeException e) {
+            log.warn("member change feed maintenance failed", e);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package study.querydsl.limit;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 관측한 지연으로 동시 실행 수를 조정하는 limiter (gradient 방식)
+ * - 장기 지연 : 응답 시간의 지수 이동 평균 (LONG_WINDOW 건)
+ * - gradient = clamp(tolerance * 장기 지연 / 이번 지연, 0.5, 1.0)
+ *   지연이 장기 평균 수준이면 1 이라 limit 이 sqrt(limit) 만큼씩 늘고, 커넥션 풀 등에서 줄을 서기 시작해 지연이 늘면 줄어든다.
+ * - 새 limit = limit * gradient + sqrt(limit) 을 smoothing 비율로 반영하고 [min, max] 로 자른다.
+ * - 실행 중인 수가 limit 의 절반도 안 되면 늘리지 않는다. (부하가 적어서 지연이 낮은 것)
+ * - 제한 시간 초과(dropped)는 gradient 0.5 로 본다.
+ */
+public class AdaptiveLimiter {
+
+    private static final int LONG_WINDOW = 600;
+    private static final int WARMUP_SAMPLES = 10;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final LongAdder shed = new LongAdder();
+    private volatile double limit;
+    private double longRttNanos;
+    private long samples;
+
+    public AdaptiveLimiter(String name, ConcurrencyLimitProperties.Limit settings) {
+        this.name = name;
+        this.minLimit = Math.max(1, settings.getMinLimit());
+        this.maxLimit = Math.max(minLimit, settings.getMaxLimit());
+        this.tolerance = settings.getTolerance();
+        this.smoothing = settings.getSmoothing();
+        this.limit = Math.max(minLimit, Math.min(maxLimit, settings.getInitialLimit()));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getShed() {
+        return shed.sum();
+    }
+
+    /**
+     * 실행 중인 수가 limit 미만이면 자리를 잡는다. 가득 찼으면 기다리지 않고 비어 있는 값을 돌려준다.
+     */
+    public Optional<Permit> tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= getLimit()) {
+                shed.increment();
+                return Optional.empty();
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return Optional.of(new Permit(current + 1));
+            }
+        }
+    }
+
+    synchronized void onSample(long rttNanos, int inflightAtStart, boolean dropped) {
+        long rtt = Math.max(1, rttNanos);
+        samples++;
+        if (samples <= WARMUP_SAMPLES) {
+            longRttNanos += (rtt - longRttNanos) / samples;
+        } else {
+            longRttNanos += (rtt - longRttNanos) * 2 / (LONG_WINDOW + 1);
+        }
+        // 과부하가 지나가서 지연이 크게 줄었으면 장기 평균도 빨리 내린다.
+        if (longRttNanos / rtt > 2) {
+            longRttNanos *= 0.95;
+        }
+        if (!dropped && inflightAtStart < limit / 2) {
+            return;
+        }
+        double gradient = dropped ? 0.5 : Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rtt));
+        double next = limit * gradient + Math.sqrt(limit);
+        next = limit * (1 - smoothing) + next * smoothing;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    /**
+     * tryAcquire 로 잡은 자리. 끝나면 셋 중 하나를 한 번 호출한다.
+     */
+    public class Permit {
+
+        private final long start = System.nanoTime();
+        private final int inflightAtStart;
+
+        private Permit(int inflightAtStart) {
+            this.inflightAtStart = inflightAtStart;
+        }
+
+        /**
+         * 정상 완료. 지연을 반영한다.
+         */
+        public void success() {
+            release();
+            onSample(System.nanoTime() - start, inflightAtStart, false);
+        }
+
+        /**
+         * 제한 시간 초과 등 과부하로 실패. limit 을 줄인다.
+         */
+        public void dropped() {
+            release();
+            onSample(System.nanoTime() - start, inflightAtStart, true);
+        }
+
+        /**
+         * 부하와 무관한 실패 (잘못된 요청 등). 지연은 반영하지 않는다.
+         */
+        public void ignore() {
+            release();
+        }
+
+        private void release() {
+            inflight.decrementAndGet();
+        }
+    }
+}
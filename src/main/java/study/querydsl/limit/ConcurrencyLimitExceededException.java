@@ -0,0 +1,13 @@
+package study.querydsl.limit;
+
+/**
+ * limiter 가 가득 차서 실행하지 않고 거절한 호출 (503)
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConcurrencyLimitExceededException(String limiter, int limit) {
+        super("concurrency limit exceeded: " + limiter + " (limit " + limit + ")");
+    }
+}
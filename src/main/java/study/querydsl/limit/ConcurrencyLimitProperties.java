@@ -0,0 +1,50 @@
+package study.querydsl.limit;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 리포지토리 메서드 동시 실행 제한 (ConcurrencyLimits)
+ * concurrency-limit:
+ *   enabled: true
+ *   limiters:
+ *     search:                                    # limiter 이름
+ *       initial-limit: 8
+ *       min-limit: 2
+ *       max-limit: 64
+ *   methods:
+ *     "[MemberJpaRepository.search]": search     # 리포지토리 이름.메서드: limiter 이름 (없는 메서드는 제한하지 않는다)
+ * 기본값은 application.yml
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+    private Map<String, Limit> limiters = new HashMap<>();
+    private Map<String, String> methods = new HashMap<>();
+
+    @Getter
+    @Setter
+    public static class Limit {
+
+        private int initialLimit = 10;
+        private int minLimit = 1;
+        private int maxLimit = 100;
+        /**
+         * 짧은 구간 지연이 장기 평균의 tolerance 배를 넘어야 limit 을 줄인다.
+         */
+        private double tolerance = 1.5;
+        /**
+         * 새 limit 을 반영하는 비율
+         */
+        private double smoothing = 0.2;
+    }
+}
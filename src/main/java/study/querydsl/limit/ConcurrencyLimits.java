@@ -0,0 +1,72 @@
+package study.querydsl.limit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * 리포지토리 메서드를 이름에 매핑된 AdaptiveLimiter 안에서 실행한다. (RepositoryConcurrencyLimitAspect)
+ * - 가득 차면 ConcurrencyLimitExceededException 으로 바로 거절한다. (커넥션 풀에서 기다리지 않는다)
+ * - 제한 시간 초과는 과부하로 보고 limit 을 줄인다. 그 밖의 예외는 지연을 반영하지 않는다.
+ * - 이미 limiter 안에서 실행 중인 스레드가 다른 리포지토리 메서드를 부르면 다시 세지 않는다.
+ * 지표 : concurrency.limit / concurrency.inflight (gauge), concurrency.shed (거절 건수), 모두 limiter 태그
+ */
+@Component
+public class ConcurrencyLimits {
+
+    private static final ThreadLocal<Boolean> LIMITED = new ThreadLocal<>();
+
+    private final ConcurrencyLimitProperties properties;
+    private final Map<String, AdaptiveLimiter> limiters = new HashMap<>();
+
+    public ConcurrencyLimits(ConcurrencyLimitProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        properties.getLimiters().forEach((name, settings) -> {
+            AdaptiveLimiter limiter = new AdaptiveLimiter(name, settings);
+            limiters.put(name, limiter);
+            Gauge.builder("concurrency.limit", limiter, AdaptiveLimiter::getLimit)
+                    .tag("limiter", name)
+                    .description("current adaptive concurrency limit")
+                    .register(registry);
+            Gauge.builder("concurrency.inflight", limiter, AdaptiveLimiter::getInflight)
+                    .tag("limiter", name)
+                    .register(registry);
+            FunctionCounter.builder("concurrency.shed", limiter, AdaptiveLimiter::getShed)
+                    .tag("limiter", name)
+                    .description("calls rejected because the limiter was full")
+                    .register(registry);
+        });
+    }
+
+    public AdaptiveLimiter limiter(String name) {
+        return limiters.get(name);
+    }
+
+    public <T> T call(String method, Callable<T> task) throws Exception {
+        AdaptiveLimiter limiter = properties.isEnabled() ? limiters.get(properties.getMethods().get(method)) : null;
+        if (limiter == null || LIMITED.get() != null) {
+            return task.call();
+        }
+        AdaptiveLimiter.Permit permit = limiter.tryAcquire()
+                .orElseThrow(() -> new ConcurrencyLimitExceededException(limiter.getName(), limiter.getLimit()));
+        LIMITED.set(Boolean.TRUE);
+        try {
+            T result = task.call();
+            permit.success();
+            return result;
+        } catch (javax.persistence.QueryTimeoutException | org.springframework.dao.QueryTimeoutException e) {
+            permit.dropped();
+            throw e;
+        } catch (Exception | Error e) {
+            permit.ignore();
+            throw e;
+        } finally {
+            LIMITED.remove();
+        }
+    }
+}
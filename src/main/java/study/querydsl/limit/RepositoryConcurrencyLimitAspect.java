@@ -0,0 +1,49 @@
+package study.querydsl.limit;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * RepositoryQueryTimeoutAspect 와 같은 메서드에 concurrency-limit.methods 의 limiter 를 건다.
+ * 거절은 제한 시간을 시작하기 전에 해야 하므로 가장 바깥에서 실행한다.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class RepositoryConcurrencyLimitAspect {
+
+    private final ConcurrencyLimits concurrencyLimits;
+
+    @Around("within(study.querydsl.repository..*) && @within(org.springframework.stereotype.Repository) && execution(public * *(..))")
+    public Object repositoryClass(ProceedingJoinPoint joinPoint) throws Exception {
+        return call(AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName(), joinPoint);
+    }
+
+    @Around("this(study.querydsl.repository.MemberRepository) && execution(public * *(..))")
+    public Object springDataRepository(ProceedingJoinPoint joinPoint) throws Exception {
+        return call("MemberRepository", joinPoint);
+    }
+
+    private Object call(String repository, ProceedingJoinPoint joinPoint) throws Exception {
+        return concurrencyLimits.call(repository + "." + joinPoint.getSignature().getName(), () -> proceed(joinPoint));
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) throws Exception {
+        try {
+            return joinPoint.proceed();
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+}
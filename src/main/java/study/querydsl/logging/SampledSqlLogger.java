@@ -0,0 +1,153 @@
+package study.querydsl.logging;
+
+import com.p6spy.engine.common.StatementInformation;
+import com.p6spy.engine.event.SimpleJdbcEventListener;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.jdbc.internal.FormatStyle;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 운영용 SQL 로그 (sampled-sql 프로파일)
+ * - slow-threshold-ms 이상 걸렸거나 예외가 난 쿼리는 항상, 나머지는 sample-rate 건 중 1건만 남긴다.
+ * - 요청 스레드에서는 바인딩 값이 들어간 SQL 만 만들어 bounded queue 에 넣고,
+ *   포맷팅과 로그 출력은 sql-log-writer 스레드가 처리한다.
+ * - 큐가 가득 차면 버리고 drop 건수를 센다.
+ */
+@Slf4j
+@Component
+@Profile("sampled-sql")
+public class SampledSqlLogger extends SimpleJdbcEventListener {
+
+    private final int sampleRate;
+    private final long slowThresholdNanos;
+    private final boolean format;
+    private final long dropReportIntervalNanos;
+    private final BlockingQueue<SqlLogEvent> queue;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder logged = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public SampledSqlLogger(@Value("${sql-log.sample-rate}") int sampleRate,
+                            @Value("${sql-log.slow-threshold-ms}") long slowThresholdMs,
+                            @Value("${sql-log.queue-capacity}") int queueCapacity,
+                            @Value("${sql-log.format}") boolean format,
+                            @Value("${sql-log.drop-report-interval-seconds}") long dropReportIntervalSeconds) {
+        this.sampleRate = Math.max(sampleRate, 1);
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        this.format = format;
+        this.dropReportIntervalNanos = TimeUnit.SECONDS.toNanos(dropReportIntervalSeconds);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::drain, "sql-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void onAfterAnyExecute(StatementInformation statementInformation, long timeElapsedNanos, SQLException e) {
+        boolean slow = timeElapsedNanos >= slowThresholdNanos || e != null;
+        if (!slow && sequence.incrementAndGet() % sampleRate != 0) {
+            return;
+        }
+        SqlLogEvent event = new SqlLogEvent(
+                statementInformation.getConnectionInformation().getConnectionId(),
+                timeElapsedNanos,
+                statementInformation.getSqlWithValues(),
+                slow,
+                e == null ? null : e.getMessage());
+        if (!queue.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    public long getLogged() {
+        return logged.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        writer.interrupt();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        SqlLogEvent event;
+        while ((event = queue.poll()) != null) {
+            write(event);
+        }
+    }
+
+    private void drain() {
+        long reportedDrops = 0;
+        long lastReport = System.nanoTime();
+        while (running) {
+            try {
+                SqlLogEvent event = queue.poll(1, TimeUnit.SECONDS);
+                if (event != null) {
+                    write(event);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.warn("failed to write sql log", e);
+            }
+
+            if (System.nanoTime() - lastReport >= dropReportIntervalNanos) {
+                long drops = dropped.sum();
+                if (drops > reportedDrops) {
+                    log.warn("sql log queue full, dropped {} events (total {})", drops - reportedDrops, drops);
+                    reportedDrops = drops;
+                }
+                lastReport = System.nanoTime();
+            }
+        }
+    }
+
+    private void write(SqlLogEvent event) {
+        String sql = format ? FormatStyle.BASIC.getFormatter().format(event.sql) : event.sql;
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(event.elapsedNanos);
+        if (event.error != null) {
+            log.warn("connection {} | {}ms | error : {} | {}", event.connectionId, elapsedMs, event.error, sql);
+        } else if (event.slow) {
+            log.warn("connection {} | {}ms | slow | {}", event.connectionId, elapsedMs, sql);
+        } else {
+            log.info("connection {} | {}ms | sampled 1/{} | {}", event.connectionId, elapsedMs, sampleRate, sql);
+        }
+        logged.increment();
+    }
+
+    private static class SqlLogEvent {
+        private final int connectionId;
+        private final long elapsedNanos;
+        private final String sql;
+        private final boolean slow;
+        private final String error;
+
+        SqlLogEvent(int connectionId, long elapsedNanos, String sql, boolean slow, String error) {
+            this.connectionId = connectionId;
+            this.elapsedNanos = elapsedNanos;
+            this.sql = sql;
+            this.slow = slow;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package study.querydsl.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.AutoFlushEvent;
+import org.hibernate.event.spi.AutoFlushEventListener;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.FlushEvent;
+import org.hibernate.event.spi.FlushEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * flush 시간 지표. FLUSH / AUTO_FLUSH 리스너 그룹의 맨 앞과 맨 뒤에 리스너를 붙여 그 사이(기본 리스너)를 잰다.
+ * 실패한 flush 는 맨 뒤 리스너까지 오지 않으므로 세지 않는다.
+ * - hibernate.flush{type=flush|auto} : flush 한 번. auto 는 JPQL 실행 전 auto flush (쓸 게 없어도 dirty check 는 한다)
+ * - hibernate.flush.entities{type} : flush 한 번에 dirty check 한 엔티티 수
+ * - hibernate.flush.transaction{outcome=commit|rollback} : 트랜잭션 하나에서 flush 에 쓴 시간의 합 (flush 가 있었던 트랜잭션만)
+ * MeterRegistry 는 EntityManagerFactory 보다 늦게 준비될 수 있으므로 첫 flush 때 찾는다.
+ */
+public class FlushMetrics implements Integrator {
+
+    private final transient ObjectProvider<MeterRegistry> registryProvider;
+    private transient volatile Meters meters;
+    private final transient ThreadLocal<Started> started = new ThreadLocal<>();
+
+    public FlushMetrics(ObjectProvider<MeterRegistry> registryProvider) {
+        this.registryProvider = registryProvider;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+
+        EventListenerGroup<FlushEventListener> flush = registry.getEventListenerGroup(EventType.FLUSH);
+        flush.prependListener(this::start);
+        flush.appendListener(event -> stop(event, "flush"));
+
+        EventListenerGroup<AutoFlushEventListener> autoFlush = registry.getEventListenerGroup(EventType.AUTO_FLUSH);
+        autoFlush.prependListener((AutoFlushEvent event) -> start(event));
+        autoFlush.appendListener((AutoFlushEvent event) -> stop(event, "auto"));
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    private void start(FlushEvent event) {
+        started.set(new Started(System.identityHashCode(event), System.nanoTime()));
+    }
+
+    /**
+     * 같은 flush 의 시작이 기록돼 있을 때만 잰다. (시작 뒤 기본 리스너가 실패하면 남은 기록은 다음 flush 가 덮어쓴다)
+     * 세션을 붙잡지 않도록 event 대신 identityHashCode 를 기록한다.
+     */
+    private void stop(FlushEvent event, String type) {
+        Started start = started.get();
+        if (start == null || start.event != System.identityHashCode(event)) {
+            return;
+        }
+        started.remove();
+        long elapsed = System.nanoTime() - start.nanos;
+        Meters meters = meters();
+        if (meters != null) {
+            meters.flush(type).record(elapsed, TimeUnit.NANOSECONDS);
+            meters.entities(type).record(event.getNumberOfEntitiesProcessed());
+            addToTransaction(meters, elapsed);
+        }
+    }
+
+    private void addToTransaction(Meters meters, long elapsed) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionFlushTime total = (TransactionFlushTime) TransactionSynchronizationManager.getResource(this);
+        if (total == null) {
+            total = new TransactionFlushTime(meters);
+            TransactionSynchronizationManager.bindResource(this, total);
+            TransactionSynchronizationManager.registerSynchronization(total);
+        }
+        total.nanos += elapsed;
+    }
+
+    private Meters meters() {
+        Meters current = meters;
+        if (current == null) {
+            MeterRegistry registry = registryProvider.getIfAvailable();
+            if (registry == null) {
+                return null;
+            }
+            current = new Meters(registry);
+            meters = current;
+        }
+        return current;
+    }
+
+    private static final class Started {
+
+        private final int event;
+        private final long nanos;
+
+        Started(int event, long nanos) {
+            this.event = event;
+            this.nanos = nanos;
+        }
+    }
+
+    private class TransactionFlushTime implements TransactionSynchronization {
+
+        private final Meters meters;
+        private long nanos;
+
+        TransactionFlushTime(Meters meters) {
+            this.meters = meters;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(FlushMetrics.this);
+            Timer timer = status == STATUS_COMMITTED ? meters.commitTotal : meters.rollbackTotal;
+            timer.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static class Meters {
+
+        private final Timer flush;
+        private final Timer autoFlush;
+        private final DistributionSummary flushEntities;
+        private final DistributionSummary autoFlushEntities;
+        private final Timer commitTotal;
+        private final Timer rollbackTotal;
+
+        Meters(MeterRegistry registry) {
+            flush = flushTimer(registry, "flush");
+            autoFlush = flushTimer(registry, "auto");
+            flushEntities = entitiesSummary(registry, "flush");
+            autoFlushEntities = entitiesSummary(registry, "auto");
+            commitTotal = transactionTimer(registry, "commit");
+            rollbackTotal = transactionTimer(registry, "rollback");
+        }
+
+        Timer flush(String type) {
+            return "auto".equals(type) ? autoFlush : flush;
+        }
+
+        DistributionSummary entities(String type) {
+            return "auto".equals(type) ? autoFlushEntities : flushEntities;
+        }
+
+        private static Timer flushTimer(MeterRegistry registry, String type) {
+            return Timer.builder("hibernate.flush")
+                    .description("time spent in one Hibernate flush")
+                    .tag("type", type)
+                    .register(registry);
+        }
+
+        private static DistributionSummary entitiesSummary(MeterRegistry registry, String type) {
+            return DistributionSummary.builder("hibernate.flush.entities")
+                    .description("managed entities dirty-checked by one flush")
+                    .tag("type", type)
+                    .register(registry);
+        }
+
+        private static Timer transactionTimer(MeterRegistry registry, String outcome) {
+            return Timer.builder("hibernate.flush.transaction")
+                    .description("total flush time of one transaction")
+                    .tag("outcome", outcome)
+                    .register(registry);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package study.querydsl.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER;
+
+@Configuration
+public class FlushMetricsConfig {
+
+    /**
+     * 다른 customizer 가 등록한 integrator 뒤에 FlushMetrics 를 붙인다.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer flushMetrics(ObjectProvider<MeterRegistry> registry) {
+        FlushMetrics flushMetrics = new FlushMetrics(registry);
+        return properties -> {
+            IntegratorProvider previous = (IntegratorProvider) properties.get(INTEGRATOR_PROVIDER);
+            properties.put(INTEGRATOR_PROVIDER, (IntegratorProvider) () -> {
+                List<Integrator> integrators = new ArrayList<>();
+                if (previous != null) {
+                    integrators.addAll(previous.getIntegrators());
+                }
+                integrators.add(flushMetrics);
+                return integrators;
+            });
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package study.querydsl.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.query.spi.QueryPlanCache;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.Field;
+import java.util.Map;
+
+/**
+ * Hibernate HQL query plan cache 지표
+ * hit / miss 건수는 actuator 의 HibernateMetrics(hibernate.cache.query.plan)가 이미 노출하므로
+ * 여기서는 크기, 최대 크기, 적중률, 추정 eviction 건수만 추가한다.
+ * - 크기는 Statistics 로 알 수 없어 QueryPlanCache 의 내부 map 을 reflection 으로 읽는다.
+ * - 적중률과 eviction 은 hibernate.generate_statistics 가 켜져 있을 때(perf 프로파일)만 등록한다.
+ */
+@Component
+public class QueryPlanCacheMetrics implements MeterBinder {
+
+    private final Statistics statistics;
+    private final Map<?, ?> queryPlans;
+    private final int maxSize;
+
+    /**
+     * SessionFactoryImplementor.getQueryPlanCache() 는 5.x 에서 대체 API 없이 deprecated 다. (6.x 의 QueryEngine 으로 바뀜)
+     * 크기를 읽을 다른 방법이 없어 경고를 끄고 쓴다. Hibernate 를 올릴 때 같이 고친다.
+     */
+    @SuppressWarnings("deprecation")
+    public QueryPlanCacheMetrics(EntityManagerFactory emf) {
+        SessionFactoryImplementor sessionFactory = emf.unwrap(SessionFactoryImplementor.class);
+        this.statistics = sessionFactory.getStatistics();
+        this.queryPlans = queryPlans(sessionFactory.getQueryPlanCache());
+        Object maxSize = sessionFactory.getProperties().get(AvailableSettings.QUERY_PLAN_CACHE_MAX_SIZE);
+        this.maxSize = maxSize == null ? QueryPlanCache.DEFAULT_QUERY_PLAN_MAX_COUNT : Integer.parseInt(maxSize.toString());
+    }
+
+    public int size() {
+        return queryPlans.size();
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public double hitRatio() {
+        long hit = statistics.getQueryPlanCacheHitCount();
+        long total = hit + statistics.getQueryPlanCacheMissCount();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /**
+     * miss 마다 plan 이 하나씩 들어가므로 (miss - 현재 크기) 만큼 밀려난 것으로 본다.
+     * 캐시(BoundedConcurrentHashMap)는 segment 마다 따로 밀어내서 크기가 오르내리므로 줄어들 수도 있는 추정치다.
+     */
+    public long evictions() {
+        return Math.max(0, statistics.getQueryPlanCacheMissCount() - size());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("hibernate.query.plan.cache.size", this, QueryPlanCacheMetrics::size)
+                .description("HQL query plans currently cached")
+                .register(registry);
+        Gauge.builder("hibernate.query.plan.cache.max", this, QueryPlanCacheMetrics::maxSize)
+                .description("hibernate.query.plan_cache_max_size")
+                .register(registry);
+        if (!statistics.isStatisticsEnabled()) {
+            return;
+        }
+        Gauge.builder("hibernate.query.plan.cache.hit.ratio", this, QueryPlanCacheMetrics::hitRatio)
+                .register(registry);
+        // miss - 크기 는 줄어들 수 있으므로 counter 가 아니라 gauge
+        Gauge.builder("hibernate.query.plan.cache.evictions", this, QueryPlanCacheMetrics::evictions)
+                .description("query plans evicted, estimated as misses minus cached plans")
+                .register(registry);
+    }
+
+    private static Map<?, ?> queryPlans(QueryPlanCache queryPlanCache) {
+        try {
+            Field field = QueryPlanCache.class.getDeclaredField("queryPlanCache");
+            field.setAccessible(true);
+            return (Map<?, ?>) field.get(queryPlanCache);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("cannot access Hibernate query plan cache", e);
+        }
+    }
+}
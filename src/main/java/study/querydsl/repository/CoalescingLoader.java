@@ -0,0 +1,163 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * DataLoader 방식의 조회 묶음 처리
+ * - 조회 중인 묶음도, 기다리는 key 도 없으면 기다리지 않고 바로 조회한다.
+ * - 그렇지 않으면 window 동안(또는 maxBatch 개가 모일 때까지) 들어온 key 를 한 번의 batchLoader 호출로 묶는다.
+ * - 같은 key 를 이미 조회 중이면 새로 요청하지 않고 진행 중인 future 를 같이 쓴다.
+ * batchLoader 는 key 목록을 받아 찾은 값만 담은 Map 을 비동기로 돌려주면 된다.
+ */
+public class CoalescingLoader<K, V> {
+
+    private final Function<List<K>, CompletableFuture<Map<K, V>>> batchLoader;
+    private final int maxBatch;
+    private final long windowNanos;
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<K, CompletableFuture<Optional<V>>> inFlight = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private List<K> pending = new ArrayList<>();
+    private long pendingSince;
+    private ScheduledFuture<?> scheduledDispatch;
+    private int running;
+
+    private final DistributionSummary batchSize;
+    private final Timer waitTime;
+
+    public CoalescingLoader(String name,
+                            Function<List<K>, CompletableFuture<Map<K, V>>> batchLoader,
+                            int maxBatch,
+                            long windowMicros,
+                            MeterRegistry registry) {
+        this.batchLoader = batchLoader;
+        this.maxBatch = maxBatch;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSize = DistributionSummary.builder("loader.batch.size")
+                .tag("loader", name)
+                .description("keys per batch query")
+                .register(registry);
+        this.waitTime = Timer.builder("loader.wait")
+                .tag("loader", name)
+                .description("time the oldest key of a batch waited before dispatch")
+                .register(registry);
+    }
+
+    public CompletableFuture<Optional<V>> load(K key) {
+        CompletableFuture<Optional<V>> future = new CompletableFuture<>();
+        CompletableFuture<Optional<V>> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        List<K> batch = null;
+        synchronized (lock) {
+            if (pending.isEmpty() && running == 0) {
+                waitTime.record(0, TimeUnit.NANOSECONDS);
+                running++;
+                batch = Collections.singletonList(key);
+            } else {
+                if (pending.isEmpty()) {
+                    pendingSince = System.nanoTime();
+                    scheduledDispatch = scheduler.schedule(this::dispatchPending, windowNanos, TimeUnit.NANOSECONDS);
+                }
+                pending.add(key);
+                if (pending.size() >= maxBatch) {
+                    scheduledDispatch.cancel(false);
+                    batch = takePending();
+                }
+            }
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+        return future;
+    }
+
+    /**
+     * load 를 기다린다. batchLoader 가 던진 RuntimeException 은 CompletionException 으로 감싸지 않고 그대로 던진다.
+     */
+    public Optional<V> get(K key) {
+        try {
+            return load(key).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void dispatchPending() {
+        List<K> batch;
+        synchronized (lock) {
+            batch = takePending();
+        }
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+    }
+
+    private List<K> takePending() {
+        if (pending.isEmpty()) {
+            return Collections.emptyList();
+        }
+        waitTime.record(System.nanoTime() - pendingSince, TimeUnit.NANOSECONDS);
+        List<K> batch = pending;
+        pending = new ArrayList<>();
+        running++;
+        return batch;
+    }
+
+    private void dispatch(List<K> batch) {
+        batchSize.record(batch.size());
+        CompletableFuture<Map<K, V>> result;
+        try {
+            result = batchLoader.apply(batch);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((values, error) -> {
+            synchronized (lock) {
+                running--;
+            }
+            for (K key : batch) {
+                CompletableFuture<Optional<V>> future = inFlight.remove(key);
+                if (future == null) {
+                    continue;
+                }
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(Optional.ofNullable(values.get(key)));
+                }
+            }
+        });
+    }
+}
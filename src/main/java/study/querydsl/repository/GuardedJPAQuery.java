@@ -0,0 +1,81 @@
+package study.querydsl.repository;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.QueryModifiers;
+import com.querydsl.jpa.JPQLTemplates;
+import com.querydsl.jpa.impl.JPAQuery;
+import study.querydsl.timeout.QueryDeadline;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 실행 직전에 QueryGuard 로 조인과 행 수를 검사하는 JPAQuery
+ * 현재 스레드에 QueryDeadline 이 있으면 남은 시간을 statement timeout 으로 건다.
+ * iterate() / stream() 도 fetch() 와 같이 max-rows 를 넘는 결과를 자르거나 실패시킨다.
+ */
+public class GuardedJPAQuery<T> extends JPAQuery<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final QueryGuard guard;
+
+    public GuardedJPAQuery(EntityManager em, QueryGuard guard) {
+        super(em);
+        this.guard = guard;
+    }
+
+    public GuardedJPAQuery(EntityManager em, JPQLTemplates templates, QueryMetadata metadata, QueryGuard guard) {
+        super(em, templates, metadata);
+        this.guard = guard;
+    }
+
+    @Override
+    protected Query createQuery(QueryModifiers modifiers, boolean forCount) {
+        guard.checkJoins(getMetadata());
+        Query query = super.createQuery(modifiers, forCount);
+        QueryDeadline.apply(query);
+        if (!forCount) {
+            Integer limit = guard.rowLimit(modifiers == null ? null : modifiers.getLimit());
+            if (limit != null) {
+                query.setMaxResults(limit);
+            }
+        }
+        return query;
+    }
+
+    @Override
+    public List<T> fetch() {
+        return guard.checkRows(super.fetch(), getMetadata());
+    }
+
+    @Override
+    public CloseableIterator<T> iterate() {
+        return guard.checkRows(super.iterate(), getMetadata());
+    }
+
+    @Override
+    public Stream<T> stream() {
+        CloseableIterator<T> rows = iterate();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false)
+                .onClose(rows::close);
+    }
+
+    @Override
+    public GuardedJPAQuery<T> clone(EntityManager entityManager, JPQLTemplates templates) {
+        GuardedJPAQuery<T> q = new GuardedJPAQuery<>(entityManager, templates, getMetadata().clone(), guard);
+        q.clone(this);
+        return q;
+    }
+
+    @Override
+    public GuardedJPAQuery<T> clone(EntityManager entityManager) {
+        return clone(entityManager, getTemplates());
+    }
+}
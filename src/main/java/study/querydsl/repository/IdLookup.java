@@ -0,0 +1,52 @@
+package study.querydsl.repository;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * id 목록 조회 결과
+ * found : 요청한 id 순서대로 찾은 결과 (중복 id 는 한 번만)
+ * missing : 찾지 못한 id (요청 순서)
+ */
+@Getter
+@ToString
+public class IdLookup<T> {
+
+    private final List<T> found;
+    private final List<Long> missing;
+
+    private IdLookup(List<T> found, List<Long> missing) {
+        this.found = found;
+        this.missing = missing;
+    }
+
+    public static <T> IdLookup<T> of(List<Long> ids, Map<Long, T> byId) {
+        List<T> found = new ArrayList<>(byId.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            T value = byId.get(id);
+            if (value == null) {
+                missing.add(id);
+            } else {
+                found.add(value);
+            }
+        }
+        return new IdLookup<>(found, missing);
+    }
+
+    /**
+     * null 을 빼고 순서를 유지한 채 중복을 제거한다.
+     */
+    public static List<Long> distinctIds(Collection<Long> ids) {
+        LinkedHashSet<Long> distinct = new LinkedHashSet<>(ids);
+        distinct.removeIf(Objects::isNull);
+        return new ArrayList<>(distinct);
+    }
+}
@@ -3,16 +3,42 @@ package study.querydsl.repository;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.orm.jpa.EntityManagerHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.dto.ArrowExportResult;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.MemberUsernameDto;
 import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.dto.QMemberUsernameDto;
+import study.querydsl.dto.QTeamStatsDto;
+import study.querydsl.dto.TeamMemberPage;
+import study.querydsl.dto.TeamStatsDto;
 import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.export.ArrowExporter;
+import study.querydsl.search.UsernameIndex;
+import study.querydsl.timeout.QueryDeadline;
 
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static org.springframework.util.StringUtils.*;
 import static study.querydsl.entity.QMember.member;
@@ -21,21 +47,303 @@ import static study.querydsl.entity.QTeam.team;
 @Repository
 public class MemberJpaRepository {
 
+    private static final int MAX_AUTOCOMPLETE_SIZE = 100;
+    private static final int MAX_TEAM_MEMBER_PAGE_SIZE = 1000;
+
     private final EntityManager em;
     private final JPAQueryFactory queryFactory;
+    private final ParallelQueryExecutor parallelQueryExecutor;
+    private final int idChunkSize;
+    private final CoalescingLoader<Long, Member> memberLoader;
+    private final CoalescingLoader<Long, MemberTeamDto> memberTeamDtoLoader;
+    private final UsernameIndex usernameIndex;
+    private final PartitionedScan partitionedScan;
+    private final MemberWriteBuffer memberWriteBuffer;
+    private final ArrowExporter arrowExporter;
 
-    public MemberJpaRepository(EntityManager em) {
+    public MemberJpaRepository(EntityManager em,
+                               ParallelQueryExecutor parallelQueryExecutor,
+                               PartitionedScan partitionedScan,
+                               MemberWriteBuffer memberWriteBuffer,
+                               ArrowExporter arrowExporter,
+                               QueryGuard queryGuard,
+                               MeterRegistry meterRegistry,
+                               UsernameIndex usernameIndex,
+                               @Value("${batch-lookup.chunk-size:512}") int idChunkSize,
+                               @Value("${loader.max-batch:256}") int loaderMaxBatch,
+                               @Value("${loader.window-micros:2000}") long loaderWindowMicros) {
         this.em = em;
-        queryFactory = new JPAQueryFactory(em);
+        this.parallelQueryExecutor = parallelQueryExecutor;
+        this.idChunkSize = idChunkSize;
+        this.usernameIndex = usernameIndex;
+        this.partitionedScan = partitionedScan;
+        this.memberWriteBuffer = memberWriteBuffer;
+        this.arrowExporter = arrowExporter;
+        queryFactory = new ReadOnlyQueryFactory(em, queryGuard);
+        memberLoader = new CoalescingLoader<>("member",
+                ids -> parallelQueryExecutor.submit(chunkEm -> byId(new ReadOnlyQueryFactory(chunkEm)
+                        .selectFrom(member)
+                        .where(member.id.in(ids))
+                        .fetch())),
+                loaderMaxBatch,
+                loaderWindowMicros,
+                meterRegistry);
+        memberTeamDtoLoader = new CoalescingLoader<>("memberTeamDto",
+                ids -> parallelQueryExecutor.submit(chunkEm -> byMemberId(memberTeamDtoIn(new ReadOnlyQueryFactory(chunkEm), ids))),
+                loaderMaxBatch,
+                loaderWindowMicros,
+                meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        memberLoader.shutdown();
+        memberTeamDtoLoader.shutdown();
     }
 
     public void save(Member member) {
         em.persist(member);
     }
 
+    /**
+     * 호출한 트랜잭션과 무관하게 다른 저장과 묶어서 커밋한다. (MemberWriteBuffer)
+     * 커밋되면 member id 로 완료된다.
+     */
+    public CompletableFuture<Long> saveAsync(Member member) {
+        return memberWriteBuffer.save(member);
+    }
+
+    /**
+     * 트랜잭션도, 스레드에 묶인 EntityManager(open-in-view)도 없으면 CoalescingLoader 로 다른 단건 조회와 묶는다.
+     * 공유 EntityManager 의 find 도 트랜잭션 밖에서는 준영속 엔티티를 돌려주므로 결과는 같다. (지연 로딩 연관은 초기화되지 않는다)
+     * 그 밖에는 현재 영속성 컨텍스트로 조회한다.
+     */
     public Optional<Member> findById(Long id) {
-        Member member = em.find(Member.class, id);
-        return Optional.ofNullable(member);
+        if (id == null || TransactionSynchronizationManager.isActualTransactionActive() || hasBoundEntityManager()) {
+            return Optional.ofNullable(em.find(Member.class, id));
+        }
+        return memberLoader.get(id);
+    }
+
+    private static boolean hasBoundEntityManager() {
+        return TransactionSynchronizationManager.getResourceMap().values().stream()
+                .anyMatch(EntityManagerHolder.class::isInstance);
+    }
+
+    /**
+     * 영속성 컨텍스트에 있는 회원은 그대로 쓰고, 나머지는 idChunkSize 개씩 IN 쿼리로 조회한다.
+     * 엔티티는 호출한 쪽의 영속성 컨텍스트에 올라가야 하므로 청크는 같은 커넥션에서 순서대로 실행된다.
+     */
+    @Transactional(readOnly = true)
+    public IdLookup<Member> findAllByIds(Collection<Long> ids) {
+        List<Long> distinctIds = IdLookup.distinctIds(ids);
+        List<Member> members = em.unwrap(Session.class)
+                .byMultipleIds(Member.class)
+                .enableSessionCheck(true)
+                .enableOrderedReturn(true)
+                .withBatchSize(idChunkSize)
+                .multiLoad(distinctIds);
+
+        Map<Long, Member> byId = new HashMap<>(members.size());
+        for (Member found : members) {
+            if (found != null) {
+                byId.put(found.getId(), found);
+            }
+        }
+        return IdLookup.of(distinctIds, byId);
+    }
+
+    /**
+     * MemberTeamDto 는 영속성 컨텍스트와 무관하므로 청크가 여러 개면 각자의 커넥션으로 병렬 조회한다.
+     * 트랜잭션 안에서는 커밋되지 않은 변경을 봐야 하므로 같은 커넥션에서 순서대로 조회한다.
+     */
+    public IdLookup<MemberTeamDto> findAllMemberTeamDtoByIds(Collection<Long> ids) {
+        List<Long> distinctIds = IdLookup.distinctIds(ids);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinctIds.size(); from += idChunkSize) {
+            chunks.add(distinctIds.subList(from, Math.min(from + idChunkSize, distinctIds.size())));
+        }
+
+        List<MemberTeamDto> result = new ArrayList<>(distinctIds.size());
+        if (chunks.size() <= 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            chunks.forEach(chunk -> result.addAll(memberTeamDtoIn(queryFactory, chunk)));
+        } else {
+            List<Function<EntityManager, List<MemberTeamDto>>> tasks = new ArrayList<>(chunks.size());
+            for (List<Long> chunk : chunks) {
+                tasks.add(chunkEm -> memberTeamDtoIn(new ReadOnlyQueryFactory(chunkEm), chunk));
+            }
+            parallelQueryExecutor.execute(tasks).forEach(result::addAll);
+        }
+
+        return IdLookup.of(distinctIds, byMemberId(result));
+    }
+
+    private static Map<Long, Member> byId(List<Member> members) {
+        Map<Long, Member> byId = new HashMap<>(members.size());
+        for (Member found : members) {
+            byId.put(found.getId(), found);
+        }
+        return byId;
+    }
+
+    private static Map<Long, MemberTeamDto> byMemberId(List<MemberTeamDto> dtos) {
+        Map<Long, MemberTeamDto> byId = new HashMap<>(dtos.size());
+        for (MemberTeamDto dto : dtos) {
+            byId.put(dto.getMemberId(), dto);
+        }
+        return byId;
+    }
+
+    private List<MemberTeamDto> memberTeamDtoIn(JPAQueryFactory queryFactory, List<Long> ids) {
+        return queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.id.in(ids))
+                .fetch();
+    }
+
+    /**
+     * 트랜잭션 밖에서 동시에 들어온 단건 조회는 CoalescingLoader 가 하나의 IN 쿼리로 묶는다.
+     * 트랜잭션 안에서는 커밋되지 않은 변경을 봐야 하므로 바로 조회한다.
+     */
+    public Optional<MemberTeamDto> findMemberTeamDtoById(Long id) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return memberTeamDtoIn(queryFactory, Collections.singletonList(id)).stream().findFirst();
+        }
+        return memberTeamDtoLoader.get(id);
+    }
+
+    /**
+     * username 자동완성. prefix 로 시작하는 회원을 (username, id) 순으로 최대 limit 개 조회한다.
+     * UsernameIndex 가 적재돼 있으면 메모리에서 찾고, cold 이거나 트랜잭션 안이면 like 'prefix%' 로 조회한다.
+     */
+    public List<MemberUsernameDto> searchUsernamePrefix(String prefix, int limit) {
+        if (!hasText(prefix) || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int size = Math.min(limit, MAX_AUTOCOMPLETE_SIZE);
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            Optional<List<MemberUsernameDto>> indexed = usernameIndex.search(prefix, size);
+            if (indexed.isPresent()) {
+                return indexed.get();
+            }
+        }
+        return queryFactory
+                .select(new QMemberUsernameDto(member.id, member.username))
+                .from(member)
+                .where(member.username.startsWith(prefix))
+                .orderBy(member.username.asc(), member.id.asc())
+                .limit(size)
+                .fetch();
+    }
+
+    /**
+     * teamId 팀의 회원 중 member_id 가 after 보다 큰 회원을 member_id 순으로 limit 명 (최대 1000)
+     * Team.members 를 로딩하지 않고 (team_id, member_id) 인덱스로 keyset 페이징한다.
+     * team_id 는 하나뿐이지만 정렬에 넣어야 인덱스 순서로 읽고 limit 에서 멈춘다. (없으면 팀 전체를 정렬)
+     */
+    public TeamMemberPage findTeamMembers(Long teamId, long after, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_TEAM_MEMBER_PAGE_SIZE));
+        List<MemberTeamDto> members = queryFactory
+                .select(new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")))
+                .from(member)
+                .join(member.team, team)
+                .where(member.team.id.eq(teamId), member.id.gt(after))
+                .orderBy(member.team.id.asc(), member.id.asc())
+                .limit(size)
+                .fetch();
+        long next = members.isEmpty() ? after : members.get(members.size() - 1).getMemberId();
+        return new TeamMemberPage(members, next);
+    }
+
+    /**
+     * 회원을 teamId 팀으로 옮긴다. 팀은 getReference 로만 쓰므로 Team.members 는 로딩하지 않는다.
+     */
+    @Transactional
+    public void changeTeam(Long memberId, Long teamId) {
+        Member found = em.find(Member.class, memberId);
+        if (found == null) {
+            throw new IllegalArgumentException("member not found: " + memberId);
+        }
+        found.changeTeam(em.getReference(Team.class, teamId));
+    }
+
+    /**
+     * 팀 이름별 count / sum / avg / max / min (member.age)
+     */
+    public List<TeamStatsDto> teamStats() {
+        return queryFactory
+                .select(new QTeamStatsDto(
+                        team.name,
+                        member.count(),
+                        member.age.sum().longValue(),
+                        member.age.max(),
+                        member.age.min()))
+                .from(member)
+                .join(member.team, team)
+                .groupBy(team.name)
+                .orderBy(team.name.asc())
+                .fetch();
+    }
+
+    /**
+     * 팀마다 나이가 많은 순(같으면 member_id 순)으로 k 명. 팀 이름, 순위 순
+     * 상관 서브쿼리 대신 row_number() over (partition by team_id) 로 member 를 한 번만 읽는다.
+     */
+    public List<MemberTeamDto> oldestMembersPerTeam(int k) {
+        Query query = em.createNativeQuery(
+                        "select m.member_id, m.username, m.age, t.team_id, t.name" +
+                        " from (select member_id, username, age, team_id," +
+                        "        row_number() over (partition by team_id order by age desc, member_id) as rn" +
+                        "       from member where team_id is not null) m" +
+                        " join team t on t.team_id = m.team_id" +
+                        " where m.rn <= :k" +
+                        " order by t.name, t.team_id, m.rn")
+                .setParameter("k", k);
+        QueryDeadline.apply(query);
+        return toMemberTeamDtos(query.getResultList());
+    }
+
+    /**
+     * 나이가 소속 팀 평균보다 많은 회원. 팀 이름, 나이 내림차순
+     * 팀 평균은 avg() over (partition by team_id) 로 같은 스캔에서 구한다.
+     */
+    public List<MemberTeamDto> membersAboveTeamAverage() {
+        Query query = em.createNativeQuery(
+                        "select m.member_id, m.username, m.age, t.team_id, t.name" +
+                        " from (select member_id, username, age, team_id," +
+                        "        avg(age * 1.0) over (partition by team_id) as team_avg" +
+                        "       from member where team_id is not null) m" +
+                        " join team t on t.team_id = m.team_id" +
+                        " where m.age > m.team_avg" +
+                        " order by t.name, t.team_id, m.age desc, m.member_id");
+        QueryDeadline.apply(query);
+        return toMemberTeamDtos(query.getResultList());
+    }
+
+    private static List<MemberTeamDto> toMemberTeamDtos(List<?> rows) {
+        List<MemberTeamDto> dtos = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            dtos.add(new MemberTeamDto(
+                    ((Number) columns[0]).longValue(),
+                    (String) columns[1],
+                    ((Number) columns[2]).intValue(),
+                    ((Number) columns[3]).longValue(),
+                    (String) columns[4]));
+        }
+        return dtos;
     }
 
     public List<Member> findAll(){
@@ -114,6 +422,41 @@ public class MemberJpaRepository {
                 .fetch();
     }
 
+    /**
+     * search 와 같은 조건으로 전체를 member_id 순으로 내보낸다. (member_id 범위별 병렬 조회)
+     * 커밋된 데이터만 보이며, 다 읽은 뒤에는 close 해야 한다.
+     */
+    public Stream<MemberTeamDto> export(MemberSearchCondition condition) {
+        return partitionedScan.ordered(
+                new QMemberTeamDto(
+                        member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")),
+                usernameEq(condition.getUsername()),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe()));
+    }
+
+    /**
+     * export 와 같은 행을 member_id 범위별 Arrow IPC 파일로 쓴다. (ArrowExporter)
+     * 컬럼은 MemberTeamDto 와 같다. (memberId, username, age, teamId, teamName)
+     */
+    public ArrowExportResult exportArrow(MemberSearchCondition condition) {
+        return arrowExporter.export("member",
+                List.of(member.id.as("memberId"),
+                        member.username,
+                        member.age,
+                        team.id.as("teamId"),
+                        team.name.as("teamName")),
+                usernameEq(condition.getUsername()),
+                teamNameEq(condition.getTeamName()),
+                ageGoe(condition.getAgeGoe()),
+                ageLoe(condition.getAgeLoe()));
+    }
+
     public List<Member> searchMember(MemberSearchCondition condition){
         return queryFactory
                 .selectFrom(member)
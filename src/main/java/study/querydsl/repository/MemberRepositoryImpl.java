@@ -1,21 +1,24 @@
 package study.querydsl.repository;
 
 import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.EntityPath;
 import com.querydsl.core.types.dsl.BooleanExpression;
 import com.querydsl.jpa.JPQLQuery;
-import com.querydsl.jpa.impl.JPAQuery;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.support.QuerydslRepositorySupport;
 import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.dto.QMemberTeamDto;
 import study.querydsl.entity.Member;
+import study.querydsl.search.MemberColumnStore;
 
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 import static study.querydsl.entity.QMember.member;
@@ -29,12 +32,31 @@ public class MemberRepositoryImpl extends QuerydslRepositorySupport implements M
 //        this.queryFactory = new JPAQueryFactory(em);
 //    }
 
-    public MemberRepositoryImpl() {
+    private final MemberColumnStore memberColumnStore;
+    private final QueryGuard queryGuard;
+
+    public MemberRepositoryImpl(MemberColumnStore memberColumnStore, QueryGuard queryGuard) {
         super(Member.class);
+        this.memberColumnStore = memberColumnStore;
+        this.queryGuard = queryGuard;
     }
 
+    @Override
+    protected <T> JPQLQuery<T> from(EntityPath<T> path) {
+        return ReadOnlyQueryFactory.readOnly(new GuardedJPAQuery<T>(getEntityManager(), queryGuard).select(path).from(path));
+    }
+
+    /**
+     * member-column-store.enabled 이면 트랜잭션 밖의 검색은 메모리 열 저장소에서 처리한다. (적재 전에는 DB)
+     */
     @Override
     public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        if (memberColumnStore.isEnabled() && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            Optional<List<MemberTeamDto>> result = memberColumnStore.search(condition);
+            if (result.isPresent()) {
+                return result.get();
+            }
+        }
         return from(member)
                 .leftJoin(member.team, team)
                 .where(
@@ -0,0 +1,109 @@
+package study.querydsl.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * 조회 작업을 각자의 EntityManager(= 커넥션)로 병렬 실행한다.
+ * 동시에 쓰는 커넥션은 parallelism 개로 제한되며, 기본값은 커넥션 풀의 절반이다.
+ * 결과는 트랜잭션 / 영속성 컨텍스트와 무관하므로 DTO 조회에만 사용한다.
+ * 큐는 제한이 없으므로 오래 걸리는 작업(전체 스캔 등)은 따로 만든 인스턴스에서 실행한다. (PartitionedScan)
+ */
+@Component
+public class ParallelQueryExecutor {
+
+    private final EntityManagerFactory emf;
+    private final ExecutorService executor;
+    private final int parallelism;
+
+    @Autowired
+    public ParallelQueryExecutor(EntityManagerFactory emf,
+                                 @Value("${parallel-query.parallelism:0}") int parallelism,
+                                 @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        this(emf, parallelism > 0 ? parallelism : Math.max(1, poolSize / 2), "parallel-query");
+    }
+
+    /**
+     * 스레드 이름이 다른 별도 풀. 만든 쪽에서 shutdown 한다.
+     */
+    public ParallelQueryExecutor(EntityManagerFactory emf, int parallelism, String threadName) {
+        this.emf = emf;
+        this.parallelism = parallelism;
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * task 하나를 비동기로 실행한다.
+     */
+    public <T> CompletableFuture<T> submit(Function<EntityManager, T> task) {
+        return CompletableFuture.supplyAsync(() -> {
+            EntityManager em = emf.createEntityManager();
+            try {
+                return task.apply(em);
+            } finally {
+                em.close();
+            }
+        }, executor);
+    }
+
+    /**
+     * tasks 를 병렬로 실행하고 tasks 순서대로 결과를 돌려준다.
+     */
+    public <T> List<T> execute(List<Function<EntityManager, T>> tasks) {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Function<EntityManager, T> task : tasks) {
+            futures.add(executor.submit(() -> {
+                EntityManager em = emf.createEntityManager();
+                try {
+                    return task.apply(em);
+                } finally {
+                    em.close();
+                }
+            }));
+        }
+
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("parallel query interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
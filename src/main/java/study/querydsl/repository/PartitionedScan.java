@@ -0,0 +1,199 @@
+package study.querydsl.repository;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.jpa.impl.JPAQuery;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * member 전체를 훑는 작업(내보내기, 백필 등)을 member_id 범위로 나눠 병렬로 읽는다.
+ * - min / max(member_id) 를 partition-size 개씩 잘라 범위마다 같은 predicate / projection 으로 조회한다.
+ *   (from member left join team)
+ * - 범위는 전용 풀(partitioned-scan.parallelism 개 스레드, 기본 2)에서 읽는다. 공유 ParallelQueryExecutor 를 쓰지 않으므로
+ *   긴 스캔이 짧은 조회(id 묶음 조회, 읽기 모델 적재 등)를 밀어내지 않고, 스캔이 쓰는 커넥션은 parallelism 개를 넘지 않는다.
+ * - ordered : member_id 순으로 이어 붙인 Stream. parallelism 개 범위만 미리 읽어 둔다.
+ * - forEach : 범위가 끝나는 대로 sink 에 넘긴다. 순서가 없고 sink 는 여러 스레드에서 동시에 호출되므로 thread-safe 해야 한다.
+ *   읽는 중이거나 sink 가 처리 중인 범위는 parallelism 개를 넘지 않는다. (나머지 범위는 제출하지 않고 기다린다)
+ * - forEachRange : forEach 와 같고 sink 에 범위 [from, to] 도 넘긴다.
+ * 범위마다 따로 읽으므로 커밋된 데이터만 보이고, 전체가 한 시점의 스냅샷은 아니다.
+ */
+@Component
+public class PartitionedScan {
+
+    private final ParallelQueryExecutor scanExecutor;
+    private final long partitionSize;
+
+    public PartitionedScan(EntityManagerFactory emf,
+                           @Value("${partitioned-scan.parallelism:2}") int parallelism,
+                           @Value("${partitioned-scan.partition-size:10000}") long partitionSize) {
+        this.scanExecutor = new ParallelQueryExecutor(emf, Math.max(1, parallelism), "partitioned-scan");
+        this.partitionSize = partitionSize;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scanExecutor.shutdown();
+    }
+
+    public <T> Stream<T> ordered(Expression<T> projection, Predicate... where) {
+        RangeIterator<T> iterator = new RangeIterator<>(projection, where, ranges(where));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::cancel);
+    }
+
+    public <T> void forEach(Expression<T> projection, Consumer<List<T>> sink, Predicate... where) {
+        forEachRange(projection, (range, rows) -> sink.accept(rows), where);
+    }
+
+    /**
+     * sink 는 여러 스레드에서 동시에 호출된다. 범위를 제출할 자리가 날 때까지 호출한 스레드가 기다린다.
+     * 실패한 범위가 있으면 남은 범위는 제출하지 않고 그 예외를 던진다.
+     */
+    public <T> void forEachRange(Expression<T> projection, BiConsumer<long[], List<T>> sink, Predicate... where) {
+        Semaphore slots = new Semaphore(scanExecutor.getParallelism());
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (long[] range : ranges(where)) {
+            slots.acquireUninterruptibly();
+            if (failed.get()) {
+                break;
+            }
+            futures.add(scanExecutor.submit(em -> fetch(em, projection, where, range, false))
+                    .thenAccept(rows -> sink.accept(range, rows))
+                    .whenComplete((done, error) -> {
+                        if (error != null) {
+                            failed.set(true);
+                        }
+                        slots.release();
+                    }));
+        }
+        join(CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])));
+    }
+
+    /**
+     * [from, to] 범위 목록
+     */
+    List<long[]> ranges(Predicate... where) {
+        Tuple bounds = join(scanExecutor.submit(em -> new ReadOnlyQueryFactory(em)
+                .select(member.id.min(), member.id.max())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(where)
+                .fetchOne()));
+        Long min = bounds == null ? null : bounds.get(member.id.min());
+        Long max = bounds == null ? null : bounds.get(member.id.max());
+        if (min == null || max == null) {
+            return Collections.emptyList();
+        }
+        List<long[]> ranges = new ArrayList<>();
+        for (long from = min; from <= max; from += partitionSize) {
+            ranges.add(new long[]{from, Math.min(max, from + partitionSize - 1)});
+            if (from > Long.MAX_VALUE - partitionSize) {
+                break;
+            }
+        }
+        return ranges;
+    }
+
+    private static <T> List<T> fetch(EntityManager em, Expression<T> projection, Predicate[] where,
+                                     long[] range, boolean ordered) {
+        JPAQuery<T> query = new ReadOnlyQueryFactory(em)
+                .select(projection)
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(where)
+                .where(member.id.between(range[0], range[1]));
+        if (ordered) {
+            query.orderBy(member.id.asc());
+        }
+        return query.fetch();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 범위를 순서대로 내보내면서 뒤쪽 parallelism 개 범위를 미리 조회한다.
+     */
+    private class RangeIterator<T> implements Iterator<T> {
+
+        private final Expression<T> projection;
+        private final Predicate[] where;
+        private final Iterator<long[]> ranges;
+        private final Deque<CompletableFuture<List<T>>> inFlight = new ArrayDeque<>();
+        private Iterator<T> current = Collections.emptyIterator();
+
+        RangeIterator(Expression<T> projection, Predicate[] where, List<long[]> ranges) {
+            this.projection = projection;
+            this.where = where;
+            this.ranges = ranges.iterator();
+            fill();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (inFlight.isEmpty()) {
+                    return false;
+                }
+                current = join(inFlight.poll()).iterator();
+                fill();
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+
+        void cancel() {
+            inFlight.forEach(future -> future.cancel(false));
+            inFlight.clear();
+        }
+
+        private void fill() {
+            while (inFlight.size() < scanExecutor.getParallelism() && ranges.hasNext()) {
+                long[] range = ranges.next();
+                inFlight.add(scanExecutor.submit(em -> fetch(em, projection, where, range, true)));
+            }
+        }
+    }
+}
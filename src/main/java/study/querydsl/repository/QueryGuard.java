@@ -0,0 +1,237 @@
+package study.querydsl.repository;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.JoinExpression;
+import com.querydsl.core.QueryMetadata;
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.FactoryExpression;
+import com.querydsl.core.types.Operation;
+import com.querydsl.core.types.Ops;
+import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
+import com.querydsl.core.types.TemplateExpression;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 요청 경로의 Querydsl 쿼리를 실행 직전에 검사한다. (GuardedJPAQuery)
+ * - 행 수 : limit 이 없거나 max-rows 보다 크면 max-rows + 1 로 제한해서 실행한다.
+ *   max-rows 를 넘으면 on-exceed 에 따라 max-rows 건으로 자르거나(limit) 실패시킨다(reject).
+ * - 조인 : 연관관계 경로도 on 조건도 없는 조인, where 에서 앞쪽 엔티티와 엮이지 않는 from(a, b) 는
+ *   카테시안 곱이므로 on-cartesian 에 따라 실패시키거나(reject) 로그만 남긴다(report).
+ * iterate() / stream() 은 max-rows + 1 번째 행을 읽으려 할 때 같은 정책을 적용한다.
+ * (limit 이면 거기서 끝나고, reject 면 예외) max-rows 전에 소비를 멈추면 위반이 아니다.
+ * 위반은 query.guard.violations (type, action) 로 센다.
+ * 전체를 읽는 것이 목적인 적재 / 범위 조회에는 쓰지 않는다.
+ */
+@Slf4j
+@Component
+public class QueryGuard {
+
+    private final int maxRows;
+    private final boolean rejectExceeded;
+    private final boolean rejectCartesian;
+    private final Counter limited;
+    private final Counter rejectedRows;
+    private final Counter rejectedCartesian;
+    private final Counter reportedCartesian;
+
+    public QueryGuard(MeterRegistry registry,
+                      @Value("${query-guard.max-rows:10000}") int maxRows,
+                      @Value("${query-guard.on-exceed:limit}") String onExceed,
+                      @Value("${query-guard.on-cartesian:reject}") String onCartesian) {
+        this.maxRows = maxRows;
+        this.rejectExceeded = "reject".equalsIgnoreCase(onExceed);
+        this.rejectCartesian = "reject".equalsIgnoreCase(onCartesian);
+        this.limited = violations(registry, "unbounded", "limited");
+        this.rejectedRows = violations(registry, "unbounded", "rejected");
+        this.rejectedCartesian = violations(registry, "cartesian", "rejected");
+        this.reportedCartesian = violations(registry, "cartesian", "reported");
+    }
+
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * 쿼리에 붙일 limit. 기존 limit 이 max-rows 이하면 null (그대로 둔다)
+     */
+    Integer rowLimit(Long limit) {
+        if (limit != null && limit <= maxRows) {
+            return null;
+        }
+        return maxRows + 1;
+    }
+
+    <T> List<T> checkRows(List<T> results, QueryMetadata metadata) {
+        return checkMergedRows(results, metadata.getJoins());
+    }
+
+    /**
+     * 여러 쿼리의 결과를 합친 목록(샤드 병합 등)에도 같은 max-rows / on-exceed 를 적용한다.
+     * source 는 위반 로그 / 예외 메시지에 남길 출처
+     */
+    public <T> List<T> checkMergedRows(List<T> results, Object source) {
+        if (results.size() <= maxRows) {
+            return results;
+        }
+        exceeded(source);
+        return new ArrayList<>(results.subList(0, maxRows));
+    }
+
+    /**
+     * 행을 하나씩 읽는 결과(iterate / stream)는 max-rows 건까지만 내보낸다.
+     */
+    <T> CloseableIterator<T> checkRows(CloseableIterator<T> rows, QueryMetadata metadata) {
+        List<JoinExpression> source = metadata.getJoins();
+        return new CloseableIterator<T>() {
+            private int count;
+            private boolean done;
+
+            @Override
+            public boolean hasNext() {
+                if (done || !rows.hasNext()) {
+                    return false;
+                }
+                if (count == maxRows) {
+                    done = true;
+                    exceeded(source);
+                    return false;
+                }
+                return true;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                count++;
+                return rows.next();
+            }
+
+            @Override
+            public void close() {
+                rows.close();
+            }
+        };
+    }
+
+    private void exceeded(Object source) {
+        if (rejectExceeded) {
+            rejectedRows.increment();
+            throw new QueryGuardException("query returned more than " + maxRows + " rows: " + source);
+        }
+        limited.increment();
+        log.warn("query returned more than {} rows, truncated: {}", maxRows, source);
+    }
+
+    void checkJoins(QueryMetadata metadata) {
+        List<JoinExpression> joins = metadata.getJoins();
+        if (joins.size() < 2) {
+            return;
+        }
+        List<Predicate> conjuncts = new ArrayList<>();
+        conjuncts(metadata.getWhere(), conjuncts);
+
+        Set<Expression<?>> joined = new HashSet<>();
+        joined.add(root(joins.get(0).getTarget()));
+        for (JoinExpression join : joins.subList(1, joins.size())) {
+            Expression<?> root = root(join.getTarget());
+            if (!related(join, root, joined, conjuncts)) {
+                cartesian(join, metadata);
+            }
+            joined.add(root);
+        }
+    }
+
+    private void cartesian(JoinExpression join, QueryMetadata metadata) {
+        if (rejectCartesian) {
+            rejectedCartesian.increment();
+            throw new QueryGuardException("join without a relationship or condition: " + join + " in " + metadata.getJoins());
+        }
+        reportedCartesian.increment();
+        log.warn("join without a relationship or condition: {} in {}", join, metadata.getJoins());
+    }
+
+    /**
+     * 연관관계 경로(member.team), on 조건, 또는 앞쪽 엔티티와 함께 쓰인 where 조건이 있으면 엮인 조인이다.
+     */
+    private static boolean related(JoinExpression join, Expression<?> root, Set<Expression<?>> joined, List<Predicate> conjuncts) {
+        if (join.getCondition() != null || isAssociation(join.getTarget())) {
+            return true;
+        }
+        for (Predicate conjunct : conjuncts) {
+            Set<Expression<?>> roots = new HashSet<>();
+            roots(conjunct, roots);
+            if (roots.contains(root) && roots.stream().anyMatch(joined::contains)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isAssociation(Expression<?> target) {
+        Expression<?> path = target;
+        if (target instanceof Operation && ((Operation<?>) target).getOperator() == Ops.ALIAS) {
+            path = ((Operation<?>) target).getArg(0);
+        }
+        return path instanceof Path && ((Path<?>) path).getMetadata().getParent() != null;
+    }
+
+    /**
+     * join(member.team, team) 의 별칭 team, from(member) 의 member
+     */
+    private static Expression<?> root(Expression<?> target) {
+        if (target instanceof Operation && ((Operation<?>) target).getOperator() == Ops.ALIAS) {
+            return ((Operation<?>) target).getArg(1);
+        }
+        return target instanceof Path ? ((Path<?>) target).getRoot() : target;
+    }
+
+    private static void conjuncts(Predicate predicate, List<Predicate> conjuncts) {
+        if (predicate instanceof Operation && ((Operation<?>) predicate).getOperator() == Ops.AND) {
+            for (Expression<?> arg : ((Operation<?>) predicate).getArgs()) {
+                conjuncts((Predicate) arg, conjuncts);
+            }
+        } else if (predicate != null) {
+            conjuncts.add(predicate);
+        }
+    }
+
+    /**
+     * 식에 쓰인 경로들의 루트. 서브쿼리는 바깥 쿼리를 조인하지 않으므로 보지 않는다.
+     */
+    private static void roots(Expression<?> expression, Set<Expression<?>> roots) {
+        if (expression instanceof Path) {
+            roots.add(((Path<?>) expression).getRoot());
+        } else if (expression instanceof Operation) {
+            ((Operation<?>) expression).getArgs().forEach(arg -> roots(arg, roots));
+        } else if (expression instanceof TemplateExpression) {
+            for (Object arg : ((TemplateExpression<?>) expression).getArgs()) {
+                if (arg instanceof Expression) {
+                    roots((Expression<?>) arg, roots);
+                }
+            }
+        } else if (expression instanceof FactoryExpression) {
+            ((FactoryExpression<?>) expression).getArgs().forEach(arg -> roots(arg, roots));
+        }
+    }
+
+    private static Counter violations(MeterRegistry registry, String type, String action) {
+        return Counter.builder("query.guard.violations")
+                .tag("type", type)
+                .tag("action", action)
+                .description("queries that hit the row cap or joined without a condition")
+                .register(registry);
+    }
+}
@@ -0,0 +1,18 @@
+package study.querydsl.repository;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * QueryGuard 가 실행을 막은 쿼리 (행 수 초과, 조건 없는 조인)
+ * IllegalStateException 이면 @Repository 의 예외 변환에서 InvalidDataAccessApiUsageException 으로 바뀌므로 그대로 둔다.
+ */
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class QueryGuardException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public QueryGuardException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,54 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.FlushMode;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+
+/**
+ * 조회 전용 JPAQueryFactory.
+ * 읽기 트랜잭션(또는 트랜잭션 없음)에서 실행되는 쿼리에 read-only / FlushMode.MANUAL 힌트를 붙여
+ * 스냅샷 생성(dirty checking)과 쿼리 전 auto flush 를 생략한다.
+ * 쓰기 트랜잭션 안에서는 아직 flush 되지 않은 변경을 읽어야 하므로 힌트를 붙이지 않는다.
+ * QueryGuard 를 넘기면 요청 경로용으로 조인 / 행 수를 검사하는 쿼리(GuardedJPAQuery)를 만든다.
+ */
+public class ReadOnlyQueryFactory extends JPAQueryFactory {
+
+    private final EntityManager em;
+    private final QueryGuard guard;
+
+    public ReadOnlyQueryFactory(EntityManager em) {
+        this(em, null);
+    }
+
+    public ReadOnlyQueryFactory(EntityManager em, QueryGuard guard) {
+        super(em);
+        this.em = em;
+        this.guard = guard;
+    }
+
+    @Override
+    public JPAQuery<?> query() {
+        if (guard == null) {
+            return readOnly(super.query());
+        }
+        return readOnly(new GuardedJPAQuery<Void>(em, guard));
+    }
+
+    public static <T> JPAQuery<T> readOnly(JPAQuery<T> query) {
+        if (isReadWriteTransaction()) {
+            return query;
+        }
+        return query
+                .setHint(QueryHints.READ_ONLY, true)
+                .setHint(QueryHints.FLUSH_MODE, FlushMode.MANUAL);
+    }
+
+    private static boolean isReadWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+}
@@ -0,0 +1,27 @@
+package study.querydsl.search;
+
+/**
+ * 커밋된 Member / Team 변경을 받는 메모리 읽기 모델. MemberChangeSync 가 호출한다.
+ */
+public interface MemberChangeListener {
+
+    void memberInserted(MemberRow row);
+
+    /**
+     * before 는 Hibernate 가 이전 상태를 모르면 null
+     */
+    void memberUpdated(MemberRow before, MemberRow after);
+
+    void memberDeleted(MemberRow row);
+
+    default void teamSaved(long teamId, String name) {
+    }
+
+    default void teamDeleted(long teamId) {
+    }
+
+    /**
+     * 어떤 행이 바뀌었는지 모르는 변경(bulk DML)이 커밋됐을 때 호출한다.
+     */
+    void invalidate();
+}
@@ -0,0 +1,204 @@
+package study.querydsl.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberChange;
+import study.querydsl.entity.MemberChange.Operation;
+import study.querydsl.entity.MemberChange.Target;
+import study.querydsl.entity.Team;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Member / Team 변경을 member_change 테이블(change feed)에 같은 트랜잭션으로 기록한다.
+ * - 엔티티 insert / update / delete : flush 때 받은 이벤트를 세션별로 모아 두고,
+ *   커밋 직전(BeforeTransactionCompletionProcess)에 같은 커넥션을 쓰는 임시 세션으로 한 번에 저장한다.
+ * - bulk DML : MemberChangeSync 가 잡아서 알려주면 BULK 한 건을 남긴다.
+ * 롤백되면 모아 둔 변경은 버린다.
+ * change_id(IDENTITY)는 insert 때 받으므로 먼저 번호를 받은 트랜잭션이 나중에 커밋될 수 있다.
+ * 이 JVM 에서 번호를 받고 아직 커밋되지 않은 트랜잭션의 가장 작은 change_id 를 들고 있다가 읽는 쪽(readCommitted)에 넘긴다.
+ */
+@Slf4j
+public class MemberChangeLog implements Integrator, PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Map<SessionImplementor, List<MemberChange>> pending = new ConcurrentHashMap<>();
+    private static final int OPTIMISTIC_READS = 3;
+
+    private final transient ConcurrentSkipListSet<Long> uncommitted = new ConcurrentSkipListSet<>();
+    /**
+     * 번호를 받는 쪽(write)이 공유 lock, 읽는 쪽은 uncommitted 를 볼 때만 배타 lock.
+     * 배타 lock 을 잡은 순간에는 번호를 받고 uncommitted 에 아직 넣지 않은 트랜잭션이 없다.
+     */
+    private final transient ReadWriteLock allocation = new ReentrantReadWriteLock();
+    /**
+     * 번호 받기를 시작한 횟수 (공유 lock 안에서 번호를 받기 전에 센다)
+     */
+    private final transient AtomicLong allocations = new AtomicLong();
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_INSERT, this);
+        registry.appendListeners(EventType.POST_UPDATE, this);
+        registry.appendListeners(EventType.POST_DELETE, this);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return false;
+    }
+
+    /**
+     * Hibernate 5 에서 abstract 로 남아 있는 예전 이름, requiresPostCommitHandling 만 호출된다.
+     */
+    @Override
+    @Deprecated
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        record(event.getSession(), change(Operation.INSERT, event.getPersister(), event.getId(), event.getState()));
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        record(event.getSession(), change(Operation.UPDATE, event.getPersister(), event.getId(), event.getState()));
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        record(event.getSession(), change(Operation.DELETE, event.getPersister(), event.getId(), event.getDeletedState()));
+    }
+
+    /**
+     * 이 JVM 에서 기록했지만 아직 커밋되지 않은 가장 작은 change_id (없으면 null)를 넘겨 query 를 실행한다.
+     * query 가 그보다 작은 change_id 만 읽으면 뒤늦게 커밋되는 행을 건너뛰지 않는다.
+     * lock 은 그 값을 읽는 동안만 잡고 query 는 lock 밖에서 실행하므로 다른 트랜잭션의 쓰기를 막지 않는다.
+     * 이후에 받는 번호는 그 값보다 크므로 그대로 맞다. 값이 없었는데 query 도중 번호를 받은 트랜잭션이 있으면
+     * 그 번호를 건너뛰었을 수 있으므로 다시 읽고, 그래도 계속 끼어들면 lock 을 잡은 채 읽는다.
+     */
+    public <T> T readCommitted(Function<Long, T> query) {
+        for (int i = 0; i < OPTIMISTIC_READS; i++) {
+            Long first;
+            long allocated;
+            allocation.writeLock().lock();
+            try {
+                first = uncommitted.isEmpty() ? null : uncommitted.first();
+                allocated = allocations.get();
+            } finally {
+                allocation.writeLock().unlock();
+            }
+            T result = query.apply(first);
+            if (first != null || allocations.get() == allocated) {
+                return result;
+            }
+        }
+        allocation.writeLock().lock();
+        try {
+            return query.apply(uncommitted.isEmpty() ? null : uncommitted.first());
+        } finally {
+            allocation.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 현재 트랜잭션에 묶인 세션을 찾아 BULK 를 남긴다.
+     */
+    void bulkDml(Class<?> entityClass) {
+        Target target = entityClass == Team.class ? Target.TEAM : Target.MEMBER;
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            for (Object resource : TransactionSynchronizationManager.getResourceMap().values()) {
+                if (resource instanceof EntityManagerHolder) {
+                    SessionImplementor session = ((EntityManagerHolder) resource).getEntityManager().unwrap(SessionImplementor.class);
+                    record(session, MemberChange.bulk(target));
+                    return;
+                }
+            }
+        }
+        log.warn("bulk DML on {} outside of a JPA transaction is not recorded in the change feed", target);
+    }
+
+    private static MemberChange change(Operation operation, EntityPersister persister, Object id, Object[] state) {
+        if (persister.getMappedClass() == Team.class) {
+            return MemberChange.team(operation, (Long) id, MemberChangeSync.teamName(persister, state));
+        }
+        if (persister.getMappedClass() == Member.class) {
+            MemberRow row = MemberChangeSync.memberRow(persister, id, state);
+            return MemberChange.member(operation, row.getId(), row.getUsername(), row.getAge(), row.getTeamId());
+        }
+        return null;
+    }
+
+    private void record(SessionImplementor session, MemberChange change) {
+        if (change == null) {
+            return;
+        }
+        List<MemberChange> changes = pending.get(session);
+        if (changes == null) {
+            changes = new ArrayList<>();
+            pending.put(session, changes);
+            session.getActionQueue().registerProcess(this::write);
+            session.getActionQueue().registerProcess((success, completed) -> pending.remove(completed));
+        }
+        changes.add(change);
+    }
+
+    private void write(SessionImplementor session) {
+        List<MemberChange> changes = pending.remove(session);
+        if (changes == null || changes.isEmpty()) {
+            return;
+        }
+        Session temporarySession = session.sessionWithOptions()
+                .connection()
+                .autoClose(false)
+                .connectionHandlingMode(PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION)
+                .openSession();
+        allocation.readLock().lock();
+        try {
+            allocations.incrementAndGet();
+            changes.forEach(temporarySession::persist);
+            temporarySession.flush();
+            // 커밋 / 롤백이 끝나면(AfterTransactionCompletionProcess) 뺀다.
+            long first = changes.stream().mapToLong(MemberChange::getId).min().getAsLong();
+            uncommitted.add(first);
+            session.getActionQueue().registerProcess((success, completed) -> uncommitted.remove(first));
+        } finally {
+            allocation.readLock().unlock();
+            temporarySession.close();
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package study.querydsl.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 커밋된 Member / Team 변경을 MemberChangeListener(메모리 읽기 모델)들에 전달한다.
+ * - 엔티티 insert / update / delete : Hibernate post-commit 이벤트로 해당 행만 전달
+ * - bulk DML (JPQL update / delete, native insert 등) : member / team 테이블 DML 중 persister 가 만든 SQL 이 아닌 것을
+ *   StatementInspector 로 잡아서 커밋 후 invalidate 한다. change feed 가 켜져 있으면 MemberChangeLog 에도 알린다.
+ * - Hibernate 를 거치지 않는 쓰기(JDBC batch 등) : 쓰는 쪽이 bulkWritten / invalidateAll 로 직접 알린다.
+ * member / team 을 쓴 트랜잭션은 끝날 때까지 세어 둔다. (isWriting, 증감으로 갱신하는 읽기 모델의 적재 확인용)
+ */
+@Slf4j
+public class MemberChangeSync implements Integrator, StatementInspector,
+        PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient ObjectProvider<MemberChangeListener> listenerProvider;
+    private transient volatile List<MemberChangeListener> listeners;
+    private transient SessionFactoryImplementor sessionFactory;
+    private transient volatile EntityStatements entityStatements;
+    private final transient MemberChangeLog changeLog;
+    private final transient AtomicInteger writing = new AtomicInteger();
+
+    /**
+     * changeLog 는 change feed 를 끄면 null
+     */
+    public MemberChangeSync(ObjectProvider<MemberChangeListener> listenerProvider, MemberChangeLog changeLog) {
+        this.listenerProvider = listenerProvider;
+        this.changeLog = changeLog;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        this.sessionFactory = sessionFactory;
+        EventListenerRegistry registry = serviceRegistry.getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return persister.getMappedClass() == Member.class || persister.getMappedClass() == Team.class;
+    }
+
+    /**
+     * Hibernate 5 에서 abstract 로 남아 있는 예전 이름, requiresPostCommitHandling 만 호출된다.
+     */
+    @Override
+    @Deprecated
+    public boolean requiresPostCommitHanding(EntityPersister persister) {
+        return requiresPostCommitHandling(persister);
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        if (event.getEntity() instanceof Team) {
+            teamSaved(event.getPersister(), event.getId(), event.getState());
+            return;
+        }
+        MemberRow row = memberRow(event.getPersister(), event.getId(), event.getState());
+        publish(listener -> listener.memberInserted(row));
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        if (event.getEntity() instanceof Team) {
+            teamSaved(event.getPersister(), event.getId(), event.getState());
+            return;
+        }
+        MemberRow before = event.getOldState() == null ? null : memberRow(event.getPersister(), event.getId(), event.getOldState());
+        MemberRow after = memberRow(event.getPersister(), event.getId(), event.getState());
+        publish(listener -> listener.memberUpdated(before, after));
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        if (event.getEntity() instanceof Team) {
+            long teamId = (Long) event.getId();
+            publish(listener -> listener.teamDeleted(teamId));
+            return;
+        }
+        MemberRow row = memberRow(event.getPersister(), event.getId(), event.getDeletedState());
+        publish(listener -> listener.memberDeleted(row));
+    }
+
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (sessionFactory == null) {
+            return sql;
+        }
+        EntityStatements statements = entityStatements();
+        if (statements.isDml(sql)) {
+            writeStarted();
+        }
+        Class<?> bulkTarget = statements.bulkDmlTarget(sql);
+        if (bulkTarget != null) {
+            invalidateAfterCommit();
+            bulkWritten(bulkTarget);
+        }
+        return sql;
+    }
+
+    /**
+     * 현재 JPA 트랜잭션에서 entityClass 테이블에 Hibernate 를 거치지 않고 쓴 것을 change feed 에 BULK 로 남긴다.
+     * 읽기 모델은 건드리지 않는다. (쓰기가 다 끝난 뒤 invalidateAll)
+     */
+    public void bulkWritten(Class<?> entityClass) {
+        if (changeLog != null) {
+            changeLog.bulkDml(entityClass);
+        }
+    }
+
+    /**
+     * member / team 을 쓰고 아직 끝나지 않은 트랜잭션이 있는지.
+     * 커밋됐지만 post-commit 이벤트를 아직 다 전달하지 않은 트랜잭션도 포함한다. (스프링 트랜잭션 동기화 밖의 쓰기는 세지 않는다)
+     */
+    public boolean isWriting() {
+        return writing.get() > 0;
+    }
+
+    /**
+     * 읽기 모델을 모두 다시 적재하게 한다.
+     */
+    public void invalidateAll() {
+        publish(MemberChangeListener::invalidate);
+    }
+
+    /**
+     * change feed 를 끄면 null
+     */
+    public MemberChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    private void teamSaved(EntityPersister persister, Object id, Object[] state) {
+        String name = teamName(persister, state);
+        publish(listener -> listener.teamSaved((Long) id, name));
+    }
+
+    static String teamName(EntityPersister persister, Object[] state) {
+        return (String) state[persister.getEntityMetamodel().getPropertyIndex("name")];
+    }
+
+    static MemberRow memberRow(EntityPersister persister, Object id, Object[] state) {
+        EntityMetamodel metamodel = persister.getEntityMetamodel();
+        return new MemberRow(
+                (Long) id,
+                (String) state[metamodel.getPropertyIndex("username")],
+                (Integer) state[metamodel.getPropertyIndex("age")],
+                teamId(state[metamodel.getPropertyIndex("team")]));
+    }
+
+    /**
+     * 필드 접근 엔티티라 프록시의 getId() 는 초기화를 일으키므로 프록시에서는 식별자만 꺼낸다.
+     */
+    static Long teamId(Object team) {
+        if (team == null) {
+            return null;
+        }
+        if (team instanceof HibernateProxy) {
+            return (Long) ((HibernateProxy) team).getHibernateLazyInitializer().getIdentifier();
+        }
+        return ((Team) team).getId();
+    }
+
+    /**
+     * 한 읽기 모델이 실패해도 나머지는 계속 반영하고, 실패한 쪽은 다시 적재하게 한다.
+     */
+    private void publish(Consumer<MemberChangeListener> change) {
+        for (MemberChangeListener listener : listeners()) {
+            try {
+                change.accept(listener);
+            } catch (RuntimeException e) {
+                log.warn("failed to apply change to {}, invalidating", listener.getClass().getSimpleName(), e);
+                listener.invalidate();
+            }
+        }
+    }
+
+    /**
+     * 트랜잭션마다 처음 쓸 때 한 번 센다. post-commit 이벤트는 스프링 afterCommit 전에 전달되므로
+     * afterCommit(롤백이면 afterCompletion)에서 뺀다. 먼저 등록되므로 bulk DML 의 invalidate 보다 먼저 빠진다.
+     */
+    private void writeStarted() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof WriteTracker && ((WriteTracker) synchronization).owner() == this) {
+                return;
+            }
+        }
+        writing.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new WriteTracker());
+    }
+
+    private final class WriteTracker implements TransactionSynchronization {
+
+        private boolean finished;
+
+        MemberChangeSync owner() {
+            return MemberChangeSync.this;
+        }
+
+        @Override
+        public void afterCommit() {
+            finish();
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            finish();
+        }
+
+        private void finish() {
+            if (!finished) {
+                finished = true;
+                writing.decrementAndGet();
+            }
+        }
+    }
+
+    private void invalidateAfterCommit() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(MemberChangeListener::invalidate);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(MemberChangeListener::invalidate);
+            }
+        });
+    }
+
+    private List<MemberChangeListener> listeners() {
+        List<MemberChangeListener> current = listeners;
+        if (current == null) {
+            current = listenerProvider.orderedStream().collect(Collectors.toList());
+            listeners = current;
+        }
+        return current;
+    }
+
+    private EntityStatements entityStatements() {
+        EntityStatements statements = entityStatements;
+        if (statements == null) {
+            statements = new EntityStatements(
+                    (AbstractEntityPersister) sessionFactory.getMetamodel().entityPersister(Member.class),
+                    (AbstractEntityPersister) sessionFactory.getMetamodel().entityPersister(Team.class));
+            entityStatements = statements;
+        }
+        return statements;
+    }
+
+    /**
+     * member / team 테이블 DML 판별. persister 가 만든 insert / update / delete 는 post-commit 이벤트로 처리되므로 bulk DML 에서는 제외한다.
+     */
+    private static class EntityStatements {
+
+        private final Set<String> entityStatements = new HashSet<>();
+        private final List<String> dmlPrefixes = new ArrayList<>();
+        private final List<Class<?>> dmlTargets = new ArrayList<>();
+
+        EntityStatements(AbstractEntityPersister... persisters) {
+            for (AbstractEntityPersister persister : persisters) {
+                entityStatements.addAll(Arrays.asList(persister.getSQLInsertStrings()));
+                entityStatements.addAll(Arrays.asList(persister.getSQLUpdateStrings()));
+                entityStatements.addAll(Arrays.asList(persister.getSQLLazyUpdateStrings()));
+                entityStatements.addAll(Arrays.asList(persister.getSQLDeleteStrings()));
+                String table = persister.getTableName();
+                for (String prefix : new String[]{"insert into ", "update ", "delete from "}) {
+                    dmlPrefixes.add(prefix + table + " ");
+                    dmlTargets.add(persister.getMappedClass());
+                }
+            }
+        }
+
+        /**
+         * bulk DML 이면 대상 엔티티 클래스, 아니면 null
+         */
+        Class<?> bulkDmlTarget(String sql) {
+            int i = dmlIndex(sql);
+            if (i < 0 || entityStatements.contains(sql)) {
+                return null;
+            }
+            return dmlTargets.get(i);
+        }
+
+        /**
+         * persister 가 만든 것을 포함한 member / team 테이블 DML 인지
+         */
+        boolean isDml(String sql) {
+            return dmlIndex(sql) >= 0;
+        }
+
+        private int dmlIndex(String sql) {
+            int start = statementStart(sql);
+            for (int i = 0; i < dmlPrefixes.size(); i++) {
+                String prefix = dmlPrefixes.get(i);
+                if (sql.regionMatches(true, start, prefix, 0, prefix.length())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * use_sql_comments 로 붙는 앞쪽 주석과 공백을 건너뛴다.
+         */
+        private static int statementStart(String sql) {
+            int start = 0;
+            while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+                start++;
+            }
+            if (sql.startsWith("/*", start)) {
+                int end = sql.indexOf("*/", start);
+                if (end > 0) {
+                    start = end + 2;
+                    while (start < sql.length() && Character.isWhitespace(sql.charAt(start))) {
+                        start++;
+                    }
+                }
+            }
+            return start;
+        }
+    }
+}
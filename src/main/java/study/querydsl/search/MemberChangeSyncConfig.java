@@ -0,0 +1,55 @@
+package study.querydsl.search;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER;
+
+@Configuration
+public class MemberChangeSyncConfig {
+
+    /**
+     * 리스너 빈들은 EntityManagerFactory 에 의존하므로 첫 변경 때 찾는다.
+     * change-feed.enabled 면 MemberChangeLog 도 함께 만들어서 변경을 member_change 에 기록한다.
+     * JDBC 로 직접 쓰는 쪽(MemberCsvImporter)이 변경을 알릴 수 있게 빈으로 둔다.
+     */
+    @Bean
+    public MemberChangeSync memberChangeSync(ObjectProvider<MemberChangeListener> listeners,
+                                             @Value("${change-feed.enabled:true}") boolean changeFeedEnabled) {
+        return new MemberChangeSync(listeners, changeFeedEnabled ? new MemberChangeLog() : null);
+    }
+
+    /**
+     * EntityManagerFactory 를 만들 때 MemberChangeSync (와 MemberChangeLog) 를 이벤트 리스너 / StatementInspector 로 등록한다.
+     * 다른 customizer 가 먼저 등록한 integrator 는 그대로 둔다. (FlushMetricsConfig)
+     */
+    @Bean
+    public HibernatePropertiesCustomizer memberChangeSyncCustomizer(MemberChangeSync sync) {
+        List<Integrator> integrators = new ArrayList<>();
+        integrators.add(sync);
+        if (sync.getChangeLog() != null) {
+            integrators.add(sync.getChangeLog());
+        }
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, sync);
+            IntegratorProvider previous = (IntegratorProvider) properties.get(INTEGRATOR_PROVIDER);
+            properties.put(INTEGRATOR_PROVIDER, (IntegratorProvider) () -> {
+                List<Integrator> all = new ArrayList<>();
+                if (previous != null) {
+                    all.addAll(previous.getIntegrators());
+                }
+                all.addAll(integrators);
+                return all;
+            });
+        };
+    }
+}
@@ -0,0 +1,538 @@
+package study.querydsl.search;
+
+import com.querydsl.core.Tuple;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.hibernate.annotations.QueryHints;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.repository.ParallelQueryExecutor;
+import study.querydsl.repository.ReadOnlyQueryFactory;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * Member 의 열 지향 메모리 복제본. MemberSearchCondition 검색을 DB 없이 처리한다. (member-column-store.enabled)
+ * - 열 : long[] id, int[] age, int[] 팀 코드, int[] username 코드
+ * - username : 사전 인코딩(byte[] 하나에 UTF-8 로 이어 붙임) + 같은 username 을 가진 행끼리의 연결 리스트
+ * - 팀 : 팀 코드별 행 BitSet
+ * 검색은 username → 팀 → 전체 스캔 순으로 가장 좁은 후보에서 시작해 나머지 조건을 열 값으로 확인한다.
+ * 커밋된 엔티티 변경으로 갱신하고, reconcile-interval-seconds 마다 DB 에서 다시 적재해서 어긋난 것을 바로잡는다.
+ * 삭제된 행 자리와 쓰지 않는 사전 항목은 다시 적재할 때 정리된다.
+ */
+@Component
+public class MemberColumnStore extends MemberReplica<MemberColumnStore.Columns> implements MeterBinder {
+
+    private static final int LOAD_FETCH_SIZE = 10_000;
+
+    private final long reconcileIntervalSeconds;
+    private ScheduledExecutorService reconciler;
+
+    public MemberColumnStore(ObjectProvider<ParallelQueryExecutor> parallelQueryExecutor,
+                             @Value("${member-column-store.enabled:false}") boolean enabled,
+                             @Value("${member-column-store.reconcile-interval-seconds:600}") long reconcileIntervalSeconds) {
+        super("member column store", parallelQueryExecutor, enabled);
+        this.reconcileIntervalSeconds = reconcileIntervalSeconds;
+    }
+
+    @Override
+    public void warmUp() {
+        super.warmUp();
+        if (isEnabled() && reconcileIntervalSeconds > 0) {
+            reconciler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "member-column-store-reconcile");
+                thread.setDaemon(true);
+                return thread;
+            });
+            reconciler.scheduleWithFixedDelay(this::reload, reconcileIntervalSeconds, reconcileIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (reconciler != null) {
+            reconciler.shutdownNow();
+        }
+    }
+
+    /**
+     * cold 상태면 Optional.empty()
+     */
+    public Optional<List<MemberTeamDto>> search(MemberSearchCondition condition) {
+        Columns current = snapshot();
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.of(current.search(condition));
+    }
+
+    public int rowCount() {
+        Columns current = snapshot();
+        return current == null ? 0 : current.liveRows();
+    }
+
+    public long memoryBytes() {
+        Columns current = snapshot();
+        return current == null ? 0 : current.memoryBytes();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("member.column.store.rows", this, MemberColumnStore::rowCount)
+                .register(registry);
+        Gauge.builder("member.column.store.memory", this, MemberColumnStore::memoryBytes)
+                .description("estimated size of the column arrays, dictionaries and bitmaps")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    public void memberInserted(MemberRow row) {
+        apply(columns -> columns.upsert(row));
+    }
+
+    @Override
+    public void memberUpdated(MemberRow before, MemberRow after) {
+        apply(columns -> columns.upsert(after));
+    }
+
+    @Override
+    public void memberDeleted(MemberRow row) {
+        apply(columns -> columns.delete(row.getId()));
+    }
+
+    @Override
+    public void teamSaved(long teamId, String name) {
+        apply(columns -> columns.putTeam(teamId, name));
+    }
+
+    @Override
+    public void teamDeleted(long teamId) {
+        apply(columns -> columns.putTeam(teamId, null));
+    }
+
+    @Override
+    protected Columns load(EntityManager em) {
+        ReadOnlyQueryFactory queryFactory = new ReadOnlyQueryFactory(em);
+        Columns columns = new Columns();
+        for (Tuple row : queryFactory.select(team.id, team.name).from(team).fetch()) {
+            columns.putTeam(row.get(team.id), row.get(team.name));
+        }
+        try (Stream<Tuple> rows = queryFactory
+                .select(member.id, member.username, member.age, member.team.id)
+                .from(member)
+                .orderBy(member.id.asc())
+                .setHint(QueryHints.FETCH_SIZE, LOAD_FETCH_SIZE)
+                .stream()) {
+            rows.forEach(row -> columns.upsert(new MemberRow(
+                    row.get(member.id), row.get(member.username), row.get(member.age), row.get(member.team.id))));
+        }
+        columns.trim();
+        return columns;
+    }
+
+    /**
+     * 열 배열. 쓰기는 MemberReplica 의 lock 으로 한 번에 하나씩 들어오고, 읽기와는 rw lock 으로 나눈다.
+     */
+    static final class Columns {
+
+        private static final int NONE = -1;
+
+        private final ReentrantReadWriteLock rw = new ReentrantReadWriteLock();
+
+        private int rows;
+        private int liveRows;
+        private long[] ids = new long[1024];
+        private int[] ages = new int[1024];
+        private int[] teamCodes = new int[1024];
+        private int[] usernameCodes = new int[1024];
+        private int[] nextSameUsername = new int[1024];
+        private final BitSet deleted = new BitSet();
+
+        /**
+         * ids[0, sortedRows) 는 오름차순이라 이진 탐색으로 찾는다. 순서가 어긋나게 커밋된 id 는 outOfOrder 에 둔다.
+         */
+        private int sortedRows;
+        private final Map<Long, Integer> outOfOrder = new HashMap<>();
+
+        private final Dictionary usernames = new Dictionary();
+        private int[] usernameHead = emptyHeads(0, 1024);
+
+        private final Map<Long, Integer> teamCodeById = new HashMap<>();
+        private final List<Long> teamIds = new ArrayList<>();
+        private final List<String> teamNames = new ArrayList<>();
+        private final List<BitSet> teamRows = new ArrayList<>();
+
+        int liveRows() {
+            return liveRows;
+        }
+
+        long memoryBytes() {
+            Lock lock = rw.readLock();
+            lock.lock();
+            try {
+                long bytes = 8L * ids.length
+                        + 4L * (ages.length + teamCodes.length + usernameCodes.length + nextSameUsername.length + usernameHead.length)
+                        + deleted.size() / 8
+                        + 48L * outOfOrder.size()
+                        + usernames.memoryBytes();
+                for (BitSet bits : teamRows) {
+                    bytes += bits.size() / 8;
+                }
+                return bytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        List<MemberTeamDto> search(MemberSearchCondition condition) {
+            int ageGoe = condition.getAgeGoe() == null ? Integer.MIN_VALUE : condition.getAgeGoe();
+            int ageLoe = condition.getAgeLoe() == null ? Integer.MAX_VALUE : condition.getAgeLoe();
+            Lock lock = rw.readLock();
+            lock.lock();
+            try {
+                BitSet teams = condition.getTeamName() == null ? null : teamCodesNamed(condition.getTeamName());
+                if (teams != null && teams.isEmpty()) {
+                    return Collections.emptyList();
+                }
+
+                List<MemberTeamDto> result = new ArrayList<>();
+                if (condition.getUsername() != null) {
+                    int code = usernames.find(condition.getUsername());
+                    for (int row = code == NONE ? NONE : usernameHead[code]; row != NONE; row = nextSameUsername[row]) {
+                        if (matches(row, teams, ageGoe, ageLoe)) {
+                            result.add(dto(row));
+                        }
+                    }
+                } else if (teams != null) {
+                    for (int teamCode = teams.nextSetBit(0); teamCode >= 0; teamCode = teams.nextSetBit(teamCode + 1)) {
+                        BitSet members = teamRows.get(teamCode);
+                        for (int row = members.nextSetBit(0); row >= 0; row = members.nextSetBit(row + 1)) {
+                            if (ages[row] >= ageGoe && ages[row] <= ageLoe) {
+                                result.add(dto(row));
+                            }
+                        }
+                    }
+                } else {
+                    for (int row = deleted.nextClearBit(0); row < rows; row = deleted.nextClearBit(row + 1)) {
+                        if (ages[row] >= ageGoe && ages[row] <= ageLoe) {
+                            result.add(dto(row));
+                        }
+                    }
+                }
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void upsert(MemberRow member) {
+            Lock lock = rw.writeLock();
+            lock.lock();
+            try {
+                int row = rowOf(member.getId());
+                if (row == NONE) {
+                    row = append(member.getId());
+                } else {
+                    unlinkUsername(row);
+                    setTeam(row, NONE);
+                }
+                ages[row] = member.getAge();
+                setTeam(row, member.getTeamId() == null ? NONE : teamCode(member.getTeamId()));
+                linkUsername(row, member.getUsername());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void delete(long id) {
+            Lock lock = rw.writeLock();
+            lock.lock();
+            try {
+                int row = rowOf(id);
+                if (row == NONE) {
+                    return;
+                }
+                unlinkUsername(row);
+                setTeam(row, NONE);
+                deleted.set(row);
+                outOfOrder.remove(id);
+                liveRows--;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * 적재 후 배열 끝의 여유 공간을 잘라낸다.
+         */
+        void trim() {
+            Lock lock = rw.writeLock();
+            lock.lock();
+            try {
+                int capacity = Math.max(rows, 16);
+                ids = Arrays.copyOf(ids, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+                teamCodes = Arrays.copyOf(teamCodes, capacity);
+                usernameCodes = Arrays.copyOf(usernameCodes, capacity);
+                nextSameUsername = Arrays.copyOf(nextSameUsername, capacity);
+                usernameHead = Arrays.copyOf(usernameHead, Math.max(usernames.size(), 16));
+                usernames.trim();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void putTeam(long teamId, String name) {
+            Lock lock = rw.writeLock();
+            lock.lock();
+            try {
+                teamNames.set(teamCode(teamId), name);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean matches(int row, BitSet teams, int ageGoe, int ageLoe) {
+            if (deleted.get(row) || ages[row] < ageGoe || ages[row] > ageLoe) {
+                return false;
+            }
+            return teams == null || teamCodes[row] != NONE && teams.get(teamCodes[row]);
+        }
+
+        private MemberTeamDto dto(int row) {
+            int teamCode = teamCodes[row];
+            return new MemberTeamDto(
+                    ids[row],
+                    usernameCodes[row] == NONE ? null : usernames.get(usernameCodes[row]),
+                    ages[row],
+                    teamCode == NONE ? null : teamIds.get(teamCode),
+                    teamCode == NONE ? null : teamNames.get(teamCode));
+        }
+
+        private BitSet teamCodesNamed(String name) {
+            BitSet codes = new BitSet(teamNames.size());
+            for (int code = 0; code < teamNames.size(); code++) {
+                if (name.equals(teamNames.get(code))) {
+                    codes.set(code);
+                }
+            }
+            return codes;
+        }
+
+        private int rowOf(long id) {
+            int index = Arrays.binarySearch(ids, 0, sortedRows, id);
+            if (index >= 0) {
+                return deleted.get(index) ? NONE : index;
+            }
+            Integer row = outOfOrder.get(id);
+            return row == null ? NONE : row;
+        }
+
+        private int append(long id) {
+            if (rows == ids.length) {
+                int capacity = rows + (rows >> 1);
+                ids = Arrays.copyOf(ids, capacity);
+                ages = Arrays.copyOf(ages, capacity);
+                teamCodes = Arrays.copyOf(teamCodes, capacity);
+                usernameCodes = Arrays.copyOf(usernameCodes, capacity);
+                nextSameUsername = Arrays.copyOf(nextSameUsername, capacity);
+            }
+            int row = rows++;
+            ids[row] = id;
+            teamCodes[row] = NONE;
+            usernameCodes[row] = NONE;
+            nextSameUsername[row] = NONE;
+            if (sortedRows == row && (row == 0 || ids[row - 1] < id)) {
+                sortedRows++;
+            } else {
+                outOfOrder.put(id, row);
+            }
+            liveRows++;
+            return row;
+        }
+
+        private void setTeam(int row, int teamCode) {
+            if (teamCodes[row] != NONE) {
+                teamRows.get(teamCodes[row]).clear(row);
+            }
+            teamCodes[row] = teamCode;
+            if (teamCode != NONE) {
+                teamRows.get(teamCode).set(row);
+            }
+        }
+
+        private int teamCode(long teamId) {
+            Integer code = teamCodeById.get(teamId);
+            if (code != null) {
+                return code;
+            }
+            int newCode = teamIds.size();
+            teamCodeById.put(teamId, newCode);
+            teamIds.add(teamId);
+            teamNames.add(null);
+            teamRows.add(new BitSet());
+            return newCode;
+        }
+
+        private void linkUsername(int row, String username) {
+            if (username == null) {
+                return;
+            }
+            int code = usernames.add(username);
+            if (code == usernameHead.length) {
+                usernameHead = emptyHeads(code, code + (code >> 1));
+            }
+            usernameCodes[row] = code;
+            nextSameUsername[row] = usernameHead[code];
+            usernameHead[code] = row;
+        }
+
+        private int[] emptyHeads(int from, int capacity) {
+            int[] heads = usernameHead == null ? new int[capacity] : Arrays.copyOf(usernameHead, capacity);
+            Arrays.fill(heads, from, capacity, NONE);
+            return heads;
+        }
+
+        private void unlinkUsername(int row) {
+            int code = usernameCodes[row];
+            if (code == NONE) {
+                return;
+            }
+            if (usernameHead[code] == row) {
+                usernameHead[code] = nextSameUsername[row];
+            } else {
+                int previous = usernameHead[code];
+                while (nextSameUsername[previous] != row) {
+                    previous = nextSameUsername[previous];
+                }
+                nextSameUsername[previous] = nextSameUsername[row];
+            }
+            usernameCodes[row] = NONE;
+            nextSameUsername[row] = NONE;
+        }
+    }
+
+    /**
+     * 문자열 사전. 값은 byte[] 하나에 UTF-8 로 이어 붙이고, 코드로 찾는 open addressing 해시 테이블을 둔다.
+     */
+    static final class Dictionary {
+
+        private byte[] bytes = new byte[16 * 1024];
+        private int length;
+        private int[] offsets = new int[1025];
+        private int size;
+        private int[] table = new int[2048];
+
+        int size() {
+            return size;
+        }
+
+        long memoryBytes() {
+            return bytes.length + 4L * offsets.length + 4L * table.length;
+        }
+
+        void trim() {
+            bytes = Arrays.copyOf(bytes, Math.max(length, 16));
+            offsets = Arrays.copyOf(offsets, size + 2);
+        }
+
+        String get(int code) {
+            return new String(bytes, offsets[code], offsets[code + 1] - offsets[code], StandardCharsets.UTF_8);
+        }
+
+        int find(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            return find(encoded, hash(encoded, 0, encoded.length));
+        }
+
+        int add(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            int hash = hash(encoded, 0, encoded.length);
+            int existing = find(encoded, hash);
+            if (existing != Columns.NONE) {
+                return existing;
+            }
+            if (length + encoded.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length + (bytes.length >> 1), length + encoded.length));
+            }
+            System.arraycopy(encoded, 0, bytes, length, encoded.length);
+            length += encoded.length;
+            if (size + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length + (offsets.length >> 1));
+            }
+            int code = size++;
+            offsets[code + 1] = length;
+            if (size * 2 > table.length) {
+                rehash(table.length * 2);
+            } else {
+                insert(code, hash);
+            }
+            return code;
+        }
+
+        private int find(byte[] encoded, int hash) {
+            int mask = table.length - 1;
+            for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                int code = table[slot] - 1;
+                if (equals(code, encoded)) {
+                    return code;
+                }
+            }
+            return Columns.NONE;
+        }
+
+        private boolean equals(int code, byte[] encoded) {
+            int start = offsets[code];
+            return offsets[code + 1] - start == encoded.length
+                    && Arrays.equals(bytes, start, start + encoded.length, encoded, 0, encoded.length);
+        }
+
+        private void rehash(int capacity) {
+            table = new int[capacity];
+            for (int code = 0; code < size; code++) {
+                insert(code, hash(bytes, offsets[code], offsets[code + 1]));
+            }
+        }
+
+        private void insert(int code, int hash) {
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = code + 1;
+        }
+
+        private static int hash(byte[] data, int from, int to) {
+            int hash = 1;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + data[i];
+            }
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package study.querydsl.search;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import study.querydsl.repository.ParallelQueryExecutor;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Member 테이블을 메모리에 복제한 읽기 모델의 공통 부분
+ * - ApplicationReadyEvent 이후 백그라운드에서 전체를 적재하고, 그 뒤로는 커밋된 변경을 하나씩 반영한다.
+ * - bulk DML 이 커밋되면(invalidate) cold 상태로 돌리고 다시 적재한다.
+ * - 적재 중에 커밋된 변경은 모아 뒀다가 적재가 끝나면 새 스냅샷에 이어서 반영한다.
+ *   같은 변경을 두 번 반영하면 안 되는 읽기 모델은 accept 로 적재를 버리고 잠시 뒤 다시 적재할 수 있다.
+ * 변경은 lock 안에서 한 번에 하나씩만 반영되고, 읽기 쪽 동시성은 스냅샷 S 가 책임진다.
+ */
+@Slf4j
+public abstract class MemberReplica<S> implements MemberChangeListener {
+
+    private static final long RETRY_MILLIS = 50;
+    private static final long MAX_RETRY_MILLIS = 5000;
+
+    private final String name;
+    private final ObjectProvider<ParallelQueryExecutor> parallelQueryExecutor;
+    private final boolean enabled;
+
+    private final Object lock = new Object();
+    private volatile S snapshot;
+    private boolean started;
+    private boolean loading;
+    private boolean reloadRequested;
+    private List<Consumer<S>> replay;
+    private long loads;
+    private int rejected;
+
+    protected MemberReplica(String name, ObjectProvider<ParallelQueryExecutor> parallelQueryExecutor, boolean enabled) {
+        this.name = name;
+        this.parallelQueryExecutor = parallelQueryExecutor;
+        this.enabled = enabled;
+    }
+
+    /**
+     * DB 에서 전체를 읽어 스냅샷을 만든다. (ParallelQueryExecutor 스레드에서 호출)
+     */
+    protected abstract S load(EntityManager em);
+
+    /**
+     * 변경을 반영한 뒤 호출된다. 다른 스냅샷을 돌려주면 교체한다. (변경분 압축 등)
+     */
+    protected S afterChange(S snapshot) {
+        return snapshot;
+    }
+
+    /**
+     * 적재가 끝났을 때 lock 안에서 호출된다. false 면 읽은 내용을 버리고 잠시 뒤(50ms 부터 두 배씩, 최대 5초) 다시 적재한다.
+     * changedDuringLoad : 적재하는 동안 반영할 변경이 들어왔는지
+     */
+    protected boolean accept(boolean changedDuringLoad) {
+        return true;
+    }
+
+    protected final S snapshot() {
+        return snapshot;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isWarm() {
+        return snapshot != null;
+    }
+
+    /**
+     * 스냅샷이 적재될 때까지 기다린다. (warm-up, 테스트용) 제한 시간 안에 적재되지 않으면 false
+     */
+    public boolean awaitWarm(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            while (snapshot == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            return true;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            started = true;
+        }
+        reload();
+    }
+
+    @Override
+    public void invalidate() {
+        boolean warmedUp;
+        synchronized (lock) {
+            snapshot = null;
+            warmedUp = started;
+        }
+        // 기동 중(데이터 초기화 등)에 생긴 bulk DML 은 warmUp 에서 읽으므로 다시 적재하지 않는다.
+        if (warmedUp) {
+            reload();
+        }
+    }
+
+    /**
+     * DB 에서 다시 읽어 스냅샷을 교체한다. 읽는 동안에는 기존 스냅샷으로 계속 응답한다.
+     */
+    public void reload() {
+        synchronized (lock) {
+            if (loading) {
+                reloadRequested = true;
+                return;
+            }
+            loading = true;
+            reloadRequested = false;
+            replay = new ArrayList<>();
+            loads++;
+        }
+
+        try {
+            parallelQueryExecutor.getObject()
+                    .submit(this::load)
+                    .whenComplete(this::loaded);
+        } catch (RuntimeException e) {
+            loaded(null, e);
+        }
+    }
+
+    protected final void apply(Consumer<S> change) {
+        synchronized (lock) {
+            if (replay != null) {
+                replay.add(change);
+            }
+            S current = snapshot;
+            if (current == null) {
+                return;
+            }
+            change.accept(current);
+            snapshot = afterChange(current);
+        }
+    }
+
+    private void loaded(S loaded, Throwable error) {
+        boolean again;
+        long retryMillis = 0;
+        long load;
+        synchronized (lock) {
+            again = reloadRequested;
+            load = loads;
+            if (error != null) {
+                log.warn("failed to load {}", name, error);
+            } else if (!again && accept(!replay.isEmpty())) {
+                replay.forEach(change -> change.accept(loaded));
+                snapshot = afterChange(loaded);
+                rejected = 0;
+                lock.notifyAll();
+                log.info("{} loaded", name);
+            } else if (!again) {
+                retryMillis = Math.min(MAX_RETRY_MILLIS, RETRY_MILLIS << Math.min(rejected++, 10));
+                log.debug("{} changed while loading, retrying in {}ms", name, retryMillis);
+            }
+            replay = null;
+            loading = false;
+        }
+        // 적재 중에 bulk DML 이 커밋됐으면 방금 읽은 내용은 버리고 다시 읽는다.
+        if (again) {
+            reload();
+        } else if (retryMillis > 0) {
+            retryLater(load, retryMillis);
+        }
+    }
+
+    /**
+     * 그 사이에 다른 적재(invalidate 등)가 시작되지 않았을 때만 다시 적재한다.
+     */
+    private void retryLater(long rejectedLoad, long millis) {
+        CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS).execute(() -> {
+            synchronized (lock) {
+                if (loads != rejectedLoad) {
+                    return;
+                }
+            }
+            reload();
+        });
+    }
+}
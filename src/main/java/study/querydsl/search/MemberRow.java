@@ -0,0 +1,24 @@
+package study.querydsl.search;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * 커밋된 Member 한 행의 값 (teamId 는 팀이 없으면 null)
+ */
+@Getter
+@ToString
+public class MemberRow {
+
+    private final long id;
+    private final String username;
+    private final int age;
+    private final Long teamId;
+
+    public MemberRow(long id, String username, int age, Long teamId) {
+        this.id = id;
+        this.username = username;
+        this.age = age;
+        this.teamId = teamId;
+    }
+}
@@ -0,0 +1,223 @@
+package study.querydsl.search;
+
+import com.querydsl.core.Tuple;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberUsernameDto;
+import study.querydsl.repository.ParallelQueryExecutor;
+import study.querydsl.repository.ReadOnlyQueryFactory;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * Member.username 접두어 검색용 메모리 인덱스
+ * - (username, id) 순으로 정렬된 배열(String[] / long[])을 이진 탐색해서 접두어가 같은 구간을 앞에서부터 읽는다.
+ * - 커밋된 insert / update / delete 는 작은 정렬 집합(added)과 삭제 id 집합(removed)에 반영하고,
+ *   쌓인 변경이 많아지면 배열을 다시 만든다.
+ * cold 상태에서는 search 가 Optional.empty() 를 돌려주고, 호출하는 쪽에서 like 'x%' 쿼리로 대신한다.
+ */
+@Component
+public class UsernameIndex extends MemberReplica<UsernameIndex.Snapshot> {
+
+    private final int compactThreshold;
+
+    public UsernameIndex(ObjectProvider<ParallelQueryExecutor> parallelQueryExecutor,
+                         @Value("${username-index.enabled:true}") boolean enabled,
+                         @Value("${username-index.compact-threshold:4096}") int compactThreshold) {
+        super("username index", parallelQueryExecutor, enabled);
+        this.compactThreshold = compactThreshold;
+    }
+
+    /**
+     * prefix 로 시작하는 회원을 (username, id) 순으로 최대 limit 개 돌려준다.
+     */
+    public Optional<List<MemberUsernameDto>> search(String prefix, int limit) {
+        Snapshot current = snapshot();
+        if (current == null) {
+            return Optional.empty();
+        }
+        return Optional.of(current.search(prefix, limit));
+    }
+
+    @Override
+    public void memberInserted(MemberRow row) {
+        put(row);
+    }
+
+    @Override
+    public void memberUpdated(MemberRow before, MemberRow after) {
+        put(after);
+    }
+
+    @Override
+    public void memberDeleted(MemberRow row) {
+        Entry change = new Entry(null, row.getId());
+        apply(snapshot -> snapshot.apply(change));
+    }
+
+    private void put(MemberRow row) {
+        Entry change = new Entry(row.getUsername(), row.getId());
+        apply(snapshot -> snapshot.apply(change));
+    }
+
+    @Override
+    protected Snapshot load(EntityManager em) {
+        List<Tuple> rows = new ReadOnlyQueryFactory(em)
+                .select(member.id, member.username)
+                .from(member)
+                .where(member.username.isNotNull())
+                .fetch();
+        Entry[] entries = new Entry[rows.size()];
+        for (int i = 0; i < entries.length; i++) {
+            Tuple row = rows.get(i);
+            entries[i] = new Entry(row.get(member.username), row.get(member.id));
+        }
+        Arrays.sort(entries);
+        return new Snapshot(entries);
+    }
+
+    @Override
+    protected Snapshot afterChange(Snapshot snapshot) {
+        if (snapshot.changes() > Math.max(compactThreshold, snapshot.ids.length / 8)) {
+            return snapshot.compact();
+        }
+        return snapshot;
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final String username;
+        private final long id;
+
+        Entry(String username, long id) {
+            this.username = username;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = username.compareTo(other.username);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+    }
+
+    /**
+     * 정렬된 배열 + 이후 변경분
+     * 배열은 만든 뒤 바꾸지 않고, 변경분은 동시 읽기가 가능한 집합에 쌓는다.
+     */
+    static final class Snapshot {
+        private final String[] usernames;
+        private final long[] ids;
+        private final Set<Long> removed = ConcurrentHashMap.newKeySet();
+        private final NavigableSet<Entry> added = new ConcurrentSkipListSet<>();
+        private final Map<Long, Entry> addedById = new ConcurrentHashMap<>();
+
+        Snapshot(Entry[] sorted) {
+            usernames = new String[sorted.length];
+            ids = new long[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                usernames[i] = sorted[i].username;
+                ids[i] = sorted[i].id;
+            }
+        }
+
+        int changes() {
+            return removed.size() + added.size();
+        }
+
+        /**
+         * username 이 null 이면 삭제. 배열에 있는 값은 removed 로 가리고 새 값은 added 에 넣는다.
+         */
+        void apply(Entry change) {
+            removed.add(change.id);
+            Entry previous = addedById.remove(change.id);
+            if (previous != null) {
+                added.remove(previous);
+            }
+            if (change.username != null) {
+                added.add(change);
+                addedById.put(change.id, change);
+            }
+        }
+
+        List<MemberUsernameDto> search(String prefix, int limit) {
+            List<MemberUsernameDto> result = new ArrayList<>(Math.min(limit, 16));
+            int i = lowerBound(prefix);
+            Iterator<Entry> delta = added.tailSet(new Entry(prefix, Long.MIN_VALUE)).iterator();
+            Entry next = nextMatch(delta, prefix);
+
+            while (result.size() < limit) {
+                boolean inBase = i < usernames.length && usernames[i].startsWith(prefix);
+                if (inBase && removed.contains(ids[i])) {
+                    i++;
+                    continue;
+                }
+                if (!inBase && next == null) {
+                    break;
+                }
+                if (next == null || inBase && compare(usernames[i], ids[i], next) < 0) {
+                    result.add(new MemberUsernameDto(ids[i], usernames[i]));
+                    i++;
+                } else {
+                    result.add(new MemberUsernameDto(next.id, next.username));
+                    next = nextMatch(delta, prefix);
+                }
+            }
+            return result;
+        }
+
+        Snapshot compact() {
+            List<Entry> merged = new ArrayList<>(ids.length + added.size());
+            for (int i = 0; i < ids.length; i++) {
+                if (!removed.contains(ids[i])) {
+                    merged.add(new Entry(usernames[i], ids[i]));
+                }
+            }
+            merged.addAll(added);
+            Entry[] sorted = merged.toArray(new Entry[0]);
+            Arrays.sort(sorted);
+            return new Snapshot(sorted);
+        }
+
+        private int lowerBound(String prefix) {
+            int low = 0;
+            int high = usernames.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (usernames[mid].compareTo(prefix) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private static Entry nextMatch(Iterator<Entry> delta, String prefix) {
+            if (delta.hasNext()) {
+                Entry entry = delta.next();
+                if (entry.username.startsWith(prefix)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        private static int compare(String username, long id, Entry entry) {
+            int result = username.compareTo(entry.username);
+            return result != 0 ? result : Long.compare(id, entry.id);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package study.querydsl.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.stereotype.Component;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.timeout.QueryDeadline;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Member 를 나눠 담는 샤드 DB 들 (member-shards.count 가 0 이면 사용하지 않는다)
+ * - 샤드마다 url-template 의 {0} 에 번호를 넣은 DB 와 Member / Team 만 매핑한 EntityManagerFactory 를 만든다.
+ * - 샤드 i 의 hibernate_sequence 는 i (mod count) 인 값만 내주므로 id 가 샤드 사이에서 겹치지 않고,
+ *   id 만으로 어느 샤드에 있는지 알 수 있다. (shardOf)
+ * - 조회는 샤드별 EntityManager 로 member-shard 스레드에서 실행하고, 호출한 스레드의 QueryDeadline 을 따른다.
+ * 샤드 DB 는 기본 DB 의 트랜잭션 / 변경 기록(change feed, 메모리 읽기 모델)과 무관하다.
+ */
+@Slf4j
+@Component
+public class MemberShards {
+
+    private final List<HikariDataSource> dataSources = new ArrayList<>();
+    private final List<EntityManagerFactory> factories = new ArrayList<>();
+    private final ExecutorService executor;
+
+    public MemberShards(@Value("${member-shards.count:0}") int count,
+                        @Value("${member-shards.url-template:jdbc:h2:mem:member-shard-{0};DB_CLOSE_DELAY=-1}") String urlTemplate,
+                        @Value("${member-shards.pool-size:10}") int poolSize,
+                        @Value("${member-shards.threads:0}") int threads,
+                        @Value("${member-shards.ddl-auto:create}") String ddlAuto) {
+        try {
+            for (int i = 0; i < count; i++) {
+                HikariDataSource dataSource = DataSourceBuilder.create()
+                        .type(HikariDataSource.class)
+                        .url(MessageFormat.format(urlTemplate, i))
+                        .username("sa")
+                        .password("")
+                        .build();
+                dataSource.setPoolName("member-shard-" + i);
+                dataSource.setMaximumPoolSize(poolSize);
+                dataSources.add(dataSource);
+                factories.add(entityManagerFactory(i, dataSource, ddlAuto));
+                alignSequence(i, count);
+            }
+        } catch (RuntimeException e) {
+            shutdown();
+            throw e;
+        }
+        this.executor = count == 0 ? null : Executors.newFixedThreadPool(threads > 0 ? threads : count * 4, runnable -> {
+            Thread thread = new Thread(runnable, "member-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (count > 0) {
+            log.info("{} member shards: {}", count, MessageFormat.format(urlTemplate, "N"));
+        }
+    }
+
+    public boolean isEnabled() {
+        return !factories.isEmpty();
+    }
+
+    public int size() {
+        return factories.size();
+    }
+
+    /**
+     * member_id / team_id 가 있는 샤드
+     */
+    public int shardOf(long id) {
+        return (int) Math.floorMod(id, (long) size());
+    }
+
+    /**
+     * 샤드 하나에서 조회한다.
+     */
+    public <T> CompletableFuture<T> submit(int shard, Function<EntityManager, T> task) {
+        EntityManagerFactory factory = factory(shard);
+        QueryDeadline deadline = QueryDeadline.current();
+        return CompletableFuture.supplyAsync(() -> {
+            EntityManager em = factory.createEntityManager();
+            try {
+                return deadline == null ? task.apply(em) : deadline.run(() -> task.apply(em));
+            } finally {
+                em.close();
+            }
+        }, executor);
+    }
+
+    /**
+     * 샤드 하나에서 조회하고 결과를 기다린다.
+     */
+    public <T> T query(int shard, Function<EntityManager, T> task) {
+        return scatter(Collections.singletonList(shard), task).get(0);
+    }
+
+    /**
+     * shards 에서 병렬로 조회하고 shards 순서대로 결과를 돌려준다. 하나라도 실패하면 나머지는 취소한다.
+     */
+    public <T> List<T> scatter(Collection<Integer> shards, Function<EntityManager, T> task) {
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (int shard : shards) {
+            futures.add(submit(shard, task));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * 샤드 하나에서 트랜잭션으로 실행한다. (호출한 스레드에서)
+     */
+    public <T> T write(int shard, Function<EntityManager, T> task) {
+        EntityManager em = factory(shard).createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            T result = task.apply(em);
+            tx.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            em.close();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        factories.forEach(EntityManagerFactory::close);
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    private EntityManagerFactory factory(int shard) {
+        if (factories.isEmpty()) {
+            throw new IllegalStateException("member shards are disabled (member-shards.count=0)");
+        }
+        return factories.get(shard);
+    }
+
+    private static EntityManagerFactory entityManagerFactory(int shard, HikariDataSource dataSource, String ddlAuto) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hibernate.hbm2ddl.auto", ddlAuto);
+        properties.put("hibernate.physical_naming_strategy", CamelCaseToUnderscoresNamingStrategy.class.getName());
+        properties.put("hibernate.implicit_naming_strategy", SpringImplicitNamingStrategy.class.getName());
+        properties.put("hibernate.query.in_clause_parameter_padding", true);
+        properties.put("hibernate.default_batch_fetch_size", 100);
+
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setPersistenceUnitName("member-shard-" + shard);
+        factory.setDataSource(dataSource);
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factory.setPackagesToScan(Member.class.getPackage().getName());
+        factory.setPersistenceUnitPostProcessors(unit -> unit.getManagedClassNames()
+                .retainAll(Arrays.asList(Member.class.getName(), Team.class.getName())));
+        factory.setJpaPropertyMap(properties);
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    /**
+     * hibernate_sequence 가 지금 값보다 큰, shard (mod count) 인 값부터 count 씩 증가하게 한다.
+     */
+    private void alignSequence(int shard, int count) {
+        write(shard, em -> {
+            long current = ((Number) em.createNativeQuery(
+                            "select current_value from information_schema.sequences where sequence_name = 'HIBERNATE_SEQUENCE'")
+                    .getSingleResult()).longValue();
+            long start = (current / count + 1) * count + shard;
+            return em.createNativeQuery("alter sequence hibernate_sequence restart with " + start + " increment by " + count)
+                    .executeUpdate();
+        });
+    }
+}
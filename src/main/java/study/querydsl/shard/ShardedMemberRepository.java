@@ -0,0 +1,378 @@
+package study.querydsl.shard;
+
+import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import com.querydsl.jpa.impl.JPAQuery;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.ReplicationMode;
+import org.hibernate.Session;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Repository;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.QueryGuard;
+import study.querydsl.repository.QueryGuardException;
+import study.querydsl.repository.ReadOnlyQueryFactory;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+import static study.querydsl.repository.MemberJpaRepository.nullSafeCompareValueBuilder;
+import static study.querydsl.repository.MemberJpaRepository.nullSafeEqualBuilder;
+
+/**
+ * team_id 로 샤딩한 Member 저장소 (MemberShards)
+ * - Team 은 모든 샤드에 같은 id 로 복제하고, Member 는 팀의 샤드(team_id mod 샤드 수)에 저장한다.
+ *   팀이 없는 Member / Team 의 id 는 돌아가며 샤드를 골라 받는다.
+ * - 검색에 팀 이름이 있으면 그 이름의 팀이 있는 샤드에서만, 없으면 모든 샤드에서 병렬로 조회해서 합친다.
+ * - search 는 샤드마다 최대 query-guard.max-rows 건을 읽고, 합친 결과에도 같은 max-rows / on-exceed 를 적용한다.
+ * - searchPageSimple / searchPageComplex 는 샤드마다 offset + size 건을 같은 정렬로 읽어 병합하고,
+ *   searchPageComplex 의 total 은 샤드별 count 의 합이다.
+ *   그래서 여러 샤드에 걸친 페이지는 offset + size 가 query-guard.max-rows 를 넘을 수 없다.
+ * 샤드에는 saveTeam / save 로 저장한 행만 있다. 기본 DB 에 쓰는 경로(엔티티 저장, MemberWriteBuffer, import)는
+ * 샤드에 쓰지 않고, 기본 DB 의 id 는 샤드 배치(id mod 샤드 수)를 따르지 않아 그대로 옮겨 담을 수도 없다.
+ * 그래서 member-shards.count 를 켜도 MemberController 의 검색 / 조회는 기본 DB 를 읽는다.
+ * Team 복제는 샤드마다 따로 커밋되며, Member 는 저장한 뒤 다른 팀(샤드)으로 옮기지 않는다.
+ */
+@Repository
+public class ShardedMemberRepository {
+
+    private final MemberShards shards;
+    private final QueryGuard queryGuard;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final Timer singleSearch;
+    private final Timer scatterSearch;
+
+    public ShardedMemberRepository(MemberShards shards, QueryGuard queryGuard, MeterRegistry registry) {
+        this.shards = shards;
+        this.queryGuard = queryGuard;
+        this.singleSearch = searchTimer(registry, "single");
+        this.scatterSearch = searchTimer(registry, "scatter");
+    }
+
+    /**
+     * 한 샤드에서 id 를 받아 저장하고 나머지 샤드에 같은 id 로 복제한다.
+     */
+    public Team saveTeam(Team newTeam) {
+        int owner = roundRobin();
+        shards.write(owner, em -> {
+            em.persist(newTeam);
+            return newTeam.getId();
+        });
+        for (int shard = 0; shard < shards.size(); shard++) {
+            if (shard != owner) {
+                shards.write(shard, em -> {
+                    em.unwrap(Session.class).replicate(newTeam, ReplicationMode.OVERWRITE);
+                    return null;
+                });
+            }
+        }
+        return newTeam;
+    }
+
+    /**
+     * 팀의 샤드에 저장하고 member id 를 돌려준다. 팀은 saveTeam 으로 저장된 것이어야 한다.
+     */
+    public Long save(Member newMember) {
+        int shard = newMember.getTeam() == null ? roundRobin() : shards.shardOf(newMember.getTeam().getId());
+        return shards.write(shard, em -> {
+            em.persist(newMember);
+            return newMember.getId();
+        });
+    }
+
+    public Optional<MemberTeamDto> findMemberTeamDtoById(Long id) {
+        return Optional.ofNullable(shards.query(shards.shardOf(id), em -> new ReadOnlyQueryFactory(em, queryGuard)
+                .select(memberTeamDto())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(member.id.eq(id))
+                .fetchOne()));
+    }
+
+    /**
+     * member_id 순. 샤드 결과를 합쳐도 query-guard.max-rows 를 넘지 않는다.
+     */
+    public List<MemberTeamDto> search(MemberSearchCondition condition) {
+        List<Integer> targets = route(condition);
+        if (targets.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return timer(targets).record(() -> {
+            List<List<MemberTeamDto>> results = shards.scatter(targets, em -> searchQuery(em, condition)
+                    .orderBy(member.id.asc())
+                    .fetch());
+            // max-rows + 1 건까지만 합쳐서 넘었는지만 본다.
+            List<MemberTeamDto> merged = merge(results, Comparator.comparing(MemberTeamDto::getMemberId), 0, queryGuard.getMaxRows() + 1);
+            return queryGuard.checkMergedRows(merged, targets.size() + " member shards");
+        });
+    }
+
+    /**
+     * searchPageComplex 와 같지만 count 를 하지 않고, total 은 (MemberRepository 와 같이) 이번 페이지의 건수다.
+     */
+    public Page<MemberTeamDto> searchPageSimple(MemberSearchCondition condition, Pageable pageable) {
+        return searchPage(condition, pageable, false);
+    }
+
+    /**
+     * 정렬은 memberId(id), username, age, teamId, teamName. 같은 값은 member_id 순이다.
+     */
+    public Page<MemberTeamDto> searchPageComplex(MemberSearchCondition condition, Pageable pageable) {
+        return searchPage(condition, pageable, true);
+    }
+
+    private Page<MemberTeamDto> searchPage(MemberSearchCondition condition, Pageable pageable, boolean countTotal) {
+        if (pageable.isUnpaged()) {
+            List<MemberTeamDto> content = search(condition);
+            return new PageImpl<>(content, pageable, content.size());
+        }
+        List<Integer> targets = route(condition);
+        if (targets.isEmpty()) {
+            return new PageImpl<>(Collections.emptyList(), pageable, 0);
+        }
+        List<SortKey> sort = sortKeys(pageable.getSort());
+        OrderSpecifier<?>[] orderBy = sort.stream().map(SortKey::orderSpecifier).toArray(OrderSpecifier[]::new);
+
+        if (targets.size() == 1) {
+            return singleSearch.record(() -> shards.query(targets.get(0), em -> {
+                List<MemberTeamDto> content = searchQuery(em, condition)
+                        .orderBy(orderBy)
+                        .offset(pageable.getOffset())
+                        .limit(pageable.getPageSize())
+                        .fetch();
+                return new PageImpl<>(content, pageable, countTotal ? count(em, condition) : content.size());
+            }));
+        }
+
+        long window = pageable.getOffset() + pageable.getPageSize();
+        if (window > queryGuard.getMaxRows()) {
+            throw new QueryGuardException("page window " + window + " exceeds " + queryGuard.getMaxRows() + " rows per shard");
+        }
+        return scatterSearch.record(() -> {
+            List<ShardPage> pages = shards.scatter(targets, em -> new ShardPage(
+                    searchQuery(em, condition).orderBy(orderBy).limit(window).fetch(),
+                    countTotal ? count(em, condition) : 0));
+            List<MemberTeamDto> content = merge(
+                    pages.stream().map(page -> page.content).collect(Collectors.toList()),
+                    comparator(sort),
+                    pageable.getOffset(),
+                    pageable.getPageSize());
+            return new PageImpl<>(content, pageable, countTotal ? pages.stream().mapToLong(page -> page.total).sum() : content.size());
+        });
+    }
+
+    /**
+     * 조건에 맞는 회원이 있을 수 있는 샤드 (팀 이름이 있으면 그 이름의 팀이 있는 샤드만)
+     */
+    List<Integer> route(MemberSearchCondition condition) {
+        if (!hasText(condition.getTeamName())) {
+            return IntStream.range(0, shards.size()).boxed().collect(Collectors.toList());
+        }
+        // Team 은 모든 샤드에 있으므로 아무 샤드에서나 찾는다.
+        List<Long> teamIds = shards.query(roundRobin(), em -> new ReadOnlyQueryFactory(em)
+                .select(team.id)
+                .from(team)
+                .where(team.name.eq(condition.getTeamName()))
+                .fetch());
+        TreeSet<Integer> targets = new TreeSet<>();
+        teamIds.forEach(teamId -> targets.add(shards.shardOf(teamId)));
+        return new ArrayList<>(targets);
+    }
+
+    private JPAQuery<MemberTeamDto> searchQuery(EntityManager em, MemberSearchCondition condition) {
+        return new ReadOnlyQueryFactory(em, queryGuard)
+                .select(memberTeamDto())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(
+                        nullSafeEqualBuilder(() -> member.username.eq(condition.getUsername())),
+                        nullSafeEqualBuilder(() -> team.name.eq(condition.getTeamName())),
+                        nullSafeCompareValueBuilder(() -> member.age.goe(condition.getAgeGoe())),
+                        nullSafeCompareValueBuilder(() -> member.age.loe(condition.getAgeLoe())));
+    }
+
+    private long count(EntityManager em, MemberSearchCondition condition) {
+        JPAQueryFactory queryFactory = new ReadOnlyQueryFactory(em, queryGuard);
+        Long count = queryFactory
+                .select(member.count())
+                .from(member)
+                .leftJoin(member.team, team)
+                .where(
+                        nullSafeEqualBuilder(() -> member.username.eq(condition.getUsername())),
+                        nullSafeEqualBuilder(() -> team.name.eq(condition.getTeamName())),
+                        nullSafeCompareValueBuilder(() -> member.age.goe(condition.getAgeGoe())),
+                        nullSafeCompareValueBuilder(() -> member.age.loe(condition.getAgeLoe())))
+                .fetchOne();
+        return count == null ? 0 : count;
+    }
+
+    private static QMemberTeamDto memberTeamDto() {
+        return new QMemberTeamDto(
+                member.id.as("memberId"),
+                member.username,
+                member.age,
+                team.id.as("teamId"),
+                team.name.as("teamName"));
+    }
+
+    /**
+     * 샤드별로 정렬된 결과를 comparator 순으로 합쳐 offset 다음부터 limit 건
+     */
+    static <T> List<T> merge(List<List<T>> sorted, Comparator<T> comparator, long offset, int limit) {
+        PriorityQueue<Cursor<T>> heads = new PriorityQueue<>((a, b) -> comparator.compare(a.head(), b.head()));
+        for (List<T> list : sorted) {
+            if (!list.isEmpty()) {
+                heads.add(new Cursor<>(list));
+            }
+        }
+        List<T> merged = new ArrayList<>();
+        long skipped = 0;
+        while (!heads.isEmpty() && merged.size() < limit) {
+            Cursor<T> cursor = heads.poll();
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                merged.add(cursor.head());
+            }
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private static List<SortKey> sortKeys(Sort sort) {
+        List<SortKey> keys = new ArrayList<>();
+        boolean byId = false;
+        for (Sort.Order order : sort) {
+            SortKey key = SortKey.of(order.getProperty(), order.isAscending());
+            byId |= key.expression == member.id;
+            keys.add(key);
+        }
+        if (!byId) {
+            keys.add(SortKey.of("memberId", true));
+        }
+        return keys;
+    }
+
+    private static Comparator<MemberTeamDto> comparator(List<SortKey> keys) {
+        Comparator<MemberTeamDto> comparator = (a, b) -> 0;
+        for (SortKey key : keys) {
+            comparator = comparator.thenComparing(key.comparator());
+        }
+        return comparator;
+    }
+
+    private int roundRobin() {
+        return Math.floorMod(nextShard.getAndIncrement(), shards.size());
+    }
+
+    private Timer timer(List<Integer> targets) {
+        return targets.size() == 1 ? singleSearch : scatterSearch;
+    }
+
+    private static Timer searchTimer(MeterRegistry registry, String route) {
+        return Timer.builder("member.shards.search")
+                .tag("route", route)
+                .description("sharded member searches by number of shards read (single / scatter)")
+                .register(registry);
+    }
+
+    private static final class ShardPage {
+
+        private final List<MemberTeamDto> content;
+        private final long total;
+
+        ShardPage(List<MemberTeamDto> content, long total) {
+            this.content = content;
+            this.total = total;
+        }
+    }
+
+    private static final class Cursor<T> {
+
+        private final List<T> list;
+        private int index;
+
+        Cursor(List<T> list) {
+            this.list = list;
+        }
+
+        T head() {
+            return list.get(index);
+        }
+
+        boolean advance() {
+            return ++index < list.size();
+        }
+    }
+
+    /**
+     * 정렬 기준 하나. DB 정렬과 병합 비교가 같도록 null 은 오름차순에서 앞, 내림차순에서 뒤에 둔다.
+     */
+    private static final class SortKey {
+
+        private final ComparableExpressionBase<?> expression;
+        private final Function<MemberTeamDto, Comparable<?>> getter;
+        private final boolean ascending;
+
+        private SortKey(ComparableExpressionBase<?> expression, Function<MemberTeamDto, Comparable<?>> getter, boolean ascending) {
+            this.expression = expression;
+            this.getter = getter;
+            this.ascending = ascending;
+        }
+
+        static SortKey of(String property, boolean ascending) {
+            switch (property) {
+                case "id":
+                case "memberId":
+                    return new SortKey(member.id, MemberTeamDto::getMemberId, ascending);
+                case "username":
+                    return new SortKey(member.username, MemberTeamDto::getUsername, ascending);
+                case "age":
+                    return new SortKey(member.age, MemberTeamDto::getAge, ascending);
+                case "teamId":
+                case "team.id":
+                    return new SortKey(team.id, MemberTeamDto::getTeamId, ascending);
+                case "teamName":
+                case "team.name":
+                    return new SortKey(team.name, MemberTeamDto::getTeamName, ascending);
+                default:
+                    throw new IllegalArgumentException("unsupported sort property for sharded search: " + property);
+            }
+        }
+
+        OrderSpecifier<?> orderSpecifier() {
+            return ascending ? expression.asc().nullsFirst() : expression.desc().nullsLast();
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Comparator<MemberTeamDto> comparator() {
+            Comparator<Comparable> natural = Comparator.nullsFirst(Comparator.naturalOrder());
+            Comparator<MemberTeamDto> comparator = (a, b) -> natural.compare((Comparable) getter.apply(a), (Comparable) getter.apply(b));
+            return ascending ? comparator : comparator.reversed();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package study.querydsl.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JVM 시작 시점 기준으로 기동 완료(ApplicationReadyEvent)와 첫 요청 응답까지 걸린 시간을 남긴다.
+ * warm-up(WarmUp)이 끝난 뒤 처음 startup.first-requests 개 요청의 지연은 startup.first.requests 타이머에 모으고, 다 모이면 로그로 남긴다.
+ * startup.exit-after-ready=true 이면 기동 직후 종료한다. (AppCDS class list 생성용)
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StartupTimer extends OncePerRequestFilter {
+
+    private final ApplicationContext context;
+    private final ObjectProvider<WarmUp> warmUp;  // 필터는 먼저 만들어지므로 리포지토리까지 끌어오지 않게 나중에 찾는다.
+    private final MeterRegistry registry;
+    private final AtomicBoolean firstRequest = new AtomicBoolean(true);
+    private final AtomicInteger measured = new AtomicInteger();
+    private Timer firstRequests;
+
+    @Value("${startup.exit-after-ready:false}")
+    private boolean exitAfterReady;
+
+    @Value("${startup.first-requests:100}")
+    private int firstRequestCount;
+
+    @PostConstruct
+    public void init() {
+        firstRequests = Timer.builder("startup.first.requests")
+                .description("latency of the first requests after warm-up")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ready() {
+        log.info("ready {}ms after JVM start", sinceJvmStart());
+        if (exitAfterReady) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        filterChain.doFilter(request, response);
+        if (measured.get() < firstRequestCount && warmUp.getObject().isDone()) {
+            if (request.isAsyncStarted()) {
+                // WebAsyncTask 검색은 비동기 처리가 끝날 때 잰다.
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        measure(start);
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                measure(start);
+            }
+        }
+        if (firstRequest.get() && firstRequest.compareAndSet(true, false)) {
+            log.info("first request {} served {}ms after JVM start", request.getRequestURI(), sinceJvmStart());
+        }
+    }
+
+    private void measure(long start) {
+        int n = measured.incrementAndGet();
+        if (n > firstRequestCount) {
+            return;
+        }
+        firstRequests.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        if (n == firstRequestCount) {
+            HistogramSnapshot snapshot = firstRequests.takeSnapshot();
+            StringBuilder percentiles = new StringBuilder();
+            for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                percentiles.append(String.format(" p%.0f %.1fms", percentile.percentile() * 100,
+                        percentile.value(TimeUnit.MILLISECONDS)));
+            }
+            log.info("first {} requests after warm-up ({}ms): mean {}ms,{} max {}ms", n, warmUp.getObject().getMillis(),
+                    String.format("%.1f", snapshot.mean(TimeUnit.MILLISECONDS)), percentiles,
+                    String.format("%.1f", snapshot.max(TimeUnit.MILLISECONDS)));
+        }
+    }
+
+    private static long sinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+}
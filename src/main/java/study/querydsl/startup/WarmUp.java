@@ -0,0 +1,226 @@
+package study.querydsl.startup;
+
+import com.querydsl.core.BooleanBuilder;
+import com.querydsl.core.types.Predicate;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.MemberRepository;
+import study.querydsl.search.MemberReplica;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static org.springframework.util.StringUtils.hasText;
+import static study.querydsl.entity.QMember.member;
+
+/**
+ * 기동 직후 대표 검색을 실제 datasource 로 반복 호출해서 JIT, HQL query plan cache, 커넥션 풀, 읽기 모델을 데운다.
+ * - 모든 ApplicationReadyEvent 리스너(지연된 데이터 초기화, 읽기 모델 적재 시작)가 끝난 뒤(ACCEPTING_TRAFFIC) 백그라운드에서 시작한다.
+ * - 읽기 모델(MemberReplica)이 적재될 때까지 기다린 다음 warm-up.searches / prefixes 를 warm-up.iterations 번 호출한다.
+ * - 끝날 때까지 health indicator(warmUp)가 OUT_OF_SERVICE 이므로 readiness group 에 넣으면 readiness probe 가 실패한다.
+ * 실패한 호출은 세기만 하고 계속한다. 걸린 시간은 startup.warmup 타이머로 남긴다.
+ */
+@Slf4j
+@Component
+public class WarmUp implements HealthIndicator {
+
+    private final WarmUpProperties properties;
+    private final MemberRepository memberRepository;
+    private final MemberJpaRepository memberJpaRepository;
+    private final ObjectProvider<MemberReplica<?>> replicas;
+    private final Timer duration;
+    private final ExecutorService executor;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long millis = -1;
+
+    public WarmUp(WarmUpProperties properties,
+                  MemberRepository memberRepository,
+                  MemberJpaRepository memberJpaRepository,
+                  ObjectProvider<MemberReplica<?>> replicas,
+                  MeterRegistry registry) {
+        this.properties = properties;
+        this.memberRepository = memberRepository;
+        this.memberJpaRepository = memberJpaRepository;
+        this.replicas = replicas;
+        this.duration = Timer.builder("startup.warmup")
+                .description("time from readiness event until warm-up finished")
+                .register(registry);
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, properties.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "warm-up-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @EventListener
+    public void start(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() != ReadinessState.ACCEPTING_TRAFFIC || !started.compareAndSet(false, true)) {
+            return;
+        }
+        if (!properties.isEnabled()) {
+            millis = 0;
+            done.countDown();
+            return;
+        }
+        Thread thread = new Thread(this::run, "warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * warm-up 에 걸린 시간, 끝나지 않았으면 -1
+     */
+    public long getMillis() {
+        return millis;
+    }
+
+    @Override
+    public Health health() {
+        if (!isDone()) {
+            return Health.outOfService()
+                    .withDetail("calls", getCalls())
+                    .withDetail("failures", getFailures())
+                    .build();
+        }
+        return Health.up()
+                .withDetail("calls", getCalls())
+                .withDetail("failures", getFailures())
+                .withDetail("millis", millis)
+                .build();
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        long deadline = start + properties.getTimeout().toNanos();
+        try {
+            awaitReplicas(deadline);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, properties.getThreads()); i++) {
+                workers.add(executor.submit(() -> {
+                    for (int n = 0; n < properties.getIterations() && System.nanoTime() < deadline; n++) {
+                        replay();
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("warm-up stopped", e.getCause());
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            duration.record(elapsed, TimeUnit.NANOSECONDS);
+            millis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            done.countDown();
+            log.info("warm-up finished in {}ms, {} calls, {} failed{}", millis, getCalls(), getFailures(),
+                    System.nanoTime() > deadline ? " (timed out)" : "");
+        }
+    }
+
+    private void awaitReplicas(long deadline) throws InterruptedException {
+        for (MemberReplica<?> replica : replicas) {
+            if (replica.isEnabled()) {
+                replica.awaitWarm(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void replay() {
+        for (WarmUpProperties.Search search : properties.getSearches()) {
+            MemberSearchCondition condition = search.getCondition();
+            Pageable pageable = PageRequest.of(search.getPage(), search.getSize());
+            call(() -> memberJpaRepository.search(condition));
+            call(() -> memberRepository.search(condition));
+            call(() -> memberRepository.searchPageSimple(condition, pageable));
+            call(() -> memberRepository.searchPageComplex(condition, pageable));
+            call(() -> memberRepository.findAll(predicate(condition), pageable));
+        }
+        for (String prefix : properties.getPrefixes()) {
+            call(() -> memberJpaRepository.searchUsernamePrefix(prefix, 10));
+        }
+        call(memberJpaRepository::teamStats);
+    }
+
+    private void call(Supplier<?> query) {
+        try {
+            query.get();
+        } catch (RuntimeException e) {
+            if (failures.sum() == 0) {
+                log.warn("warm-up call failed", e);
+            }
+            failures.increment();
+        }
+        calls.increment();
+    }
+
+    /**
+     * QuerydslPredicateExecutor 용 조건, 비어 있는 조건은 빼고 and 로 묶는다.
+     */
+    private static Predicate predicate(MemberSearchCondition condition) {
+        BooleanBuilder builder = new BooleanBuilder();
+        if (hasText(condition.getUsername())) {
+            builder.and(member.username.eq(condition.getUsername()));
+        }
+        if (hasText(condition.getTeamName())) {
+            builder.and(member.team.name.eq(condition.getTeamName()));
+        }
+        if (condition.getAgeGoe() != null) {
+            builder.and(member.age.goe(condition.getAgeGoe()));
+        }
+        if (condition.getAgeLoe() != null) {
+            builder.and(member.age.loe(condition.getAgeLoe()));
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,51 @@
+package study.querydsl.startup;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.MemberSearchCondition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 기동 직후 readiness 전에 돌리는 warm-up (WarmUp)
+ * warm-up:
+ *   enabled: true
+ *   iterations: 50          # 스레드마다 아래 호출 전체를 반복하는 횟수
+ *   threads: 2
+ *   timeout: 60s            # 읽기 모델 적재 대기를 포함한 전체 제한 시간, 넘으면 남은 반복을 건너뛴다.
+ *   searches:
+ *     - condition: {teamName: teamA, ageGoe: 10}
+ *       page: 0
+ *       size: 20
+ *   prefixes: [member1]     # 아이디 자동완성
+ * 기본값은 application.yml
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("warm-up")
+public class WarmUpProperties {
+
+    private boolean enabled = true;
+    private int iterations = 50;
+    private int threads = 2;
+    private Duration timeout = Duration.ofSeconds(60);
+    private List<Search> searches = new ArrayList<>();
+    private List<String> prefixes = new ArrayList<>();
+
+    /**
+     * 목록 검색, 두 가지 페이지 검색, QuerydslPredicateExecutor 조회를 같은 조건으로 한 번씩 호출한다.
+     */
+    @Getter
+    @Setter
+    public static class Search {
+
+        private MemberSearchCondition condition = new MemberSearchCondition();
+        private int page = 0;
+        private int size = 20;
+    }
+}
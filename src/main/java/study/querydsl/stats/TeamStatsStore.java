@@ -0,0 +1,214 @@
+package study.querydsl.stats;
+
+import com.querydsl.core.Tuple;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.ParallelQueryExecutor;
+import study.querydsl.repository.ReadOnlyQueryFactory;
+import study.querydsl.search.MemberChangeSync;
+import study.querydsl.search.MemberReplica;
+import study.querydsl.search.MemberRow;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 팀별 member.age 집계(count / sum / max / min)를 메모리에 두고 커밋된 변경마다 갱신한다.
+ * max / min 은 삭제나 나이 변경으로 빠질 수 있으므로 팀마다 나이별 인원 수(TreeMap)를 유지한다.
+ * 조회는 팀 수에 비례(O(teams))하고, cold 상태에서는 MemberJpaRepository.teamStats() 로 전체를 집계한다.
+ * count / sum 은 증감으로 갱신하므로 적재한 결과에 이미 들어간 변경을 또 더하지 않도록 accept 에서 적재를 가려 받는다.
+ * 쓰기가 끊이지 않으면 적재를 계속 버리므로 그 동안은 cold 로 남아 집계 쿼리로 응답한다.
+ */
+@Slf4j
+@Component
+public class TeamStatsStore extends MemberReplica<TeamStatsStore.Aggregates> {
+
+    private final MemberJpaRepository memberJpaRepository;
+    private final MemberChangeSync memberChangeSync;
+
+    public TeamStatsStore(ObjectProvider<ParallelQueryExecutor> parallelQueryExecutor,
+                          MemberJpaRepository memberJpaRepository,
+                          MemberChangeSync memberChangeSync,
+                          @Value("${team-stats.enabled:true}") boolean enabled) {
+        super("team stats", parallelQueryExecutor, enabled);
+        this.memberJpaRepository = memberJpaRepository;
+        this.memberChangeSync = memberChangeSync;
+    }
+
+    /**
+     * 팀 이름순 집계
+     */
+    public List<TeamStatsDto> stats() {
+        Aggregates current = snapshot();
+        if (current == null) {
+            return memberJpaRepository.teamStats();
+        }
+        return current.stats();
+    }
+
+    /**
+     * 메모리 집계를 전체 집계 쿼리 결과와 비교해서 다른 팀 이름을 돌려준다.
+     * 다른 것이 있으면 DB 에서 다시 적재한다.
+     */
+    public List<String> reconcile() {
+        Aggregates current = snapshot();
+        if (current == null) {
+            return new ArrayList<>();
+        }
+        List<TeamStatsDto> actual = current.stats();
+        List<TeamStatsDto> expected = memberJpaRepository.teamStats();
+
+        Map<String, TeamStatsDto> actualByName = new HashMap<>();
+        actual.forEach(stats -> actualByName.put(stats.getTeamName(), stats));
+        List<String> mismatches = new ArrayList<>();
+        for (TeamStatsDto stats : expected) {
+            TeamStatsDto inMemory = actualByName.remove(stats.getTeamName());
+            if (!stats.equals(inMemory)) {
+                mismatches.add(stats.getTeamName());
+            }
+        }
+        mismatches.addAll(actualByName.keySet());
+
+        if (!mismatches.isEmpty()) {
+            log.warn("team stats differ from database for {}, reloading", mismatches);
+            reload();
+        }
+        return mismatches;
+    }
+
+    @Override
+    public void memberInserted(MemberRow row) {
+        apply(aggregates -> aggregates.add(row, 1));
+    }
+
+    @Override
+    public void memberUpdated(MemberRow before, MemberRow after) {
+        if (before == null) {
+            invalidate();
+            return;
+        }
+        apply(aggregates -> {
+            aggregates.add(before, -1);
+            aggregates.add(after, 1);
+        });
+    }
+
+    @Override
+    public void memberDeleted(MemberRow row) {
+        apply(aggregates -> aggregates.add(row, -1));
+    }
+
+    @Override
+    public void teamSaved(long teamId, String name) {
+        apply(aggregates -> aggregates.rename(teamId, name));
+    }
+
+    @Override
+    public void teamDeleted(long teamId) {
+        apply(aggregates -> aggregates.remove(teamId));
+    }
+
+    /**
+     * 읽은 결과에 어떤 변경이 들어갔는지 알 수 없으므로 다음 경우에는 버린다.
+     * - 적재하는 동안 변경이 들어왔다. (읽기 전에 커밋됐으면 replay 가 한 번 더 더한다)
+     * - member / team 을 쓴 트랜잭션이 아직 끝나지 않았다. (읽기 전에 커밋됐으면 교체 뒤에 도착하는 이벤트가 한 번 더 더한다)
+     */
+    @Override
+    protected boolean accept(boolean changedDuringLoad) {
+        return !changedDuringLoad && !memberChangeSync.isWriting();
+    }
+
+    @Override
+    protected Aggregates load(EntityManager em) {
+        ReadOnlyQueryFactory queryFactory = new ReadOnlyQueryFactory(em);
+        Aggregates aggregates = new Aggregates();
+        for (Tuple row : queryFactory.select(team.id, team.name).from(team).fetch()) {
+            aggregates.rename(row.get(team.id), row.get(team.name));
+        }
+        List<Tuple> ageCounts = queryFactory
+                .select(member.team.id, member.age, member.count())
+                .from(member)
+                .where(member.team.isNotNull())
+                .groupBy(member.team.id, member.age)
+                .fetch();
+        for (Tuple row : ageCounts) {
+            aggregates.add(row.get(member.team.id), row.get(member.age), row.get(member.count()));
+        }
+        return aggregates;
+    }
+
+    static final class Aggregates {
+
+        private final Map<Long, TeamAggregate> byTeam = new HashMap<>();
+
+        synchronized void add(MemberRow row, long delta) {
+            if (row.getTeamId() != null) {
+                add(row.getTeamId(), row.getAge(), delta);
+            }
+        }
+
+        synchronized void add(long teamId, int age, long delta) {
+            byTeam.computeIfAbsent(teamId, id -> new TeamAggregate()).add(age, delta);
+        }
+
+        synchronized void rename(long teamId, String name) {
+            byTeam.computeIfAbsent(teamId, id -> new TeamAggregate()).name = name;
+        }
+
+        synchronized void remove(long teamId) {
+            byTeam.remove(teamId);
+        }
+
+        /**
+         * 집계 쿼리와 같이 팀 이름으로 묶는다. (이름이 같은 팀은 합친다)
+         */
+        synchronized List<TeamStatsDto> stats() {
+            Map<String, TeamAggregate> byName = new TreeMap<>();
+            for (TeamAggregate aggregate : byTeam.values()) {
+                if (aggregate.count > 0 && aggregate.name != null) {
+                    byName.computeIfAbsent(aggregate.name, name -> new TeamAggregate()).merge(aggregate);
+                }
+            }
+            List<TeamStatsDto> stats = new ArrayList<>(byName.size());
+            byName.forEach((name, aggregate) -> stats.add(new TeamStatsDto(
+                    name, aggregate.count, aggregate.sum, aggregate.ages.lastKey(), aggregate.ages.firstKey())));
+            return stats;
+        }
+    }
+
+    private static final class TeamAggregate {
+
+        private String name;
+        private long count;
+        private long sum;
+        private final TreeMap<Integer, Long> ages = new TreeMap<>();
+
+        void add(int age, long delta) {
+            count += delta;
+            sum += age * delta;
+            long remaining = ages.getOrDefault(age, 0L) + delta;
+            if (remaining > 0) {
+                ages.put(age, remaining);
+            } else {
+                ages.remove(age);
+            }
+        }
+
+        void merge(TeamAggregate other) {
+            count += other.count;
+            sum += other.sum;
+            other.ages.forEach((age, members) -> ages.merge(age, members, Long::sum));
+        }
+    }
+}
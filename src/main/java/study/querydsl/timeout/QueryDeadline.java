@@ -0,0 +1,122 @@
+package study.querydsl.timeout;
+
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.query.spi.QueryImplementor;
+
+import javax.persistence.Query;
+import javax.persistence.QueryTimeoutException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 한 요청(또는 리포지토리 메서드) 안에서 실행되는 쿼리들이 함께 쓰는 제한 시간
+ * - enter 한 스레드의 쿼리는 apply 로 남은 시간을 statement timeout 힌트(초 단위, 올림)로 받는다.
+ * - 안쪽 deadline 은 바깥 deadline 을 넘지 않는다.
+ * - cancel 은 다른 스레드(요청 타임아웃, 클라이언트 연결 끊김)에서 호출되며 지금 실행 중인 statement 를 취소하고,
+ *   이후의 쿼리는 실행하지 않는다.
+ */
+public final class QueryDeadline {
+
+    private static final ThreadLocal<QueryDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final QueryDeadline root;
+    private final Set<SharedSessionContractImplementor> sessions;
+    private volatile boolean cancelled;
+    private QueryDeadline outer;
+
+    private QueryDeadline(long deadlineNanos, QueryDeadline root) {
+        this.deadlineNanos = deadlineNanos;
+        this.root = root == null ? this : root;
+        this.sessions = root == null ? ConcurrentHashMap.newKeySet() : root.sessions;
+    }
+
+    /**
+     * 지금부터 timeout 뒤까지. 현재 스레드에 deadline 이 있으면 그 안쪽으로 만든다.
+     */
+    public static QueryDeadline after(Duration timeout) {
+        QueryDeadline current = CURRENT.get();
+        long deadline = System.nanoTime() + timeout.toNanos();
+        if (current == null) {
+            return new QueryDeadline(deadline, null);
+        }
+        return new QueryDeadline(Math.min(deadline, current.deadlineNanos), current.root);
+    }
+
+    public static QueryDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 현재 스레드의 deadline 을 쿼리에 적용한다. 이미 지났거나 취소됐으면 실행하지 않는다.
+     */
+    public static void apply(Query query) {
+        QueryDeadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return;
+        }
+        if (deadline.root.cancelled) {
+            throw new CancellationException("query cancelled");
+        }
+        long remaining = deadline.deadlineNanos - System.nanoTime();
+        if (remaining <= 0) {
+            throw new QueryTimeoutException("query deadline exceeded");
+        }
+        query.setHint(QueryHints.TIMEOUT_HIBERNATE, (int) Math.max(1, (remaining + 999_999_999L) / 1_000_000_000L));
+        // 트랜잭션 밖의 공유 EntityManager 는 호출마다 세션이 다르므로 쿼리를 실행할 세션을 직접 꺼낸다.
+        deadline.sessions.add((SharedSessionContractImplementor) query.unwrap(QueryImplementor.class).getProducer());
+    }
+
+    public void enter() {
+        outer = CURRENT.get();
+        CURRENT.set(this);
+    }
+
+    public void exit() {
+        if (outer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(outer);
+        }
+        outer = null;
+    }
+
+    /**
+     * 다른 스레드(샤드별 조회 등)에서 같은 deadline 으로 실행한다. cancel 하면 함께 취소된다.
+     */
+    public <T> T run(Supplier<T> task) {
+        QueryDeadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return task.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public boolean isRoot() {
+        return root == this;
+    }
+
+    /**
+     * 실행 중인 statement 를 취소한다. (Session.cancelQuery 와 같음)
+     */
+    public void cancel() {
+        root.cancelled = true;
+        for (SharedSessionContractImplementor session : sessions) {
+            try {
+                session.getJdbcCoordinator().cancelLastQuery();
+            } catch (RuntimeException ignored) {
+                // 이미 끝났거나 닫힌 세션
+            }
+        }
+    }
+}
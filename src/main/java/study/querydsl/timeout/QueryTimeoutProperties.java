@@ -0,0 +1,28 @@
+package study.querydsl.timeout;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 쿼리 제한 시간
+ * query-timeout:
+ *   endpoints:
+ *     searchMemberV1: 3s                    # MemberController 핸들러 이름
+ *   methods:
+ *     "[MemberJpaRepository.search]": 2s     # 리포지토리 이름.메서드
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("query-timeout")
+public class QueryTimeoutProperties {
+
+    private Map<String, Duration> endpoints = new HashMap<>();
+    private Map<String, Duration> methods = new HashMap<>();
+}
@@ -0,0 +1,94 @@
+package study.querydsl.timeout;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * 엔드포인트 / 리포지토리 메서드별 쿼리 제한 시간 (QueryTimeoutProperties)
+ * - endpoint : 핸들러를 WebAsyncTask 로 실행한다. 요청 타임아웃이나 클라이언트 연결 끊김(async error)이 오면
+ *   실행 중인 statement 를 취소한다.
+ * - call : 리포지토리 메서드 (RepositoryQueryTimeoutAspect)
+ * 제한 시간 초과는 query.timeouts, 취소는 query.cancellations (reason) 로 센다.
+ */
+@Component
+public class QueryTimeouts {
+
+    private static final long NO_TIMEOUT = -1;
+
+    private final QueryTimeoutProperties properties;
+    private final Counter timeouts;
+    private final Counter disconnectCancellations;
+    private final Counter timeoutCancellations;
+
+    public QueryTimeouts(QueryTimeoutProperties properties, MeterRegistry registry) {
+        this.properties = properties;
+        this.timeouts = Counter.builder("query.timeouts")
+                .description("queries that failed with a statement timeout or an exceeded deadline")
+                .register(registry);
+        this.disconnectCancellations = cancellations(registry, "disconnect");
+        this.timeoutCancellations = cancellations(registry, "request-timeout");
+    }
+
+    /**
+     * 제한 시간이 없는 엔드포인트도 async 로 실행해서 연결이 끊기면 취소한다.
+     * 이때 async 타임아웃은 -1 (만료 없음)로 명시한다. 비워 두면 spring.mvc.async.request-timeout, 그것도 없으면
+     * 컨테이너 기본값(Tomcat 30초)을 물려받아 설정하지 않은 제한 시간에 요청이 끊긴다.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> WebAsyncTask<T> endpoint(String name, Callable<T> handler) {
+        Duration timeout = properties.getEndpoints().get(name);
+        QueryDeadline deadline = QueryDeadline.after(timeout == null ? Duration.ofDays(1) : timeout);
+        Callable<T> callable = () -> run(deadline, handler);
+        WebAsyncTask<T> task = new WebAsyncTask<>(timeout == null ? NO_TIMEOUT : timeout.toMillis(), callable);
+        task.onTimeout(() -> {
+            timeoutCancellations.increment();
+            deadline.cancel();
+            return (T) CallableProcessingInterceptor.RESULT_NONE;
+        });
+        task.onError(() -> {
+            disconnectCancellations.increment();
+            deadline.cancel();
+            return (T) CallableProcessingInterceptor.RESULT_NONE;
+        });
+        return task;
+    }
+
+    /**
+     * methods 에 제한 시간이 있으면 그 안에서 실행한다.
+     */
+    public <T> T call(String name, Callable<T> method) throws Exception {
+        Duration timeout = properties.getMethods().get(name);
+        if (timeout == null) {
+            return method.call();
+        }
+        return run(QueryDeadline.after(timeout), method);
+    }
+
+    private <T> T run(QueryDeadline deadline, Callable<T> task) throws Exception {
+        deadline.enter();
+        try {
+            return task.call();
+        } catch (javax.persistence.QueryTimeoutException | org.springframework.dao.QueryTimeoutException e) {
+            // 바깥 deadline 에서 한 번만 센다.
+            if (deadline.isRoot()) {
+                timeouts.increment();
+            }
+            throw e;
+        } finally {
+            deadline.exit();
+        }
+    }
+
+    private static Counter cancellations(MeterRegistry registry, String reason) {
+        return Counter.builder("query.cancellations")
+                .tag("reason", reason)
+                .description("running statements cancelled because the request ended")
+                .register(registry);
+    }
+}
@@ -0,0 +1,46 @@
+package study.querydsl.timeout;
+
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * study.querydsl.repository 의 @Repository 클래스 / Spring Data 리포지토리 public 메서드에
+ * query-timeout.methods 의 제한 시간을 건다. 키는 "클래스(또는 리포지토리 인터페이스) 이름.메서드"
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class RepositoryQueryTimeoutAspect {
+
+    private final QueryTimeouts queryTimeouts;
+
+    @Around("within(study.querydsl.repository..*) && @within(org.springframework.stereotype.Repository) && execution(public * *(..))")
+    public Object repositoryClass(ProceedingJoinPoint joinPoint) throws Exception {
+        return call(AopUtils.getTargetClass(joinPoint.getTarget()).getSimpleName(), joinPoint);
+    }
+
+    @Around("this(study.querydsl.repository.MemberRepository) && execution(public * *(..))")
+    public Object springDataRepository(ProceedingJoinPoint joinPoint) throws Exception {
+        return call("MemberRepository", joinPoint);
+    }
+
+    private Object call(String repository, ProceedingJoinPoint joinPoint) throws Exception {
+        return queryTimeouts.call(repository + "." + joinPoint.getSignature().getName(), () -> proceed(joinPoint));
+    }
+
+    private static Object proceed(ProceedingJoinPoint joinPoint) throws Exception {
+        try {
+            return joinPoint.proceed();
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+}
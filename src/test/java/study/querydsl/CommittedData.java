@@ -0,0 +1,103 @@
+package study.querydsl;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QTeam.team;
+
+/**
+ * 다른 스레드 / 커넥션(병렬 조회, 읽기 모델, 쓰기 버퍼)에서 보이도록 커밋하는 테스트 데이터
+ * 만든 팀과 그 팀의 회원, member() 로 저장한 회원은 close() 에서 지운다.
+ *
+ * try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+ *     Team teamA = data.team("teamA", 1000, (i, team) -> new Member("member" + i, i % 100, team));
+ *     ...
+ * }
+ */
+public class CommittedData implements AutoCloseable {
+
+    private final EntityManager em;
+    private final TransactionTemplate transactionTemplate;
+    private final List<Long> teamIds = new ArrayList<>();
+    private final List<Long> memberIds = new ArrayList<>();
+
+    public CommittedData(EntityManager em, TransactionTemplate transactionTemplate) {
+        this.em = em;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public Team team(String name) {
+        return team(name, 0, null);
+    }
+
+    /**
+     * 팀 하나와 회원 count 명을 한 트랜잭션으로 커밋한다.
+     */
+    public Team team(String name, int count, BiFunction<Integer, Team, Member> member) {
+        Team saved = commit(em -> {
+            Team team = new Team(name);
+            em.persist(team);
+            for (int i = 0; i < count; i++) {
+                em.persist(member.apply(i, team));
+            }
+            return team;
+        });
+        teamIds.add(saved.getId());
+        return saved;
+    }
+
+    /**
+     * 팀이 없는 회원 등 팀으로 지울 수 없는 회원을 커밋한다.
+     */
+    public Member member(Member member) {
+        commit(em -> {
+            em.persist(member);
+            return null;
+        });
+        memberIds.add(member.getId());
+        return member;
+    }
+
+    /**
+     * commit() 으로 직접 만든 팀도 close() 에서 지운다.
+     */
+    public Team track(Team team) {
+        teamIds.add(team.getId());
+        return team;
+    }
+
+    /**
+     * 다른 트랜잭션에서 커밋한 회원도 close() 에서 지운다.
+     */
+    public Member track(Member member) {
+        memberIds.add(member.getId());
+        return member;
+    }
+
+    public <T> T commit(Function<EntityManager, T> work) {
+        return transactionTemplate.execute(status -> work.apply(em));
+    }
+
+    @Override
+    public void close() {
+        transactionTemplate.executeWithoutResult(status -> {
+            JPAQueryFactory queryFactory = new JPAQueryFactory(em);
+            if (!memberIds.isEmpty()) {
+                queryFactory.delete(member).where(member.id.in(memberIds)).execute();
+            }
+            if (!teamIds.isEmpty()) {
+                queryFactory.delete(member).where(member.team.id.in(teamIds)).execute();
+                queryFactory.delete(team).where(team.id.in(teamIds)).execute();
+            }
+        });
+    }
+}
@@ -343,7 +343,8 @@ public class QuerydslBasicTest {
                 .where(member.username.eq("member1"))
                 .fetchOne();
         // when
-        boolean loaded = emf.getPersistenceUnitUtil().isLoaded(findMember.getTeam());
+        // enhance 된 Team 은 members 를 읽기 전까지 엔티티 단위로는 loaded 가 아니므로 속성으로 본다.
+        boolean loaded = emf.getPersistenceUnitUtil().isLoaded(findMember.getTeam(), "name");
         // then
         assertThat(loaded).as("join fetch 미적용").isFalse();
     }
@@ -360,7 +361,8 @@ public class QuerydslBasicTest {
                 .where(QMember.member.username.eq("member1"))
                 .fetchOne();
         // when
-        boolean loaded = emf.getPersistenceUnitUtil().isLoaded(findMember.getTeam());
+        // enhance 된 Team 은 members 를 읽기 전까지 엔티티 단위로는 loaded 가 아니므로 속성으로 본다.
+        boolean loaded = emf.getPersistenceUnitUtil().isLoaded(findMember.getTeam(), "name");
         // then
         assertThat(loaded).as("join fetch 적용").isTrue();
     }
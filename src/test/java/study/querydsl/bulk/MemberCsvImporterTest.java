@@ -0,0 +1,138 @@
+package study.querydsl.bulk;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.dto.MemberImportProgress;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberChange;
+
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberChange.memberChange;
+import static study.querydsl.entity.QTeam.team;
+
+// chunk 를 1KB 로 줄여서 여러 chunk 로 나눠 읽게 한다.
+@SpringBootTest(properties = {
+        "member-import.chunk-kb=1",
+        "member-import.commit-rows=100",
+        "member-import.dir=${java.io.tmpdir}/member-import-test"})
+class MemberCsvImporterTest {
+
+    @Autowired
+    MemberCsvImporter memberCsvImporter;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Value("${member-import.dir}")
+    String directory;
+
+    @Test
+    public void csvFieldsTest() throws Exception {
+        CsvFields fields = new CsvFields(3);
+        byte[] line = "a,\"b,\"\"c\"\"\",-42".getBytes(StandardCharsets.UTF_8);
+        assertThat(fields.split(line, line.length)).isEqualTo(3);
+        assertThat(fields.string(line, 0)).isEqualTo("a");
+        assertThat(fields.string(line, 1)).isEqualTo("b,\"c\"");
+        assertThat(fields.parseInt(line, 2)).isEqualTo(-42);
+
+        byte[] empty = ",,".getBytes(StandardCharsets.UTF_8);
+        assertThat(fields.split(empty, empty.length)).isEqualTo(3);
+        assertThat(fields.length(2)).isZero();
+        assertThatThrownBy(() -> fields.parseInt(empty, 0)).isInstanceOf(NumberFormatException.class);
+
+        byte[] unterminated = "a,\"b".getBytes(StandardCharsets.UTF_8);
+        assertThat(fields.split(unterminated, unterminated.length)).isEqualTo(-1);
+
+        TeamIds teamIds = new TeamIds();
+        for (int i = 0; i < 5000; i++) {
+            teamIds.put("team" + i, i);
+        }
+        byte[] name = "x,team4321,y".getBytes(StandardCharsets.UTF_8);
+        assertThat(teamIds.find(name, 2, 8)).isEqualTo(4321);
+        assertThat(teamIds.find(name, 0, 1)).isEqualTo(-1);
+    }
+
+    @Test
+    public void importTest() throws Exception {
+        Long lastChange = queryFactory(em).select(memberChange.id.max()).from(memberChange).fetchOne();
+
+        // /v1/members/export 와 같은 헤더
+        List<String> lines = new ArrayList<>();
+        lines.add("memberId,username,age,teamId,teamName");
+        for (int i = 0; i < 300; i++) {
+            lines.add(i + ",import" + i + "," + (i % 100) + ",," + (i % 3 == 0 ? "" : "importTeam" + (i % 3)));
+        }
+        lines.add("1000,\"import,quoted\",20,,importTeam1");
+        lines.add("1001,importBadAge,abc,,importTeam1");
+        lines.add("1002,,30,,importTeam1");
+        lines.add("1003,importShort,40");
+        Path file = Files.createDirectories(Paths.get(directory)).resolve("members-" + System.nanoTime() + ".csv");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        try {
+            assertThatThrownBy(() -> memberCsvImporter.start("../" + file.getFileName()))
+                    .isInstanceOf(IllegalArgumentException.class);
+
+            MemberImportProgress progress = memberCsvImporter.start(file.getFileName().toString());
+            long deadline = System.currentTimeMillis() + 30_000;
+            while (!progress.getStatus().equals("DONE") && !progress.getStatus().equals("FAILED")
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+                progress = memberCsvImporter.progress(progress.getId()).orElseThrow();
+            }
+            assertThat(progress.getStatus()).isEqualTo("DONE");
+            assertThat(progress.getImported()).isEqualTo(301);
+            assertThat(progress.getRejected()).isEqualTo(3);
+            assertThat(progress.getReadBytes()).isEqualTo(progress.getTotalBytes()).isEqualTo(Files.size(file));
+
+            List<Member> imported = queryFactory(em).selectFrom(member).leftJoin(member.team, team).fetchJoin()
+                    .where(member.username.startsWith("import")).fetch();
+            assertThat(imported).hasSize(301);
+            assertThat(imported).filteredOn(m -> m.getUsername().equals("import,quoted"))
+                    .singleElement()
+                    .satisfies(m -> assertThat(m.getTeam().getName()).isEqualTo("importTeam1"));
+            assertThat(imported).filteredOn(m -> m.getTeam() == null).hasSize(100);
+            assertThat(imported).extracting(m -> m.getTeam() == null ? null : m.getTeam().getName()).containsOnly(null, "importTeam1", "importTeam2");
+            // 팀은 이름마다 하나만 만든다.
+            assertThat(queryFactory(em).selectFrom(team).where(team.name.startsWith("importTeam")).fetch()).hasSize(2);
+
+            List<String> rejects = Files.readAllLines(Paths.get(progress.getRejectFile()), StandardCharsets.UTF_8);
+            assertThat(rejects).hasSize(4);
+            assertThat(String.join("\n", rejects)).contains("invalid age", "username is empty", "expected 5 columns but was 3");
+
+            List<MemberChange> bulk = queryFactory(em).selectFrom(memberChange)
+                    .where(memberChange.id.gt(lastChange == null ? 0 : lastChange),
+                            memberChange.operation.eq(MemberChange.Operation.BULK))
+                    .fetch();
+            assertThat(bulk).isNotEmpty();
+        } finally {
+            transactionTemplate.execute(status -> {
+                JPAQueryFactory queryFactory = queryFactory(em);
+                queryFactory.delete(member).where(member.username.startsWith("import")).execute();
+                return queryFactory.delete(team).where(team.name.startsWith("importTeam")).execute();
+            });
+            Files.deleteIfExists(Paths.get(file + ".rejects.csv"));
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static JPAQueryFactory queryFactory(EntityManager em) {
+        return new JPAQueryFactory(em);
+    }
+}
@@ -0,0 +1,131 @@
+package study.querydsl.codec;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import study.querydsl.dto.MemberTeamDto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.*;
+
+class MemberRowFormatTest {
+
+    private final List<MemberTeamDto> rows = Arrays.asList(
+            new MemberTeamDto(1L, "member1", 10, 100L, "teamA"),
+            new MemberTeamDto(2L, "회원2", 0, null, null));
+
+    @Test
+    public void jacksonRowsTest() throws Exception {
+        for (MemberRowFormat format : Arrays.asList(MemberRowFormat.SMILE, MemberRowFormat.CBOR)) {
+            ObjectMapper mapper = new ObjectMapper(format == MemberRowFormat.SMILE ? new SmileFactory() : new CBORFactory());
+
+            ByteArrayOutputStream list = new ByteArrayOutputStream();
+            format.getWriter().writeList(rows.iterator(), list);
+            assertThat(mapper.readValue(list.toByteArray(), new TypeReference<List<Object>>() {})).containsExactly(
+                    Arrays.asList(1, "member1", 10, 100, "teamA"),
+                    Arrays.asList(2, "회원2", 0, null, null));
+
+            ByteArrayOutputStream page = new ByteArrayOutputStream();
+            format.getWriter().writePage(new PageImpl<>(rows, PageRequest.of(3, 2), 20), page);
+            Map<?, ?> decoded = mapper.readValue(page.toByteArray(), Map.class);
+            assertThat((List<?>) decoded.get("content")).hasSize(2);
+            assertThat(decoded.get("totalElements")).isEqualTo(20);
+            assertThat(decoded.get("number")).isEqualTo(3);
+            assertThat(decoded.get("size")).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void protobufRowsTest() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MemberRowFormat.PROTOBUF.getWriter().writePage(new PageImpl<>(rows, PageRequest.of(3, 2), 20), out);
+
+        CodedInputStream input = CodedInputStream.newInstance(out.toByteArray());
+        List<MemberTeamDto> decoded = new ArrayList<>();
+        long total = -1;
+        int number = -1;
+        int size = -1;
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    int limit = input.pushLimit(input.readRawVarint32());
+                    decoded.add(readRow(input));
+                    input.popLimit(limit);
+                    break;
+                case 2:
+                    total = input.readInt64();
+                    break;
+                case 3:
+                    number = input.readInt32();
+                    break;
+                case 4:
+                    size = input.readInt32();
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+        assertThat(decoded).containsExactlyElementsOf(rows);
+        assertThat(total).isEqualTo(20);
+        assertThat(number).isEqualTo(3);
+        assertThat(size).isEqualTo(2);
+    }
+
+    @Test
+    public void negotiateTest() throws Exception {
+        assertThat(MemberRowFormat.negotiate("*/*")).isEmpty();
+        assertThat(MemberRowFormat.negotiate("text/csv, application/*")).isEmpty();
+        assertThat(MemberRowFormat.negotiate("text/csv, application/cbor;q=0.5")).isEmpty();
+        assertThat(MemberRowFormat.negotiate("application/cbor;q=0.5, application/x-protobuf")).contains(MemberRowFormat.PROTOBUF);
+
+        MemberRowHttpMessageConverter converter = new MemberRowHttpMessageConverter(MemberRowFormat.CBOR);
+        assertThat(converter.canWrite(new ParameterizedTypeReference<List<MemberTeamDto>>() {}.getType(), ArrayList.class, null)).isTrue();
+        assertThat(converter.canWrite(new ParameterizedTypeReference<Page<MemberTeamDto>>() {}.getType(), PageImpl.class, MemberRowFormat.CBOR.getMediaType())).isTrue();
+        assertThat(converter.canWrite(new ParameterizedTypeReference<List<String>>() {}.getType(), ArrayList.class, null)).isFalse();
+        assertThat(converter.canWrite(new ParameterizedTypeReference<List<MemberTeamDto>>() {}.getType(), ArrayList.class, MemberRowFormat.SMILE.getMediaType())).isFalse();
+    }
+
+    private static MemberTeamDto readRow(CodedInputStream input) throws IOException {
+        Long memberId = null;
+        String username = null;
+        int age = 0;
+        Long teamId = null;
+        String teamName = null;
+        for (int tag = input.readTag(); tag != 0; tag = input.readTag()) {
+            switch (WireFormat.getTagFieldNumber(tag)) {
+                case 1:
+                    memberId = input.readInt64();
+                    break;
+                case 2:
+                    username = input.readString();
+                    break;
+                case 3:
+                    age = input.readInt32();
+                    break;
+                case 4:
+                    teamId = input.readInt64();
+                    break;
+                case 5:
+                    teamName = input.readString();
+                    break;
+                default:
+                    input.skipField(tag);
+            }
+        }
+        return new MemberTeamDto(memberId, username, age, teamId, teamName);
+    }
+}
@@ -1,5 +1,6 @@
 package study.querydsl.entity;
 
+import org.hibernate.Hibernate;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -52,4 +53,40 @@ class MemberTest {
         // then
     }
 
-}
\ No newline at end of file
+    @Test
+    public void teamMembersNotInitializedTest() throws Exception {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        for (int i = 1; i <= 3; i++) {
+            em.persist(new Member("member" + i, 10, teamA));
+        }
+        em.flush();
+        em.clear();
+
+        // 영속 상태 : 로딩하지 않고 추가만 기록, size() 는 count 쿼리
+        Team team = em.find(Team.class, teamA.getId());
+        em.persist(new Member("member4", 10, team));
+        assertEquals(4, team.getMembers().size());
+        assertFalse(Hibernate.isInitialized(team.getMembers()));
+
+        // 준영속 상태 : LazyInitializationException 없이 저장된다
+        em.flush();
+        em.clear();
+        Member member5 = new Member("member5", 10, team);
+        em.persist(member5);
+        em.flush();
+        em.clear();
+
+        // 팀 이동 : 어느 쪽 members 도 로딩하지 않는다
+        Member moved = em.find(Member.class, member5.getId());
+        Team from = moved.getTeam();
+        moved.changeTeam(em.getReference(Team.class, teamB.getId()));
+        em.flush();
+        assertFalse(Hibernate.isInitialized(from.getMembers()));
+        assertFalse(Hibernate.isInitialized(moved.getTeam().getMembers()));
+        assertEquals(4, from.getMembers().size());
+        assertEquals(1, moved.getTeam().getMembers().size());
+    }
+}
@@ -0,0 +1,122 @@
+package study.querydsl.export;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+import study.querydsl.CommittedData;
+import study.querydsl.dto.ArrowExportResult;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QTeam;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.PartitionedScan;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+class ArrowExporterTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Test
+    public void arrowExportTest() throws Exception {
+        Path directory = Files.createTempDirectory("arrow-export-test");
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            data.team("arrowTeam", 500, (i, team) -> new Member("arrow" + i, i % 100, team));
+            data.member(new Member("arrowNoTeam", 70));
+
+            List<MemberTeamDto> expected = new JPAQueryFactory(em)
+                    .select(new QMemberTeamDto(member.id, member.username, member.age, QTeam.team.id, QTeam.team.name))
+                    .from(member)
+                    .leftJoin(member.team, QTeam.team)
+                    .where(member.username.startsWith("arrow"), member.age.goe(50))
+                    .orderBy(member.id.asc())
+                    .fetch();
+
+            // 범위 100개, batch 64 행씩
+            PartitionedScan scan = new PartitionedScan(emf, 2, 100);
+            ArrowExporter exporter = new ArrowExporter(scan, directory.toString(), 64, 64);
+            try {
+                ArrowExportResult result = exporter.export("member",
+                        List.of(member.id.as("memberId"), member.username, member.age, QTeam.team.id.as("teamId"), QTeam.team.name.as("teamName")),
+                        member.username.startsWith("arrow"), member.age.goe(50));
+                assertThat(result.getFiles()).hasSizeGreaterThan(1);
+                assertThat(result.getRows()).isEqualTo(expected.size());
+
+                List<MemberTeamDto> read = new ArrayList<>();
+                try (BufferAllocator allocator = new RootAllocator()) {
+                    for (String file : result.getFiles()) {
+                        try (ArrowFileReader reader = new ArrowFileReader(
+                                FileChannel.open(Paths.get(result.getDirectory(), file)), allocator)) {
+                            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+                            assertThat(root.getSchema().getFields()).extracting("name")
+                                    .containsExactly("memberId", "username", "age", "teamId", "teamName");
+                            while (reader.loadNextBatch()) {
+                                for (int i = 0; i < root.getRowCount(); i++) {
+                                    BigIntVector teamId = (BigIntVector) root.getVector("teamId");
+                                    VarCharVector teamName = (VarCharVector) root.getVector("teamName");
+                                    read.add(new MemberTeamDto(
+                                            ((BigIntVector) root.getVector("memberId")).get(i),
+                                            root.getVector("username").getObject(i).toString(),
+                                            ((IntVector) root.getVector("age")).get(i),
+                                            teamId.isNull(i) ? null : teamId.get(i),
+                                            teamName.isNull(i) ? null : teamName.getObject(i).toString()));
+                                }
+                            }
+                        }
+                    }
+                }
+                assertThat(read).usingRecursiveFieldByFieldElementComparator().containsExactlyInAnyOrderElementsOf(expected);
+                assertThat(read).extracting("teamId").containsNull();
+            } finally {
+                exporter.shutdown();
+                scan.shutdown();
+            }
+
+            // 리포지토리는 MemberSearchCondition 으로 같은 컬럼을 내보낸다.
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("arrowTeam");
+            ArrowExportResult result = memberJpaRepository.exportArrow(condition);
+            try {
+                assertThat(result.getRows()).isEqualTo(500);
+                assertThat(result.getFiles()).isNotEmpty();
+            } finally {
+                FileSystemUtils.deleteRecursively(Paths.get(result.getDirectory()));
+            }
+        } finally {
+            FileSystemUtils.deleteRecursively(directory);
+        }
+    }
+}
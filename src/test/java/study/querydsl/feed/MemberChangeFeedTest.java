@@ -0,0 +1,205 @@
+package study.querydsl.feed;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.CommittedData;
+import study.querydsl.dto.MemberChangeDto;
+import study.querydsl.dto.MemberChangePage;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.MemberChange;
+import study.querydsl.entity.Team;
+import study.querydsl.search.MemberChangeLog;
+import study.querydsl.search.MemberChangeSync;
+
+import javax.persistence.EntityManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+import static study.querydsl.entity.QMemberChange.memberChange;
+
+@SpringBootTest
+class MemberChangeFeedTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MemberChangeFeed memberChangeFeed;
+
+    @Autowired
+    MemberChangeSync memberChangeSync;
+
+    @Test
+    public void changeFeedTest() throws Exception {
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            // 이 테스트보다 먼저 기록된 행 (expire 확인용)
+            data.team("feedOld");
+            long since = lastChangeId();
+
+            Member saved = transactionTemplate.execute(status -> {
+                Team team = new Team("feedTeam");
+                em.persist(team);
+                Member member = new Member("feed1", 10, team);
+                em.persist(member);
+                return member;
+            });
+            Long memberId = saved.getId();
+            Long teamId = saved.getTeam().getId();
+            transactionTemplate.execute(status -> {
+                em.find(Member.class, memberId).setAge(20);
+                return null;
+            });
+            transactionTemplate.execute(status -> {
+                em.persist(new Member("feedRollback", 1));
+                status.setRollbackOnly();
+                return null;
+            });
+            transactionTemplate.execute(status ->
+                    queryFactory().update(member).set(member.age, 30).where(member.id.eq(memberId)).execute());
+            transactionTemplate.execute(status -> {
+                em.remove(em.find(Member.class, memberId));
+                em.remove(em.find(Team.class, teamId));
+                return null;
+            });
+
+            // 2건씩 keyset 페이징, since 뒤의 행은 모두 이 테스트가 남긴 것
+            List<MemberChangeDto> changes = readAll(since, 2);
+            assertThat(changes).extracting("target", "operation", "entityId").containsExactly(
+                    tuple(MemberChange.Target.TEAM, MemberChange.Operation.INSERT, teamId),
+                    tuple(MemberChange.Target.MEMBER, MemberChange.Operation.INSERT, memberId),
+                    tuple(MemberChange.Target.MEMBER, MemberChange.Operation.UPDATE, memberId),
+                    tuple(MemberChange.Target.MEMBER, MemberChange.Operation.BULK, null),
+                    tuple(MemberChange.Target.MEMBER, MemberChange.Operation.DELETE, memberId),
+                    tuple(MemberChange.Target.TEAM, MemberChange.Operation.DELETE, teamId));
+            assertThat(changes.get(2).getAge()).isEqualTo(20);
+            assertThat(changes.get(2).getTeamId()).isEqualTo(teamId);
+
+            // 같은 엔티티의 이전 행은 지워진다.
+            memberChangeFeed.compact(LocalDateTime.now().plusSeconds(1));
+            assertThat(memberChangeFeed.changes(since, 100).getChanges()).extracting("operation").containsExactly(
+                    MemberChange.Operation.BULK, MemberChange.Operation.DELETE, MemberChange.Operation.DELETE);
+
+            // 이 테스트의 첫 기록보다 오래된 행만 보관 기간이 지난 것으로 지운다. 마지막 한 행은 TRUNCATED 로 남는다.
+            memberChangeFeed.expire(changes.get(0).getChangedAt());
+            List<MemberChangeDto> expired = memberChangeFeed.changes(0, 100).getChanges();
+            assertThat(expired.get(0).getOperation()).isEqualTo(MemberChange.Operation.TRUNCATED);
+            assertThat(expired.get(0).getChangeId()).isLessThanOrEqualTo(since);
+            assertThat(expired.subList(1, expired.size())).extracting("operation").containsExactly(
+                    MemberChange.Operation.BULK, MemberChange.Operation.DELETE, MemberChange.Operation.DELETE);
+        }
+    }
+
+    @Test
+    public void uncommittedChangeTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        CountDownLatch recorded = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            long since = lastChangeId();
+
+            // change_id 를 먼저 받고 커밋 직전에 멈춘 트랜잭션
+            Future<Member> slow = executor.submit(() -> transactionTemplate.execute(status -> {
+                Member member = new Member("feedSlow", 1);
+                em.persist(member);
+                em.flush();
+                // MemberChangeLog 가 flush 때 등록한 기록 작업 다음에 실행된다.
+                em.unwrap(SessionImplementor.class).getActionQueue().registerProcess((BeforeTransactionCompletionProcess) session -> {
+                    recorded.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                return member;
+            }));
+            try {
+                assertThat(recorded.await(10, TimeUnit.SECONDS)).as("slow transaction recorded its change").isTrue();
+                Member fast = data.member(new Member("feedFast", 2));
+
+                // 뒤에 받은 번호가 먼저 커밋돼도 앞 번호가 커밋될 때까지 넘기지 않는다.
+                MemberChangePage page = memberChangeFeed.changes(since, 100);
+                assertThat(page.getChanges()).extracting("entityId").doesNotContain(fast.getId());
+                assertThat(page.getNext()).isEqualTo(since);
+            } finally {
+                release.countDown();
+            }
+            data.track(slow.get(10, TimeUnit.SECONDS));
+
+            assertThat(readAll(since, 100)).extracting("operation", "username").containsExactly(
+                    tuple(MemberChange.Operation.INSERT, "feedSlow"),
+                    tuple(MemberChange.Operation.INSERT, "feedFast"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void readDoesNotBlockWritersTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        MemberChangeLog changeLog = memberChangeSync.getChangeLog();
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger reads = new AtomicInteger();
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            // 커밋되지 않은 번호가 없을 때 DB 왕복 동안 멈춰 있는 읽기
+            Future<Long> read = executor.submit(() -> changeLog.readCommitted(firstUncommitted -> {
+                reads.incrementAndGet();
+                reading.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return firstUncommitted;
+            }));
+            try {
+                assertThat(reading.await(10, TimeUnit.SECONDS)).as("feed query started").isTrue();
+                Future<Member> write = executor.submit(() -> data.member(new Member("feedWriter", 3)));
+                assertThat(write.get(5, TimeUnit.SECONDS).getId()).as("writer committed while the feed query ran").isNotNull();
+            } finally {
+                release.countDown();
+            }
+            assertThat(read.get(10, TimeUnit.SECONDS)).isNull();
+            assertThat(reads.get()).as("re-read because a change_id was allocated during the query").isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<MemberChangeDto> readAll(long since, int limit) {
+        List<MemberChangeDto> changes = new ArrayList<>();
+        MemberChangePage page = memberChangeFeed.changes(since, limit);
+        while (!page.getChanges().isEmpty()) {
+            changes.addAll(page.getChanges());
+            page = memberChangeFeed.changes(page.getNext(), limit);
+        }
+        return changes;
+    }
+
+    private long lastChangeId() {
+        Long last = queryFactory().select(memberChange.id.max()).from(memberChange).fetchOne();
+        return last == null ? 0 : last;
+    }
+
+    private JPAQueryFactory queryFactory() {
+        return new JPAQueryFactory(em);
+    }
+}
@@ -0,0 +1,69 @@
+package study.querydsl.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void gradientTest() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("search", limit(10, 2, 50));
+
+        // 지연이 그대로이고 limit 만큼 실행 중이면 늘어난다.
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(10 * MILLIS, limiter.getLimit(), false);
+        }
+        int grown = limiter.getLimit();
+        assertThat(grown).isGreaterThan(10);
+
+        // 부하가 적으면(실행 중인 수 < limit / 2) 그대로
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(10 * MILLIS, 1, false);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(grown);
+
+        // 줄을 서서 지연이 장기 평균의 tolerance 배를 넘으면 줄어든다. (min 아래로는 안 내려간다)
+        for (int i = 0; i < 50; i++) {
+            limiter.onSample(40 * MILLIS, limiter.getLimit(), false);
+        }
+        assertThat(limiter.getLimit()).isLessThan(grown).isGreaterThanOrEqualTo(2);
+
+        // 제한 시간 초과는 지연과 관계없이 줄인다.
+        int before = limiter.getLimit();
+        limiter.onSample(MILLIS, 0, true);
+        assertThat(limiter.getLimit()).isLessThanOrEqualTo(before);
+    }
+
+    @Test
+    public void shedTest() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("lookup", limit(3, 1, 3));
+        List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            permits.add(limiter.tryAcquire().orElseThrow(IllegalStateException::new));
+        }
+        assertThat(limiter.tryAcquire()).isEmpty();
+        assertThat(limiter.getInflight()).isEqualTo(3);
+        assertThat(limiter.getShed()).isEqualTo(1);
+
+        permits.get(0).success();
+        permits.get(1).ignore();
+        permits.get(2).dropped();
+        assertThat(limiter.getInflight()).isZero();
+        assertThat(limiter.tryAcquire()).isPresent();
+    }
+
+    private static ConcurrencyLimitProperties.Limit limit(int initial, int min, int max) {
+        ConcurrencyLimitProperties.Limit limit = new ConcurrencyLimitProperties.Limit();
+        limit.setInitialLimit(initial);
+        limit.setMinLimit(min);
+        limit.setMaxLimit(max);
+        return limit;
+    }
+}
@@ -0,0 +1,52 @@
+package study.querydsl.limit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.repository.MemberJpaRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SpringBootTest
+class RepositoryConcurrencyLimitTest {
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    ConcurrencyLimits concurrencyLimits;
+
+    @Test
+    public void concurrencyLimitTest() throws Exception {
+        AdaptiveLimiter lookup = concurrencyLimits.limiter("lookup");
+        long shed = lookup.getShed();
+
+        // 다른 요청들이 lookup limiter 를 가득 채운 상태
+        List<AdaptiveLimiter.Permit> permits = new ArrayList<>();
+        Optional<AdaptiveLimiter.Permit> permit;
+        while ((permit = lookup.tryAcquire()).isPresent()) {
+            permits.add(permit.get());
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> rejected = executor.submit(() -> memberJpaRepository.searchUsernamePrefix("member", 10));
+            assertThatThrownBy(rejected::get).hasCauseInstanceOf(ConcurrencyLimitExceededException.class);
+            assertThat(lookup.getShed()).isEqualTo(shed + 2);
+
+            // search limiter 는 따로 센다.
+            executor.submit(() -> memberJpaRepository.search(new MemberSearchCondition())).get();
+        } finally {
+            permits.forEach(AdaptiveLimiter.Permit::ignore);
+            executor.shutdown();
+        }
+        assertThat(memberJpaRepository.searchUsernamePrefix("member", 10)).isNotNull();
+    }
+}
@@ -0,0 +1,74 @@
+package study.querydsl.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hibernate.engine.spi.SelfDirtinessTracker;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.CommittedData;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class FlushMetricsTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void flushMetricsTest() throws Exception {
+        long committed = timerCount("hibernate.flush.transaction", "outcome", "commit");
+        long rolledBack = timerCount("hibernate.flush.transaction", "outcome", "rollback");
+        long autoFlushes = timerCount("hibernate.flush", "type", "auto");
+
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team team = data.commit(em -> {
+                Team teamA = new Team("teamA");
+                em.persist(teamA);
+                for (int i = 0; i < 10; i++) {
+                    em.persist(new Member("member" + i, i, teamA));
+                }
+                em.flush();
+
+                // 빌드 때 enhance 되어 setter 가 바뀐 속성을 기록한다. (dirty tracking)
+                Member first = em.createQuery("select m from Member m where m.team = :team order by m.id", Member.class)
+                        .setParameter("team", teamA)
+                        .setMaxResults(1)
+                        .getSingleResult();
+                first.setAge(100);
+                assertThat(((SelfDirtinessTracker) first).$$_hibernate_getDirtyAttributes()).containsExactly("age");
+                return teamA;
+            });
+            data.track(team);
+
+            assertEquals(committed + 1, timerCount("hibernate.flush.transaction", "outcome", "commit"));
+            assertThat(timerCount("hibernate.flush", "type", "auto")).isGreaterThan(autoFlushes);
+            assertThat(meterRegistry.get("hibernate.flush.entities").tags("type", "flush").summary().max()).isGreaterThanOrEqualTo(11);
+
+            transactionTemplate.executeWithoutResult(status -> {
+                em.find(Member.class, team.getMembers().get(0).getId()).setAge(0);
+                em.flush();
+                status.setRollbackOnly();
+            });
+            assertEquals(rolledBack + 1, timerCount("hibernate.flush.transaction", "outcome", "rollback"));
+        }
+    }
+
+    private long timerCount(String name, String tagKey, String tagValue) {
+        Timer timer = meterRegistry.find(name).tags(tagKey, tagValue).timer();
+        return timer == null ? 0 : timer.count();
+    }
+}
@@ -0,0 +1,96 @@
+package study.querydsl.repository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+
+class CoalescingLoaderTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void dispatchWhenIdleTest() throws Exception {
+        // window 10초, 기다리는 key 도 조회 중인 묶음도 없으면 window 를 기다리지 않는다.
+        CoalescingLoader<Long, String> loader = new CoalescingLoader<>("idle", ids -> CompletableFuture.completedFuture(names(ids)),
+                100, TimeUnit.SECONDS.toMicros(10), registry);
+        try {
+            long start = System.nanoTime();
+            assertThat(loader.get(1L)).contains("1");
+            assertThat(loader.get(2L)).contains("2");
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+            assertThat(batchSize("idle").count()).isEqualTo(2);
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void batchWhileRunningTest() throws Exception {
+        // 첫 key 는 바로 조회하고, 그 조회가 끝나지 않은 동안 들어온 key 는 window 동안 모아서 한 번에 조회한다.
+        CountDownLatch release = new CountDownLatch(1);
+        Function<List<Long>, CompletableFuture<Map<Long, String>>> batchLoader = ids -> {
+            if (!ids.contains(1L)) {
+                return CompletableFuture.completedFuture(names(ids));
+            }
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return names(ids);
+            });
+        };
+        CoalescingLoader<Long, String> loader = new CoalescingLoader<>("running", batchLoader, 100, 50_000, registry);
+        try {
+            CompletableFuture<Optional<String>> first = loader.load(1L);
+            List<CompletableFuture<Optional<String>>> rest = List.of(loader.load(2L), loader.load(3L), loader.load(4L));
+            assertThat(CompletableFuture.allOf(rest.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS)).isNull();
+            assertThat(first).isNotDone();
+            release.countDown();
+            assertThat(first.get(10, TimeUnit.SECONDS)).contains("1");
+
+            assertThat(batchSize("running").count()).isEqualTo(2);
+            assertThat(batchSize("running").totalAmount()).isEqualTo(4);
+        } finally {
+            release.countDown();
+            loader.shutdown();
+        }
+    }
+
+    @Test
+    public void failureTest() throws Exception {
+        // join 의 CompletionException 이 아니라 batchLoader 의 예외를 그대로 던진다.
+        CoalescingLoader<Long, String> loader = new CoalescingLoader<>("failing",
+                ids -> CompletableFuture.supplyAsync(() -> {
+                    throw new IllegalStateException("batch failed");
+                }), 100, 1000, registry);
+        try {
+            assertThatThrownBy(() -> loader.get(1L))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("batch failed");
+        } finally {
+            loader.shutdown();
+        }
+    }
+
+    private DistributionSummary batchSize(String loader) {
+        return registry.get("loader.batch.size").tag("loader", loader).summary();
+    }
+
+    private static Map<Long, String> names(List<Long> ids) {
+        return ids.stream().collect(Collectors.toMap(id -> id, String::valueOf));
+    }
+}
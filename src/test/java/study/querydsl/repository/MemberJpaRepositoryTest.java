@@ -1,20 +1,51 @@
 package study.querydsl.repository;
 
+import com.querydsl.jpa.JPAExpressions;
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.annotations.QueryHints;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.CommittedData;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.dto.QMemberTeamDto;
+import study.querydsl.dto.TeamMemberPage;
 import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
+import study.querydsl.entity.QTeam;
 import study.querydsl.entity.Team;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
 
 @SpringBootTest
 @Transactional
@@ -26,6 +57,15 @@ class MemberJpaRepositoryTest {
     @Autowired
     private MemberJpaRepository memberJpaRepository;
 
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
     @Test
     public void basicTest() throws Exception {
         Member member = new Member("member1", 10);
@@ -65,4 +105,345 @@ class MemberJpaRepositoryTest {
 
     }
 
-}
\ No newline at end of file
+    /**
+     * 트랜잭션 밖(open-in-view 처럼 스레드에 묶인 EntityManager)에서는 힌트가 붙어 read-only 로 올라가고,
+     * 읽기-쓰기 트랜잭션 안에서는 flush 되지 않은 변경을 읽어야 하므로 힌트 없이 managed 로 올라간다.
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void readOnlySearchTest() throws Exception {
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team readOnlyTeam = data.team("readOnlyTeam", 2, (i, team) -> new Member("readOnly" + i, 10 * (i + 1), team));
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("readOnlyTeam");
+
+            assertThat(new ReadOnlyQueryFactory(em).selectFrom(member).createQuery().getHints())
+                    .containsEntry(QueryHints.READ_ONLY, true)
+                    .containsEntry(QueryHints.FLUSH_MODE, FlushMode.MANUAL);
+
+            withBoundEntityManager(bound -> {
+                Session session = bound.unwrap(Session.class);
+                List<Member> result = memberJpaRepository.searchMember(condition);
+                assertThat(result).hasSize(2);
+                assertThat(result).as("검색 결과는 스냅샷 없이 read-only").allMatch(session::isReadOnly);
+                assertThat(memberJpaRepository.findAll_Querydsl()).as("findAll_Querydsl 도 read-only")
+                        .filteredOn(m -> m.getUsername().startsWith("readOnly"))
+                        .hasSize(2)
+                        .allMatch(session::isReadOnly);
+                assertThat(session.getHibernateFlushMode()).as("힌트는 쿼리에만 붙고 세션 flush mode 는 그대로")
+                        .isEqualTo(FlushMode.AUTO);
+            });
+
+            transactionTemplate.executeWithoutResult(status -> {
+                Session session = em.unwrap(Session.class);
+                assertThat(new ReadOnlyQueryFactory(em).selectFrom(member).createQuery().getHints())
+                        .doesNotContainKey(QueryHints.FLUSH_MODE);
+
+                em.persist(new Member("readOnly2", 30, em.getReference(Team.class, readOnlyTeam.getId())));
+                List<Member> result = memberJpaRepository.searchMember(condition);
+                assertThat(result).as("flush 되지 않은 회원도 보인다").hasSize(3);
+                assertThat(result).as("쓰기 트랜잭션에서는 dirty checking 대상").noneMatch(session::isReadOnly);
+                status.setRollbackOnly();
+            });
+        }
+    }
+
+    /**
+     * 같은 검색을 힌트 있이 / 없이 스레드에 묶인 EntityManager 로 실행해서
+     * 요청이 할당하는 heap, 요청 동안 persistence context 에 남는 heap(스냅샷), 이어지는 쓰기 트랜잭션 20번의 flush 시간을 잰다.
+     */
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void readOnlySearchCostTest() throws Exception {
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            data.team("costTeam", 2000, (i, team) -> new Member("cost" + i, i % 100, team));
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("costTeam");
+
+            SearchCost managed = null;
+            SearchCost readOnly = null;
+            for (int i = 0; i < 3; i++) {
+                managed = searchCost(() -> new JPAQueryFactory(em)
+                        .selectFrom(member)
+                        .leftJoin(member.team, QTeam.team)
+                        .where(QTeam.team.name.eq("costTeam"))
+                        .fetch());
+                readOnly = searchCost(() -> memberJpaRepository.searchMember(condition));
+            }
+            System.out.println("managed   " + managed);
+            System.out.println("read-only " + readOnly);
+
+            assertThat(readOnly.rows).isEqualTo(managed.rows).isEqualTo(2000);
+            assertThat(managed.snapshots).isEqualTo(2000);
+            assertThat(readOnly.snapshots).as("read-only 엔티티는 스냅샷(loadedState)을 들고 있지 않는다").isZero();
+        }
+    }
+
+    private SearchCost searchCost(Supplier<List<Member>> search) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        SearchCost cost = new SearchCost();
+        withBoundEntityManager(bound -> {
+            long retained = usedHeapAfterGc();
+            long allocated = threads.getThreadAllocatedBytes(thread);
+            List<Member> result = search.get();
+            cost.allocatedBytes = threads.getThreadAllocatedBytes(thread) - allocated;
+            cost.retainedBytes = usedHeapAfterGc() - retained;
+            cost.rows = result.size();
+
+            PersistenceContext context = bound.unwrap(SessionImplementor.class).getPersistenceContext();
+            cost.snapshots = result.stream()
+                    .filter(m -> context.getEntry(m).getLoadedState() != null)
+                    .count();
+
+            long start = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                transactionTemplate.executeWithoutResult(status -> em.flush());
+            }
+            cost.flushNanos = System.nanoTime() - start;
+        });
+        return cost;
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static class SearchCost {
+        int rows;
+        long snapshots;
+        long allocatedBytes;
+        long retainedBytes;
+        long flushNanos;
+
+        @Override
+        public String toString() {
+            return String.format("rows=%d snapshots=%d allocated=%dKB retained=%dKB flush x20=%dms",
+                    rows, snapshots, allocatedBytes / 1024, retainedBytes / 1024, TimeUnit.NANOSECONDS.toMillis(flushNanos));
+        }
+    }
+
+    /**
+     * open-in-view 처럼 EntityManager 를 스레드에 묶어 두고 실행한다.
+     */
+    private void withBoundEntityManager(Consumer<EntityManager> work) {
+        EntityManager bound = emf.createEntityManager();
+        TransactionSynchronizationManager.bindResource(emf, new EntityManagerHolder(bound));
+        try {
+            work.accept(bound);
+        } finally {
+            TransactionSynchronizationManager.unbindResource(emf);
+            bound.close();
+        }
+    }
+
+    @Test
+    public void windowFunctionTest() throws Exception {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        int[] ages = {10, 40, 40, 20, 35, 30};
+        for (int i = 0; i < ages.length; i++) {
+            em.persist(new Member("member" + i, ages[i], teamA));
+            em.persist(new Member("other" + i, ages[i] + i, teamB));
+        }
+        em.persist(new Member("noTeam", 99));
+
+        // 상관 서브쿼리로 같은 결과를 구해서 비교한다.
+        QMember other = new QMember("other");
+        QMemberTeamDto projection = new QMemberTeamDto(member.id, member.username, member.age, QTeam.team.id, QTeam.team.name);
+        List<MemberTeamDto> oldest = queryFactory()
+                .select(projection)
+                .from(member)
+                .join(member.team, QTeam.team)
+                .where(JPAExpressions.select(other.count())
+                        .from(other)
+                        .where(other.team.eq(member.team),
+                                other.age.gt(member.age).or(other.age.eq(member.age).and(other.id.lt(member.id))))
+                        .lt(3L))
+                .orderBy(QTeam.team.name.asc(), QTeam.team.id.asc(), member.age.desc(), member.id.asc())
+                .fetch();
+        List<MemberTeamDto> aboveAverage = queryFactory()
+                .select(projection)
+                .from(member)
+                .join(member.team, QTeam.team)
+                .where(member.age.gt(JPAExpressions.select(other.age.avg()).from(other).where(other.team.eq(member.team))))
+                .orderBy(QTeam.team.name.asc(), QTeam.team.id.asc(), member.age.desc(), member.id.asc())
+                .fetch();
+
+        assertThat(memberJpaRepository.oldestMembersPerTeam(3)).containsExactlyElementsOf(oldest);
+        assertThat(memberJpaRepository.membersAboveTeamAverage()).containsExactlyElementsOf(aboveAverage);
+        assertThat(oldest).extracting("username").startsWith("member1", "member2", "member4");
+        assertThat(aboveAverage).filteredOn("teamName", "teamA").extracting("age").containsExactly(40, 40, 35, 30);
+    }
+
+    @Test
+    public void findTeamMembersTest() throws Exception {
+        Team teamA = new Team("teamA");
+        Team teamB = new Team("teamB");
+        em.persist(teamA);
+        em.persist(teamB);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Member member = new Member("member" + i, 10 + i, teamA);
+            em.persist(member);
+            ids.add(member.getId());
+            em.persist(new Member("other" + i, 10 + i, teamB));
+        }
+        em.flush();
+        em.clear();
+
+        // 2명씩 keyset 페이징
+        List<Long> found = new ArrayList<>();
+        long after = 0;
+        TeamMemberPage page;
+        while (!(page = memberJpaRepository.findTeamMembers(teamA.getId(), after, 2)).getMembers().isEmpty()) {
+            assertThat(page.getMembers()).hasSizeLessThanOrEqualTo(2).extracting("teamName").containsOnly("teamA");
+            page.getMembers().forEach(m -> found.add(m.getMemberId()));
+            after = page.getNext();
+        }
+        assertThat(found).containsExactlyElementsOf(ids);
+        assertEquals(after, page.getNext());
+
+        // getReference 로 옮기므로 Team.members 는 로딩되지 않는다
+        memberJpaRepository.changeTeam(ids.get(0), teamB.getId());
+        Team moved = em.find(Member.class, ids.get(0)).getTeam();
+        assertFalse(Hibernate.isInitialized(moved.getMembers()));
+        assertEquals(6, moved.getMembers().size());
+        assertThat(memberJpaRepository.findTeamMembers(teamA.getId(), 0, 10).getMembers()).hasSize(4);
+    }
+
+    @Test
+    public void findAllByIdsTest() throws Exception {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        Member member1 = new Member("member1", 10, teamA);
+        Member member2 = new Member("member2", 20, teamA);
+        Member member3 = new Member("member3", 30, teamA);
+        em.persist(member1);
+        em.persist(member2);
+        em.persist(member3);
+        em.flush();
+        em.clear();
+
+        Member managed = em.find(Member.class, member1.getId());
+
+        IdLookup<Member> result = memberJpaRepository.findAllByIds(
+                Arrays.asList(member3.getId(), -1L, member1.getId(), member2.getId(), member3.getId()));
+
+        assertThat(result.getFound()).extracting("username").containsExactly("member3", "member1", "member2");
+        assertThat(result.getFound().get(1)).isSameAs(managed);
+        assertThat(result.getMissing()).containsExactly(-1L);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void findAllMemberTeamDtoByIdsTest() throws Exception {
+        // 청크별 커넥션에서 보이도록 커밋한다.
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team team = data.team("teamA", 1100, (i, teamA) -> new Member("member" + i, i % 100, teamA));
+
+            List<Long> ids = new ArrayList<>(queryFactory().select(member.id).from(member)
+                    .where(member.team.id.eq(team.getId()))
+                    .fetch());
+            Collections.reverse(ids);
+            List<Long> request = new ArrayList<>(ids);
+            request.add(-1L);
+
+            IdLookup<MemberTeamDto> result = memberJpaRepository.findAllMemberTeamDtoByIds(request);
+
+            assertThat(result.getFound()).extracting("memberId").containsExactlyElementsOf(ids);
+            assertThat(result.getFound()).allMatch(dto -> "teamA".equals(dto.getTeamName()));
+            assertThat(result.getMissing()).containsExactly(-1L);
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void findMemberTeamDtoByIdCoalescingTest() throws Exception {
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team team = data.team("teamA", 50, (i, teamA) -> new Member("member" + i, i, teamA));
+
+            List<Long> ids = queryFactory().select(member.id).from(member)
+                    .where(member.team.id.eq(team.getId()))
+                    .fetch();
+            double batchesBefore = batchCount();
+
+            ExecutorService callers = Executors.newFixedThreadPool(16);
+            try {
+                List<Future<Optional<MemberTeamDto>>> futures = new ArrayList<>();
+                for (Long id : ids) {
+                    futures.add(callers.submit(() -> memberJpaRepository.findMemberTeamDtoById(id)));
+                    futures.add(callers.submit(() -> memberJpaRepository.findMemberTeamDtoById(id)));
+                }
+                futures.add(callers.submit(() -> memberJpaRepository.findMemberTeamDtoById(-1L)));
+
+                for (int i = 0; i < ids.size(); i++) {
+                    assertThat(futures.get(i * 2).get()).get().extracting("memberId").isEqualTo(ids.get(i));
+                    assertThat(futures.get(i * 2 + 1).get()).get().extracting("teamName").isEqualTo("teamA");
+                }
+                assertThat(futures.get(futures.size() - 1).get()).isEmpty();
+            } finally {
+                callers.shutdownNow();
+            }
+
+            // 101 번의 조회가 그보다 훨씬 적은 IN 쿼리로 묶인다.
+            assertThat(batchCount() - batchesBefore).isLessThan(ids.size());
+        }
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void findByIdCoalescingTest() throws Exception {
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team team = data.team("teamA", 20, (i, teamA) -> new Member("member" + i, i, teamA));
+
+            List<Long> ids = queryFactory().select(member.id).from(member)
+                    .where(member.team.id.eq(team.getId()))
+                    .orderBy(member.id.asc())
+                    .fetch();
+            double batchesBefore = batchCount("member");
+
+            // 트랜잭션 밖에서는 CoalescingLoader 로 묶고, 준영속 엔티티를 돌려준다.
+            ExecutorService callers = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<Optional<Member>>> futures = new ArrayList<>();
+                for (Long id : ids) {
+                    futures.add(callers.submit(() -> memberJpaRepository.findById(id)));
+                }
+                for (int i = 0; i < ids.size(); i++) {
+                    Member found = futures.get(i).get().orElseThrow();
+                    assertThat(found.getUsername()).isEqualTo("member" + i);
+                    assertThat(Hibernate.isInitialized(found.getTeam())).isFalse();
+                }
+            } finally {
+                callers.shutdownNow();
+            }
+            assertThat(memberJpaRepository.findById(-1L)).isEmpty();
+            assertThat(batchCount("member") - batchesBefore).isBetween(1.0, ids.size() + 1.0);
+
+            // 트랜잭션 안에서는 현재 영속성 컨텍스트로 조회한다.
+            double batchesOutside = batchCount("member");
+            transactionTemplate.executeWithoutResult(status -> {
+                Member found = memberJpaRepository.findById(ids.get(0)).orElseThrow();
+                assertThat(em.contains(found)).isTrue();
+            });
+            assertThat(batchCount("member")).isEqualTo(batchesOutside);
+        }
+    }
+
+    private double batchCount() {
+        return batchCount("memberTeamDto");
+    }
+
+    private double batchCount(String loader) {
+        return meterRegistry.get("loader.batch.size").tag("loader", loader).summary().count();
+    }
+
+    private JPAQueryFactory queryFactory() {
+        return new JPAQueryFactory(em);
+    }
+
+}
@@ -1,20 +1,29 @@
 package study.querydsl.repository;
 
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import study.querydsl.dto.MemberSearchCondition;
 import study.querydsl.dto.MemberTeamDto;
 import study.querydsl.entity.Member;
 import study.querydsl.entity.QMember;
+import study.querydsl.entity.QTeam;
 import study.querydsl.entity.Team;
+import study.querydsl.metrics.QueryPlanCacheMetrics;
+import study.querydsl.search.MemberColumnStore;
 
 import javax.persistence.EntityManager;
 import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,6 +39,18 @@ class MemberRepositoryTest {
     @Autowired
     private MemberRepository memberRepository;
 
+    @Autowired
+    private QueryPlanCacheMetrics queryPlanCacheMetrics;
+
+    @Autowired
+    private MemberColumnStore memberColumnStore;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Test
     public void basicTest() throws Exception {
         Member member = new Member("member1", 10);
@@ -168,4 +189,104 @@ class MemberRepositoryTest {
             System.out.println("member : " + findMember);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void inClausePaddingTest() throws Exception {
+        // given
+        for (int i = 0; i < 100; i++) {
+            em.persist(new Member("member" + i, i));
+        }
+        em.flush();
+        em.clear();
+        Random random = new Random(0);
+
+        // when : 1 ~ 500 개의 무작위 길이 IN 리스트로 300번 조회
+        int before = queryPlanCacheMetrics.size();
+        for (int i = 0; i < 300; i++) {
+            List<Long> ids = random.longs(random.nextInt(500) + 1, 0, 1000).boxed().collect(Collectors.toList());
+            List<String> usernames = ids.stream().map(id -> "member" + id).collect(Collectors.toList());
+            memberRepository.findAll(member.id.in(ids).or(member.username.in(usernames)));
+        }
+        int after = queryPlanCacheMetrics.size();
+
+        // then : 길이가 2의 거듭제곱으로 패딩되므로 (1 ~ 512) x (1 ~ 512) 조합 이하로만 늘어난다.
+        System.out.println("query plan cache size : " + before + " -> " + after + ", hit ratio : " + queryPlanCacheMetrics.hitRatio());
+        assertThat(after - before).isLessThanOrEqualTo(10 * 10);
+        assertThat(meterRegistry.get("hibernate.query.plan.cache.size").gauge().value()).isPositive();
+        assertThat(meterRegistry.get("hibernate.query.plan.cache.evictions").gauge().value()).isNotNegative();
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void columnStoreSearchTest() throws Exception {
+        Team[] teams = transactionTemplate.execute(status -> {
+            Team teamA = new Team("columnTeamA");
+            Team teamB = new Team("columnTeamB");
+            em.persist(teamA);
+            em.persist(teamB);
+            for (int i = 0; i < 40; i++) {
+                em.persist(new Member("column" + (i % 10), i, i % 2 == 0 ? teamA : teamB));
+            }
+            return new Team[]{teamA, teamB};
+        });
+
+        try {
+            awaitColumnStore();
+            assertSameAsDatabase(teams);
+
+            // 커밋된 변경(insert / update / team 변경 / delete / 팀 이름 변경)이 반영된다.
+            transactionTemplate.executeWithoutResult(status -> {
+                Team teamA = em.find(Team.class, teams[0].getId());
+                Team teamB = em.find(Team.class, teams[1].getId());
+                em.persist(new Member("column-new", 25, teamA));
+                Member moved = new JPAQueryFactory(em).selectFrom(member)
+                        .where(member.username.eq("column1"), member.team.eq(teamB))
+                        .fetchFirst();
+                moved.setAge(99);
+                moved.setTeam(teamA);
+                em.remove(new JPAQueryFactory(em).selectFrom(member)
+                        .where(member.username.eq("column2"))
+                        .fetchFirst());
+                teamB.setName("columnTeamC");
+            });
+            assertSameAsDatabase(teams);
+            assertThat(memberRepository.search(condition(null, "columnTeamC", null, null))).hasSize(19);
+        } finally {
+            transactionTemplate.executeWithoutResult(status -> {
+                new JPAQueryFactory(em).delete(member).where(member.team.id.in(teams[0].getId(), teams[1].getId())).execute();
+                new JPAQueryFactory(em).delete(QTeam.team).where(QTeam.team.id.in(teams[0].getId(), teams[1].getId())).execute();
+            });
+        }
+    }
+
+    private void assertSameAsDatabase(Team[] teams) {
+        List<MemberSearchCondition> conditions = List.of(
+                condition("column3", null, null, null),
+                condition("column3", "columnTeamB", null, null),
+                condition(null, "columnTeamA", 10, 30),
+                condition(null, null, 35, null),
+                condition("missing", null, null, null),
+                condition(null, "missing", null, null));
+        for (MemberSearchCondition condition : conditions) {
+            List<MemberTeamDto> fromColumnStore = memberRepository.search(condition);
+            List<MemberTeamDto> fromDatabase = transactionTemplate.execute(status -> memberRepository.search(condition));
+            assertThat(fromColumnStore).as(condition.toString()).containsExactlyInAnyOrderElementsOf(fromDatabase);
+        }
+    }
+
+    private void awaitColumnStore() throws InterruptedException {
+        for (int i = 0; i < 100 && !memberColumnStore.isWarm(); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(memberColumnStore.isWarm()).isTrue();
+    }
+
+    private static MemberSearchCondition condition(String username, String teamName, Integer ageGoe, Integer ageLoe) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setUsername(username);
+        condition.setTeamName(teamName);
+        condition.setAgeGoe(ageGoe);
+        condition.setAgeLoe(ageLoe);
+        return condition;
+    }
+}
@@ -0,0 +1,84 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.CommittedData;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+class MemberWriteBufferTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Test
+    public void saveAsyncTest() throws Exception {
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team team = data.team("teamA");
+            double batchesBefore = meterRegistry.get("member.write.buffer.batch.size").summary().count();
+
+            List<CompletableFuture<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                futures.add(memberJpaRepository.saveAsync(new Member("member" + i, i % 100, team)));
+            }
+            // 한 건이 실패해도 같은 묶음의 나머지는 저장된다.
+            CompletableFuture<Long> tooLong = memberJpaRepository.saveAsync(new Member("x".repeat(300), 1, team));
+            futures.add(memberJpaRepository.saveAsync(new Member("member1000", 0, team)));
+
+            List<Long> ids = new ArrayList<>();
+            for (CompletableFuture<Long> future : futures) {
+                ids.add(future.get(30, TimeUnit.SECONDS));
+            }
+            assertThatThrownBy(() -> tooLong.get(30, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+
+            // 커밋 순서 = 호출 순서
+            assertThat(ids).isSorted().doesNotHaveDuplicates();
+            List<Long> saved = new JPAQueryFactory(em).select(member.id).from(member)
+                    .where(member.team.id.eq(team.getId()))
+                    .orderBy(member.id.asc())
+                    .fetch();
+            assertThat(saved).containsExactlyElementsOf(ids);
+            assertThat(meterRegistry.get("member.write.buffer.batch.size").summary().count() - batchesBefore).isLessThan(1001);
+        }
+    }
+
+    @Test
+    public void disabledTest() throws Exception {
+        MemberWriteBuffer disabled = new MemberWriteBuffer(em, transactionTemplate, new SimpleMeterRegistry(),
+                false, 10, 500, 2000, 1000);
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team team = data.team("teamB");
+            // 꺼져 있으면 writer 스레드 없이 호출한 스레드에서 바로 커밋한다.
+            CompletableFuture<Long> saved = disabled.save(new Member("member1", 10, team));
+            assertThat(saved).isCompleted();
+            assertThat(em.find(Member.class, saved.get())).isNotNull();
+        } finally {
+            disabled.shutdown();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package study.querydsl.repository;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.CommittedData;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+class PartitionedScanTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    EntityManagerFactory emf;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Test
+    public void partitionedScanTest() throws Exception {
+        // 범위별 커넥션에서 보이도록 커밋한다.
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team team = data.team("teamA", 1100, (i, teamA) -> new Member("member" + i, i % 100, teamA));
+
+            List<Long> expected = new JPAQueryFactory(em).select(member.id).from(member)
+                    .where(member.team.id.eq(team.getId()), member.age.goe(50))
+                    .orderBy(member.id.asc())
+                    .fetch();
+
+            PartitionedScan scan = new PartitionedScan(emf, 3, 100);
+            try {
+                scan(scan, team, expected);
+            } finally {
+                scan.shutdown();
+            }
+
+            MemberSearchCondition condition = new MemberSearchCondition();
+            condition.setTeamName("teamA");
+            condition.setAgeGoe(50);
+            try (Stream<MemberTeamDto> exported = memberJpaRepository.export(condition)) {
+                assertThat(exported.collect(Collectors.toList())).extracting("memberId").containsExactlyElementsOf(expected);
+            }
+        }
+    }
+
+    private void scan(PartitionedScan scan, Team team, List<Long> expected) {
+        assertThat(scan.ranges(member.team.id.eq(team.getId()))).hasSizeGreaterThan(10);
+        try (Stream<Long> ordered = scan.ordered(member.id, member.team.id.eq(team.getId()), member.age.goe(50))) {
+            assertThat(ordered.collect(Collectors.toList())).containsExactlyElementsOf(expected);
+        }
+
+        List<Long> unordered = Collections.synchronizedList(new ArrayList<>());
+        scan.forEach(member.id, unordered::addAll, member.team.id.eq(team.getId()), member.age.goe(50));
+        assertThat(unordered).containsExactlyInAnyOrderElementsOf(expected);
+
+        // 동시에 처리 중인 범위는 parallelism 개를 넘지 않고, 공유 parallel-query 스레드는 쓰지 않는다.
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        scan.forEach(member.id, rows -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            threads.add(Thread.currentThread().getName());
+            running.decrementAndGet();
+        }, member.team.id.eq(team.getId()));
+        assertThat(maxRunning.get()).isBetween(1, 3);
+        assertThat(threads).noneMatch(name -> name.startsWith("parallel-query"));
+    }
+}
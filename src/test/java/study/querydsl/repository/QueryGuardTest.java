@@ -0,0 +1,79 @@
+package study.querydsl.repository;
+
+import com.mysema.commons.lang.CloseableIterator;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QTeam;
+import study.querydsl.entity.Team;
+
+import javax.persistence.EntityManager;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+@Transactional
+class QueryGuardTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void queryGuardTest() throws Exception {
+        Team teamA = new Team("teamA");
+        em.persist(teamA);
+        for (int i = 0; i < 10; i++) {
+            em.persist(new Member("member" + i, i, teamA));
+        }
+        double limitedBefore = meterRegistry.get("query.guard.violations").tags("type", "unbounded", "action", "limited").counter().count();
+
+        ReadOnlyQueryFactory limiting = new ReadOnlyQueryFactory(em, new QueryGuard(meterRegistry, 5, "limit", "reject"));
+        ReadOnlyQueryFactory rejecting = new ReadOnlyQueryFactory(em, new QueryGuard(meterRegistry, 5, "reject", "report"));
+
+        // 행 수 제한
+        assertThat(limiting.selectFrom(member).fetch()).hasSize(5);
+        assertThat(meterRegistry.get("query.guard.violations").tags("type", "unbounded", "action", "limited").counter().count())
+                .isEqualTo(limitedBefore + 1);
+        assertThatThrownBy(() -> rejecting.selectFrom(member).fetch()).isInstanceOf(QueryGuardException.class);
+        assertThat(rejecting.selectFrom(member).limit(3).fetch()).hasSize(3);
+        assertThat(rejecting.selectFrom(member).where(member.age.lt(5)).fetch()).hasSize(5);
+        assertThat(rejecting.select(member.count()).from(member).fetchOne()).isGreaterThanOrEqualTo(10L);
+
+        // iterate / stream 도 같은 정책. max-rows 전에 멈추면 위반이 아니다.
+        try (Stream<Member> rows = limiting.selectFrom(member).stream()) {
+            assertThat(rows.collect(Collectors.toList())).hasSize(5);
+        }
+        assertThat(meterRegistry.get("query.guard.violations").tags("type", "unbounded", "action", "limited").counter().count())
+                .isEqualTo(limitedBefore + 2);
+        try (Stream<Member> rows = rejecting.selectFrom(member).stream()) {
+            assertThatThrownBy(() -> rows.collect(Collectors.toList())).isInstanceOf(QueryGuardException.class);
+        }
+        try (Stream<Member> rows = rejecting.selectFrom(member).stream()) {
+            assertThat(rows.limit(5).count()).isEqualTo(5);
+        }
+        try (CloseableIterator<Member> rows = rejecting.selectFrom(member).iterate()) {
+            for (int i = 0; i < 5; i++) {
+                rows.next();
+            }
+            assertThatThrownBy(rows::hasNext).isInstanceOf(QueryGuardException.class);
+        }
+
+        // 카테시안 조인
+        assertThatThrownBy(() -> limiting.select(member.id).from(member, QTeam.team).fetch())
+                .isInstanceOf(QueryGuardException.class);
+        assertThatThrownBy(() -> limiting.select(member.id).from(member, QTeam.team).where(QTeam.team.name.eq("teamA")).fetch())
+                .isInstanceOf(QueryGuardException.class);
+        assertThat(limiting.select(member.id).from(member, QTeam.team).where(member.username.eq(QTeam.team.name)).fetch()).isEmpty();
+        assertThat(limiting.select(member.id).from(member).join(member.team, QTeam.team).where(QTeam.team.name.eq("teamA")).fetch()).hasSize(5);
+        assertThat(limiting.select(member.id).from(member).join(QTeam.team).on(member.team.eq(QTeam.team)).where(member.age.lt(3)).fetch()).hasSize(3);
+    }
+}
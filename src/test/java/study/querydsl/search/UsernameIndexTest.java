@@ -0,0 +1,84 @@
+package study.querydsl.search;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.CommittedData;
+import study.querydsl.dto.MemberUsernameDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+
+import javax.persistence.EntityManager;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+class UsernameIndexTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    UsernameIndex usernameIndex;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Test
+    public void searchUsernamePrefixTest() throws Exception {
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            String[] usernames = {"auto-b", "auto-a", "autumn"};
+            Team team = data.team("teamA", usernames.length, (i, teamA) -> new Member(usernames[i], (i + 1) * 10, teamA));
+
+            awaitUsernameIndex();
+            assertThat(memberJpaRepository.searchUsernamePrefix("auto-", 10))
+                    .extracting("username").containsExactly("auto-a", "auto-b");
+
+            // 엔티티 insert / update / delete 는 커밋 후 인덱스에 바로 반영
+            Long memberId = transactionTemplate.execute(status -> {
+                Member member = new Member("auto-c", 40, em.find(Team.class, team.getId()));
+                em.persist(member);
+                return member.getId();
+            });
+            assertThat(memberJpaRepository.searchUsernamePrefix("auto-", 2))
+                    .extracting("username").containsExactly("auto-a", "auto-b");
+            assertThat(memberJpaRepository.searchUsernamePrefix("auto-c", 10))
+                    .extracting("memberId").containsExactly(memberId);
+
+            transactionTemplate.executeWithoutResult(status -> em.find(Member.class, memberId).setUsername("auto-0"));
+            assertThat(memberJpaRepository.searchUsernamePrefix("auto-", 10))
+                    .extracting("username").containsExactly("auto-0", "auto-a", "auto-b");
+
+            transactionTemplate.executeWithoutResult(status -> em.remove(em.find(Member.class, memberId)));
+            assertThat(memberJpaRepository.searchUsernamePrefix("auto-", 10))
+                    .extracting("username").containsExactly("auto-a", "auto-b");
+
+            // bulk DML 은 커밋 후 다시 적재
+            transactionTemplate.execute(status -> new JPAQueryFactory(em).update(member)
+                    .set(member.username, member.username.concat("-x"))
+                    .where(member.username.eq("auto-a"))
+                    .execute());
+            awaitUsernameIndex();
+            assertThat(memberJpaRepository.searchUsernamePrefix("auto-", 10))
+                    .extracting("username").containsExactly("auto-a-x", "auto-b");
+
+            // 트랜잭션 안에서는 like 'prefix%' 쿼리로 조회
+            List<MemberUsernameDto> inTransaction = transactionTemplate.execute(status ->
+                    memberJpaRepository.searchUsernamePrefix("aut", 10));
+            assertThat(inTransaction).extracting("username").containsExactly("auto-a-x", "auto-b", "autumn");
+        }
+    }
+
+    private void awaitUsernameIndex() throws InterruptedException {
+        assertThat(usernameIndex.awaitWarm(10, TimeUnit.SECONDS)).as("username index loaded within 10s").isTrue();
+    }
+}
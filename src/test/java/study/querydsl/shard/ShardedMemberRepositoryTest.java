@@ -0,0 +1,237 @@
+package study.querydsl.shard;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import study.querydsl.CommittedData;
+import study.querydsl.controller.MemberController;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.dto.MemberTeamDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.QueryGuard;
+import study.querydsl.repository.QueryGuardException;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SpringBootTest(properties = "member-shards.count=3")
+class ShardedMemberRepositoryTest {
+
+    @Autowired
+    MemberShards memberShards;
+
+    @Autowired
+    ShardedMemberRepository shardedMemberRepository;
+
+    @Autowired
+    MemberController memberController;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    private final List<MemberTeamDto> saved = new ArrayList<>();
+    private String prefix;
+
+    @BeforeEach
+    public void before() {
+        // 샤드 DB 는 테스트끼리 공유하므로 이름을 구분한다.
+        prefix = "t" + System.nanoTime() + "-";
+        List<Team> teams = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            teams.add(shardedMemberRepository.saveTeam(new Team(prefix + "team" + i)));
+        }
+        for (int i = 0; i < 40; i++) {
+            Team team = i % 10 == 9 ? null : teams.get(i % 4);
+            Member member = new Member(prefix + "member" + i, i % 13, team);
+            Long id = shardedMemberRepository.save(member);
+            saved.add(new MemberTeamDto(id, member.getUsername(), member.getAge(),
+                    team == null ? null : team.getId(), team == null ? null : team.getName()));
+        }
+    }
+
+    @Test
+    public void placementTest() throws Exception {
+        assertThat(memberShards.size()).isEqualTo(3);
+        for (MemberTeamDto dto : saved) {
+            int shard = memberShards.shardOf(dto.getMemberId());
+            if (dto.getTeamId() != null) {
+                assertThat(shard).isEqualTo(memberShards.shardOf(dto.getTeamId()));
+            }
+            Long stored = memberShards.query(shard, em -> em.createQuery(
+                            "select count(m) from Member m where m.id = :id", Long.class)
+                    .setParameter("id", dto.getMemberId())
+                    .getSingleResult());
+            assertThat(stored).isEqualTo(1L);
+            assertThat(shardedMemberRepository.findMemberTeamDtoById(dto.getMemberId())).contains(dto);
+        }
+        // Team 은 모든 샤드에 복제된다.
+        List<Long> teams = memberShards.scatter(List.of(0, 1, 2), em -> em.createQuery(
+                        "select count(t) from Team t where t.name like :prefix", Long.class)
+                .setParameter("prefix", prefix + "%")
+                .getSingleResult());
+        assertThat(teams).containsExactly(4L, 4L, 4L);
+    }
+
+    @Test
+    public void searchTest() throws Exception {
+        MemberSearchCondition byTeam = new MemberSearchCondition();
+        byTeam.setTeamName(prefix + "team1");
+        byTeam.setAgeGoe(5);
+        assertThat(shardedMemberRepository.route(byTeam)).hasSize(1);
+        assertThat(shardedMemberRepository.search(byTeam)).containsExactlyElementsOf(saved.stream()
+                .filter(dto -> byTeam.getTeamName().equals(dto.getTeamName()) && dto.getAge() >= 5)
+                .collect(Collectors.toList()));
+
+        MemberSearchCondition noTeam = new MemberSearchCondition();
+        noTeam.setTeamName(prefix + "none");
+        assertThat(shardedMemberRepository.route(noTeam)).isEmpty();
+        assertThat(shardedMemberRepository.search(noTeam)).isEmpty();
+
+        // 팀 이름이 없으면 모든 샤드를 읽어 member_id 순으로 합친다.
+        MemberSearchCondition byAge = new MemberSearchCondition();
+        byAge.setAgeLoe(6);
+        assertThat(shardedMemberRepository.route(byAge)).containsExactly(0, 1, 2);
+        List<MemberTeamDto> result = shardedMemberRepository.search(byAge).stream()
+                .filter(dto -> dto.getUsername().startsWith(prefix))
+                .collect(Collectors.toList());
+        assertThat(result).containsExactlyElementsOf(saved.stream()
+                .filter(dto -> dto.getAge() <= 6)
+                .sorted(Comparator.comparing(MemberTeamDto::getMemberId))
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void searchPageComplexTest() throws Exception {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setAgeGoe(2);
+        List<MemberTeamDto> all = shardedMemberRepository.search(condition);
+        List<MemberTeamDto> expected = all.stream()
+                .sorted(Comparator.comparing(MemberTeamDto::getAge).reversed()
+                        .thenComparing(MemberTeamDto::getTeamName, Comparator.nullsFirst(Comparator.naturalOrder()))
+                        .thenComparing(MemberTeamDto::getMemberId))
+                .collect(Collectors.toList());
+
+        for (int page = 0; page * 7 < expected.size() + 7; page++) {
+            Page<MemberTeamDto> result = shardedMemberRepository.searchPageComplex(condition,
+                    PageRequest.of(page, 7, Sort.by(Sort.Order.desc("age"), Sort.Order.asc("teamName"))));
+            assertThat(result.getTotalElements()).isEqualTo(expected.size());
+            assertThat(result.getContent()).containsExactlyElementsOf(
+                    expected.subList(Math.min(page * 7, expected.size()), Math.min(page * 7 + 7, expected.size())));
+        }
+
+        // 한 샤드로 가는 검색은 그 샤드에서 바로 자른다.
+        MemberSearchCondition byTeam = new MemberSearchCondition();
+        byTeam.setTeamName(prefix + "team2");
+        Page<MemberTeamDto> single = shardedMemberRepository.searchPageComplex(byTeam, PageRequest.of(1, 3, Sort.by("username")));
+        List<MemberTeamDto> team2 = saved.stream()
+                .filter(dto -> byTeam.getTeamName().equals(dto.getTeamName()))
+                .sorted(Comparator.comparing(MemberTeamDto::getUsername))
+                .collect(Collectors.toList());
+        assertThat(single.getTotalElements()).isEqualTo(team2.size());
+        assertThat(single.getContent()).containsExactlyElementsOf(team2.subList(3, 6));
+
+        assertThatThrownBy(() -> shardedMemberRepository.searchPageComplex(condition, PageRequest.of(10_000, 10)))
+                .isInstanceOf(QueryGuardException.class);
+        assertThatThrownBy(() -> shardedMemberRepository.searchPageComplex(condition, PageRequest.of(0, 10, Sort.by("team.members"))))
+                .isInstanceOf(InvalidDataAccessApiUsageException.class);
+    }
+
+    @Test
+    public void mergedRowLimitTest() throws Exception {
+        MemberSearchCondition all = new MemberSearchCondition();
+        List<MemberTeamDto> firstIds = shardedMemberRepository.search(all).subList(0, 10);
+
+        // 샤드마다 10 건 이하여도 합친 결과가 10 건을 넘으면 같은 on-exceed 를 따른다.
+        ShardedMemberRepository limited = new ShardedMemberRepository(memberShards,
+                new QueryGuard(new SimpleMeterRegistry(), 10, "limit", "reject"), new SimpleMeterRegistry());
+        assertThat(limited.search(all)).containsExactlyElementsOf(firstIds);
+
+        ShardedMemberRepository rejecting = new ShardedMemberRepository(memberShards,
+                new QueryGuard(new SimpleMeterRegistry(), 10, "reject", "reject"), new SimpleMeterRegistry());
+        assertThatThrownBy(() -> rejecting.search(all)).isInstanceOf(QueryGuardException.class);
+    }
+
+    @Test
+    public void searchPageSimpleTest() throws Exception {
+        MemberSearchCondition byTeam = new MemberSearchCondition();
+        byTeam.setTeamName(prefix + "team1");
+        List<MemberTeamDto> team = saved.stream()
+                .filter(dto -> byTeam.getTeamName().equals(dto.getTeamName()))
+                .collect(Collectors.toList());
+        Page<MemberTeamDto> page = shardedMemberRepository.searchPageSimple(byTeam, PageRequest.of(1, 3));
+        assertThat(page.getContent()).containsExactlyElementsOf(team.subList(3, 6));
+        assertThat(page.getTotalElements()).as("total is this page's size, like MemberRepository").isEqualTo(6);
+
+        MemberSearchCondition all = new MemberSearchCondition();
+        all.setAgeLoe(12);
+        assertThat(shardedMemberRepository.searchPageSimple(all, PageRequest.of(0, 5)).getContent())
+                .containsExactlyElementsOf(shardedMemberRepository.search(all).subList(0, 5));
+    }
+
+    @Test
+    public void controllerTest() throws Exception {
+        // 샤드를 켜도 /v1 ~ /v3 검색과 id 조회는 기본 DB 에 저장한 회원을 읽는다. (샤드에만 있는 회원은 보이지 않는다)
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team team = data.team(prefix + "primary", 5, (i, t) -> new Member(prefix + "primary" + i, i, t));
+            List<MemberTeamDto> members = memberJpaRepository.search(byTeamName(team.getName()));
+            assertThat(members).hasSize(5);
+
+            MemberTeamDto first = members.get(0);
+            assertThat(memberController.findMemberV1(first.getMemberId()).getBody()).isEqualTo(first);
+            assertThat(call(memberController.searchMemberV1(byTeamName(team.getName())))).containsExactlyElementsOf(members);
+
+            Page<MemberTeamDto> simple = call(memberController.searchMemberV2(byTeamName(team.getName()), PageRequest.of(0, 3)));
+            assertThat(simple.getContent()).containsExactlyElementsOf(members.subList(0, 3));
+
+            Page<MemberTeamDto> complex = call(memberController.searchMemberV3(byTeamName(team.getName()), PageRequest.of(1, 3)));
+            assertThat(complex.getContent()).containsExactlyElementsOf(members.subList(3, 5));
+            assertThat(complex.getTotalElements()).isEqualTo(5);
+
+            assertThat(call(memberController.searchMemberV1(byTeamName(saved.get(0).getTeamName())))).isEmpty();
+        }
+    }
+
+    @Test
+    public void mergeTest() throws Exception {
+        List<List<Integer>> sorted = List.of(List.of(1, 4, 7), List.of(2, 5), List.of(), List.of(3, 6, 8, 9));
+        assertThat(ShardedMemberRepository.merge(sorted, Comparator.naturalOrder(), 0, Integer.MAX_VALUE))
+                .containsExactly(1, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertThat(ShardedMemberRepository.merge(sorted, Comparator.naturalOrder(), 3, 4))
+                .containsExactly(4, 5, 6, 7);
+    }
+
+    private static MemberSearchCondition byTeamName(String teamName) {
+        MemberSearchCondition condition = new MemberSearchCondition();
+        condition.setTeamName(teamName);
+        return condition;
+    }
+
+    /**
+     * 컨트롤러가 돌려준 WebAsyncTask 를 현재 스레드에서 실행한다.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T call(WebAsyncTask<T> task) throws Exception {
+        return (T) task.getCallable().call();
+    }
+}
@@ -0,0 +1,40 @@
+package study.querydsl.startup;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.HealthEndpoint;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+
+@SpringBootTest
+class WarmUpTest {
+
+    @Autowired
+    WarmUp warmUp;
+
+    @Autowired
+    HealthEndpoint healthEndpoint;
+
+    @Autowired
+    MeterRegistry registry;
+
+    @Test
+    public void warmUpTest() throws Exception {
+        assertThat(warmUp.await(30, TimeUnit.SECONDS)).isTrue();
+
+        // 스레드 1 x 반복 2 x (검색 2 x 호출 5 + prefix 1 + teamStats 1)
+        assertThat(warmUp.getCalls()).isEqualTo(24);
+        assertThat(warmUp.getFailures()).isZero();
+        assertThat(warmUp.getMillis()).isGreaterThanOrEqualTo(0);
+        assertThat(registry.get("startup.warmup").timer().count()).isEqualTo(1);
+
+        // 끝난 뒤에는 readiness group 도 UP
+        assertThat(warmUp.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(healthEndpoint.healthForPath("readiness").getStatus()).isEqualTo(Status.UP);
+    }
+}
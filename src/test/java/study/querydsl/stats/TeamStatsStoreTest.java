@@ -0,0 +1,150 @@
+package study.querydsl.stats;
+
+import com.querydsl.jpa.impl.JPAQueryFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import study.querydsl.CommittedData;
+import study.querydsl.dto.TeamStatsDto;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.Team;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.ParallelQueryExecutor;
+import study.querydsl.search.MemberChangeSync;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+class TeamStatsStoreTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    TeamStatsStore teamStatsStore;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    MemberChangeSync memberChangeSync;
+
+    @Autowired
+    ParallelQueryExecutor parallelQueryExecutor;
+
+    @Test
+    public void teamStatsTest() throws Exception {
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team[] teams = {data.team("statsTeamA"), data.team("statsTeamB")};
+            data.commit(em -> {
+                for (int i = 0; i < 10; i++) {
+                    em.persist(new Member("stats" + i, i * 10, em.find(Team.class, teams[i % 2].getId())));
+                }
+                return null;
+            });
+
+            awaitTeamStats();
+            assertThat(statsOf(teamStatsStore.stats())).containsExactlyElementsOf(statsOf(memberJpaRepository.teamStats()));
+            assertThat(statsOf(teamStatsStore.stats())).extracting("teamName", "count", "sum", "max", "min")
+                    .containsExactly(tuple("statsTeamA", 5L, 200L, 80, 0), tuple("statsTeamB", 5L, 250L, 90, 10));
+
+            // insert / 나이 변경 / 팀 이동 / delete / 팀 이름 변경을 커밋마다 반영
+            transactionTemplate.executeWithoutResult(status -> {
+                Team teamA = em.find(Team.class, teams[0].getId());
+                Team teamB = em.find(Team.class, teams[1].getId());
+                em.persist(new Member("stats-new", 100, teamA));
+                Member moved = queryFactory().selectFrom(member).where(member.username.eq("stats0")).fetchOne();
+                moved.setAge(5);
+                moved.setTeam(teamB);
+                em.remove(queryFactory().selectFrom(member).where(member.username.eq("stats9")).fetchOne());
+                teamA.setName("statsTeamC");
+            });
+            assertThat(statsOf(teamStatsStore.stats())).containsExactlyElementsOf(statsOf(memberJpaRepository.teamStats()));
+            assertThat(statsOf(teamStatsStore.stats())).extracting("teamName", "max", "min")
+                    .containsExactly(tuple("statsTeamB", 70, 5), tuple("statsTeamC", 100, 20));
+            assertThat(teamStatsStore.reconcile()).isEmpty();
+
+            // bulk DML 은 커밋 후 다시 적재
+            transactionTemplate.execute(status -> queryFactory().update(member)
+                    .set(member.age, member.age.add(1))
+                    .where(member.team.id.in(teams[0].getId(), teams[1].getId()))
+                    .execute());
+            awaitTeamStats();
+            assertThat(statsOf(teamStatsStore.stats())).containsExactlyElementsOf(statsOf(memberJpaRepository.teamStats()));
+        }
+    }
+
+    @Test
+    public void commitDuringLoadTest() throws Exception {
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            Team team = data.team("statsTeamD", 3, (i, t) -> new Member("statsD" + i, 10, t));
+            awaitTeamStats();
+
+            // member / team 을 쓴 트랜잭션은 끝날 때까지 센다.
+            data.commit(em -> {
+                em.persist(new Member("statsD-w", 10, em.find(Team.class, team.getId())));
+                em.flush();
+                assertThat(memberChangeSync.isWriting()).isTrue();
+                return null;
+            });
+            assertThat(memberChangeSync.isWriting()).isFalse();
+
+            // parallel-query 스레드를 모두 붙잡아 적재를 늦춘다. 적재가 읽기 전에 커밋된 insert 는 replay 에도 들어간다.
+            CountDownLatch release = new CountDownLatch(1);
+            List<CompletableFuture<Object>> blockers = new ArrayList<>();
+            try {
+                for (int i = 0; i < parallelQueryExecutor.getParallelism(); i++) {
+                    blockers.add(parallelQueryExecutor.submit(em -> {
+                        try {
+                            release.await(10, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return null;
+                    }));
+                }
+                teamStatsStore.invalidate();
+                data.commit(em -> {
+                    em.persist(new Member("statsD-x", 20, em.find(Team.class, team.getId())));
+                    return null;
+                });
+            } finally {
+                release.countDown();
+            }
+            blockers.forEach(CompletableFuture::join);
+
+            // 그 적재는 버리고 다시 적재하므로 두 번 세지 않는다.
+            awaitTeamStats();
+            assertThat(statsOf(teamStatsStore.stats())).containsExactlyElementsOf(statsOf(memberJpaRepository.teamStats()));
+            assertThat(statsOf(teamStatsStore.stats())).extracting("teamName", "count", "sum")
+                    .contains(tuple("statsTeamD", 5L, 60L));
+        }
+    }
+
+    private static List<TeamStatsDto> statsOf(List<TeamStatsDto> stats) {
+        return stats.stream()
+                .filter(dto -> dto.getTeamName().startsWith("statsTeam"))
+                .collect(Collectors.toList());
+    }
+
+    private void awaitTeamStats() throws InterruptedException {
+        assertThat(teamStatsStore.awaitWarm(10, TimeUnit.SECONDS)).as("team stats store loaded within 10s").isTrue();
+    }
+
+    private JPAQueryFactory queryFactory() {
+        return new JPAQueryFactory(em);
+    }
+}
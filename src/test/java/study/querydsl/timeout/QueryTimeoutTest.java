@@ -0,0 +1,183 @@
+package study.querydsl.timeout;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import study.querydsl.CommittedData;
+import study.querydsl.dto.MemberSearchCondition;
+import study.querydsl.entity.Member;
+import study.querydsl.entity.QMember;
+import study.querydsl.repository.MemberJpaRepository;
+import study.querydsl.repository.QueryGuard;
+import study.querydsl.repository.ReadOnlyQueryFactory;
+
+import javax.persistence.EntityManager;
+import javax.servlet.AsyncEvent;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static study.querydsl.entity.QMember.member;
+
+@SpringBootTest
+class QueryTimeoutTest {
+
+    @Autowired
+    EntityManager em;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    MemberJpaRepository memberJpaRepository;
+
+    @Autowired
+    QueryTimeoutProperties queryTimeoutProperties;
+
+    @Autowired
+    QueryTimeouts queryTimeouts;
+
+    @Test
+    public void queryTimeoutTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // 다른 스레드의 세션에서 보이도록 커밋한다.
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            data.team("teamA", 1000, (i, team) -> new Member("member" + i, i % 100, team));
+
+            // 리포지토리 메서드 제한 시간
+            double timeoutsBefore = meterRegistry.get("query.timeouts").counter().count();
+            queryTimeoutProperties.getMethods().put("MemberJpaRepository.search", Duration.ofNanos(1));
+            try {
+                assertThatThrownBy(() -> memberJpaRepository.search(new MemberSearchCondition()))
+                        .isInstanceOf(org.springframework.dao.QueryTimeoutException.class);
+            } finally {
+                queryTimeoutProperties.getMethods().remove("MemberJpaRepository.search");
+            }
+            assertThat(meterRegistry.get("query.timeouts").counter().count()).isEqualTo(timeoutsBefore + 1);
+            assertThat(memberJpaRepository.search(new MemberSearchCondition())).hasSizeGreaterThanOrEqualTo(1000);
+
+            // 실행 중인 statement 취소
+            ReadOnlyQueryFactory guarded = new ReadOnlyQueryFactory(em, new QueryGuard(meterRegistry, 10000, "limit", "reject"));
+            QueryDeadline deadline = QueryDeadline.after(Duration.ofSeconds(30));
+            Future<Long> running = executor.submit(() -> {
+                deadline.enter();
+                try {
+                    return crossJoinCount(guarded);
+                } finally {
+                    deadline.exit();
+                }
+            });
+            awaitRunning("CROSS JOIN", running);
+            long start = System.nanoTime();
+            deadline.cancel();
+            assertThatThrownBy(() -> running.get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasRootCauseInstanceOf(java.sql.SQLException.class);
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(10));
+            assertThatThrownBy(() -> executor.submit(() -> {
+                deadline.enter();
+                try {
+                    return guarded.selectFrom(member).fetch();
+                } finally {
+                    deadline.exit();
+                }
+            }).get()).hasCauseInstanceOf(CancellationException.class);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 클라이언트 연결이 끊기면(async error) WebAsyncTask 의 onError 가 실행 중인 statement 를 취소하고,
+     * 핸들러 스레드에는 deadline 이 남지 않는다.
+     */
+    @Test
+    public void disconnectTest() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (CommittedData data = new CommittedData(em, transactionTemplate)) {
+            data.team("teamA", 1000, (i, team) -> new Member("member" + i, i % 100, team));
+            double disconnectsBefore = meterRegistry.get("query.cancellations").tags("reason", "disconnect").counter().count();
+
+            ReadOnlyQueryFactory guarded = new ReadOnlyQueryFactory(em, new QueryGuard(meterRegistry, 10000, "limit", "reject"));
+            CompletableFuture<Throwable> failure = new CompletableFuture<>();
+            WebAsyncTask<Long> task = queryTimeouts.endpoint("disconnectTest", () -> {
+                try {
+                    return crossJoinCount(guarded);
+                } catch (RuntimeException e) {
+                    failure.complete(e);
+                    throw e;
+                }
+            });
+            assertThat(task.getTimeout()).as("no container default timeout").isEqualTo(-1L);
+
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setAsyncSupported(true);
+            StandardServletAsyncWebRequest asyncWebRequest = new StandardServletAsyncWebRequest(request, new MockHttpServletResponse());
+            WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+            asyncManager.setTaskExecutor(new ConcurrentTaskExecutor(executor));
+            asyncManager.setAsyncWebRequest(asyncWebRequest);
+            asyncManager.startCallableProcessing(task);
+            awaitRunning("CROSS JOIN", failure);
+
+            long start = System.nanoTime();
+            asyncWebRequest.onError(new AsyncEvent(request.getAsyncContext(), new IOException("Broken pipe")));
+            assertThat(failure.get(10, TimeUnit.SECONDS)).hasRootCauseInstanceOf(java.sql.SQLException.class);
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(10));
+            assertThat(meterRegistry.get("query.cancellations").tags("reason", "disconnect").counter().count())
+                    .isEqualTo(disconnectsBefore + 1);
+            assertThat(executor.submit(QueryDeadline::current).get()).as("deadline left on the handler thread").isNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 1000^3 조합을 세는, 취소하지 않으면 오래 걸리는 쿼리
+     */
+    private static Long crossJoinCount(ReadOnlyQueryFactory queryFactory) {
+        QMember m2 = new QMember("m2");
+        QMember m3 = new QMember("m3");
+        return queryFactory.select(member.count()).from(member, m2, m3)
+                .where(member.age.add(m2.age).gt(m3.age.add(member.id.intValue())))
+                .fetchOne();
+    }
+
+    /**
+     * 다른 세션의 statement 가 H2 서버에서 실행 중이 될 때까지 기다린다.
+     * 서버가 실행을 시작하기 전에 보낸 cancel 은 무시되므로 INFORMATION_SCHEMA.SESSIONS 로 확인한다.
+     */
+    private void awaitRunning(String sqlFragment, Future<?> running) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            assertThat(running).as("query finished before it was cancelled").isNotDone();
+            Number sessions = (Number) em.createNativeQuery(
+                            "select count(*) from information_schema.sessions where id <> session_id() and upper(statement) like ?1")
+                    .setParameter(1, "%" + sqlFragment + "%")
+                    .getSingleResult();
+            if (sessions.intValue() > 0) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        fail("statement containing '" + sqlFragment + "' did not start within 10s");
+    }
+}